@@ -1,8 +1,15 @@
 package pan.alexander.cordova.torrunner.data.addresschecker
 
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineName
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
 import pan.alexander.cordova.torrunner.domain.addresschecker.AddressCheckerRepository
 import pan.alexander.cordova.torrunner.domain.addresschecker.DomainToPort
 import pan.alexander.cordova.torrunner.domain.addresschecker.TimeToReachable
+import pan.alexander.cordova.torrunner.domain.configuration.ConfigurationRepository
 import pan.alexander.cordova.torrunner.domain.core.CoreState
 import pan.alexander.cordova.torrunner.domain.core.CoreStatus
 import pan.alexander.cordova.torrunner.domain.core.TorMode
@@ -10,57 +17,59 @@ import pan.alexander.cordova.torrunner.domain.preferences.PreferenceRepository
 import pan.alexander.cordova.torrunner.framework.ActionSender
 import pan.alexander.cordova.torrunner.framework.CoreServiceActions.ACTION_STOP_TOR
 import pan.alexander.cordova.torrunner.utils.addresschecker.AddressChecker
+import pan.alexander.cordova.torrunner.utils.file.FileManager
 import pan.alexander.cordova.torrunner.utils.logger.Logger.logi
 import pan.alexander.cordova.torrunner.utils.network.NetworkChecker
-import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
 import javax.inject.Inject
+import javax.inject.Singleton
 
 private const val REACHABLE_ADDRESS_CHECK_INTERVAL_MINUTES = 3 * 60 * 1000
 private const val UNREACHABLE_ADDRESS_CHECK_INTERVAL_MINUTES = 2 * 60 * 1000
 private const val TIME_TO_STOP_TOR_MINUTES = 5 * 60 * 1000
+private const val MAX_CACHED_ADDRESSES = 512
+private const val CACHE_SAVE_DELAY_SEC = 10
 
+@Singleton
 class AddressCheckerRepositoryImpl @Inject constructor(
+    dispatcherIo: CoroutineDispatcher,
     private val addressChecker: AddressChecker,
+    private val configuration: ConfigurationRepository,
+    private val fileManager: FileManager,
     private val preferences: PreferenceRepository,
     private val networkChecker: NetworkChecker,
     private val coreStatus: CoreStatus,
     private val actionSender: ActionSender
 ) : AddressCheckerRepository {
 
-    private val checkResults = ConcurrentHashMap<DomainToPort, TimeToReachable>()
+    private val scope by lazy {
+        CoroutineScope(
+            SupervisorJob() + dispatcherIo + CoroutineName("AddressCheckerRepository")
+        )
+    }
+
+    private val checkResults by lazy {
+        ReachabilityCache(
+            maxSize = MAX_CACHED_ADDRESSES,
+            entryTtlMs = TIME_TO_STOP_TOR_MINUTES.toLong(),
+            unreachableWindowMs = TIME_TO_STOP_TOR_MINUTES.toLong()
+        ).also { restoreCheckResults(it) }
+    }
+    private val inFlightChecks = SingleFlight<DomainToPort, Boolean>()
 
     @Volatile
     private var timeLastUnreachableAddress = 0L
 
+    private val saveScheduled = AtomicBoolean(false)
+    private val cacheFileLock = Any()
+
     override fun isAddressReachable(address: DomainToPort): Boolean {
         val previousResult = checkResults[address]
         val currentTime = System.currentTimeMillis()
-        var reachable: Boolean
-        if (previousResult == null
-            || previousResult.reachable && currentTime - previousResult.time > REACHABLE_ADDRESS_CHECK_INTERVAL_MINUTES
-            || !previousResult.reachable && currentTime - previousResult.time > UNREACHABLE_ADDRESS_CHECK_INTERVAL_MINUTES
-        ) {
-
-            reachable = if (preferences.getTorMode() == TorMode.NEVER) {
-                true
-            } else if (preferences.getTorMode() == TorMode.AUTO && networkChecker.isVpnActive()) {
-                addressChecker.isHttpsAddressReachable(
-                    address.domain,
-                    address.port,
-                    8000
-                )
-            } else if (preferences.getTorMode() == TorMode.AUTO) {
-                addressChecker.isHttpsAddressReachable(
-                    address.domain,
-                    address.port,
-                    3000
-                )
-            } else {
-                false
-            }
-            checkResults[address] = TimeToReachable(currentTime, reachable)
+        val reachable = if (previousResult == null || !isResultFresh(previousResult, currentTime)) {
+            checkAddressOnce(address)
         } else {
-            reachable = previousResult.reachable
+            previousResult.reachable
         }
 
         if (reachable
@@ -68,12 +77,8 @@ class AddressCheckerRepositoryImpl @Inject constructor(
             && timeLastUnreachableAddress != 0L
             && currentTime - timeLastUnreachableAddress > TIME_TO_STOP_TOR_MINUTES
         ) {
-            val containsFreshUnreachableAddress = checkResults.values.any {
-                !it.reachable && (currentTime - it.time < TIME_TO_STOP_TOR_MINUTES)
-            }
-
-            if (checkResults.isNotEmpty()
-                && !containsFreshUnreachableAddress
+            if (!checkResults.isEmpty()
+                && !checkResults.hasFreshUnreachable(currentTime)
                 && coreStatus.torState == CoreState.RUNNING
             ) {
                 logi("Stop Tor because of long inactivity")
@@ -85,4 +90,106 @@ class AddressCheckerRepositoryImpl @Inject constructor(
 
         return reachable
     }
+
+    //Only one probe per address at a time, parallel callers wait for its result
+    private fun checkAddressOnce(address: DomainToPort): Boolean =
+        inFlightChecks.execute(address, false) {
+            val currentTime = System.currentTimeMillis()
+            val result = checkResults[address]
+            if (result != null && isResultFresh(result, currentTime)) {
+                result.reachable
+            } else {
+                checkAddress(address).also {
+                    checkResults[address] = TimeToReachable(currentTime, it)
+                    scheduleCheckResultsSave()
+                }
+            }
+        }
+
+    private fun checkAddress(address: DomainToPort): Boolean =
+        if (preferences.getTorMode() == TorMode.NEVER) {
+            true
+        } else if (preferences.getTorMode() == TorMode.AUTO && networkChecker.isVpnActive()) {
+            addressChecker.isHttpsAddressReachable(
+                address.domain,
+                address.port,
+                8000
+            )
+        } else if (preferences.getTorMode() == TorMode.AUTO) {
+            addressChecker.isHttpsAddressReachable(
+                address.domain,
+                address.port,
+                3000
+            )
+        } else {
+            false
+        }
+
+    private fun isResultFresh(result: TimeToReachable, currentTime: Long): Boolean =
+        if (result.reachable) {
+            currentTime - result.time <= REACHABLE_ADDRESS_CHECK_INTERVAL_MINUTES
+        } else {
+            currentTime - result.time <= UNREACHABLE_ADDRESS_CHECK_INTERVAL_MINUTES
+        }
+
+    //Checked addresses are a browsing history, so they are removed together with the file when Tor stops
+    override fun clearCheckResults() {
+        checkResults.clear()
+        synchronized(cacheFileLock) {
+            fileManager.deleteFile(configuration.getAddressCheckerCachePath())
+        }
+    }
+
+    //With persistence enabled, a cold start does not probe every recently checked address again
+    private fun restoreCheckResults(cache: ReachabilityCache) {
+        if (!preferences.isAddressChecksPersistenceEnabled()) {
+            synchronized(cacheFileLock) {
+                fileManager.deleteFile(configuration.getAddressCheckerCachePath())
+            }
+            return
+        }
+        val currentTime = System.currentTimeMillis()
+        fileManager.readFile(configuration.getAddressCheckerCachePath())
+            .mapNotNull { line ->
+                val parts = line.split(" ")
+                val port = parts.getOrNull(1)?.toIntOrNull()
+                val time = parts.getOrNull(2)?.toLongOrNull()
+                if (parts.size != 4 || port == null || time == null) {
+                    return@mapNotNull null
+                }
+                DomainToPort(parts[0], port) to TimeToReachable(time, parts[3] == "1")
+            }.filter { (_, result) ->
+                currentTime - result.time in 0..TIME_TO_STOP_TOR_MINUTES
+            }.sortedBy { (_, result) ->
+                result.time
+            }.forEach { (address, result) ->
+                cache[address] = result
+            }
+    }
+
+    private fun scheduleCheckResultsSave() {
+        if (!preferences.isAddressChecksPersistenceEnabled()
+            || !saveScheduled.compareAndSet(false, true)
+        ) {
+            return
+        }
+        scope.launch {
+            delay(CACHE_SAVE_DELAY_SEC * 1000L)
+            saveScheduled.set(false)
+            saveCheckResults()
+        }
+    }
+
+    //Results cleared while a save was pending leave no file behind
+    private fun saveCheckResults() = synchronized(cacheFileLock) {
+        val path = configuration.getAddressCheckerCachePath()
+        val lines = checkResults.snapshot(System.currentTimeMillis()).map { (address, result) ->
+            "${address.domain} ${address.port} ${result.time} ${if (result.reachable) 1 else 0}"
+        }
+        if (lines.isEmpty() || !preferences.isAddressChecksPersistenceEnabled()) {
+            fileManager.deleteFile(path)
+        } else {
+            fileManager.rewriteFile(path, lines)
+        }
+    }
 }
@@ -0,0 +1,95 @@
+package pan.alexander.cordova.torrunner.data.addresschecker
+
+import pan.alexander.cordova.torrunner.domain.addresschecker.DomainToPort
+import pan.alexander.cordova.torrunner.domain.addresschecker.TimeToReachable
+
+/**
+ * Size-bounded LRU cache of check results. Entries expire after [entryTtlMs].
+ * Unreachable results younger than [unreachableWindowMs] are counted as they are added,
+ * so asking for fresh unreachable addresses does not scan the whole cache.
+ */
+class ReachabilityCache(
+    private val maxSize: Int,
+    private val entryTtlMs: Long,
+    private val unreachableWindowMs: Long
+) {
+
+    private val entries = object : LinkedHashMap<DomainToPort, Entry>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<DomainToPort, Entry>): Boolean {
+            if (size > maxSize) {
+                uncount(eldest.value)
+                return true
+            }
+            return false
+        }
+    }
+
+    //Unreachable results in the order they were added, expired from the head
+    private val unreachableEntries = ArrayDeque<Entry>()
+    private var freshUnreachableCount = 0
+
+    @Synchronized
+    operator fun get(address: DomainToPort): TimeToReachable? {
+        val entry = entries[address] ?: return null
+        if (System.currentTimeMillis() - entry.result.time > entryTtlMs) {
+            entries.remove(address)
+            uncount(entry)
+            return null
+        }
+        return entry.result
+    }
+
+    @Synchronized
+    operator fun set(address: DomainToPort, result: TimeToReachable) {
+        val entry = Entry(address, result)
+        entries.put(address, entry)?.let { uncount(it) }
+        if (!result.reachable) {
+            entry.counted = true
+            freshUnreachableCount++
+            unreachableEntries.addLast(entry)
+        }
+    }
+
+    @Synchronized
+    fun hasFreshUnreachable(currentTime: Long): Boolean {
+        while (unreachableEntries.isNotEmpty()) {
+            val entry = unreachableEntries.first()
+            if (entry.counted && currentTime - entry.result.time < unreachableWindowMs) {
+                break
+            }
+            unreachableEntries.removeFirst()
+            uncount(entry)
+        }
+        return freshUnreachableCount > 0
+    }
+
+    @Synchronized
+    fun isEmpty() = entries.isEmpty()
+
+    @Synchronized
+    fun clear() {
+        entries.clear()
+        unreachableEntries.clear()
+        freshUnreachableCount = 0
+    }
+
+    @Synchronized
+    fun snapshot(currentTime: Long): Map<DomainToPort, TimeToReachable> =
+        entries.values
+            .filter { currentTime - it.result.time <= entryTtlMs }
+            .associate { it.address to it.result }
+
+    private fun uncount(entry: Entry) {
+        if (entry.counted) {
+            entry.counted = false
+            freshUnreachableCount--
+        }
+    }
+
+    private class Entry(
+        val address: DomainToPort,
+        val result: TimeToReachable
+    ) {
+        var counted = false
+    }
+}
@@ -0,0 +1,44 @@
+package pan.alexander.cordova.torrunner.data.addresschecker
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+
+/**
+ * Runs only one call per key at a time. Callers that arrive while it runs
+ * wait for its result instead of starting their own call.
+ */
+internal class SingleFlight<K : Any, V> {
+
+    private val calls = ConcurrentHashMap<K, CompletableFuture<V>>()
+
+    /**
+     * @return result of [block], or [fallback] for a waiting caller when the running call fails.
+     */
+    fun execute(key: K, fallback: V, block: () -> V): V {
+        val call = CompletableFuture<V>()
+        val inFlightCall = calls.putIfAbsent(key, call)
+
+        if (inFlightCall != null) {
+            return await(inFlightCall, fallback)
+        }
+
+        var result = fallback
+        try {
+            result = block()
+        } finally {
+            calls.remove(key, call)
+            call.complete(result)
+        }
+        return result
+    }
+
+    private fun await(call: CompletableFuture<V>, fallback: V): V = try {
+        call.get()
+    } catch (_: InterruptedException) {
+        Thread.currentThread().interrupt()
+        fallback
+    } catch (_: ExecutionException) {
+        fallback
+    }
+}
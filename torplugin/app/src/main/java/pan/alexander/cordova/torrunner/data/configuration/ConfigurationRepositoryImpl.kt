@@ -25,10 +25,11 @@ import pan.alexander.cordova.torrunner.domain.core.TorMode
 import pan.alexander.cordova.torrunner.domain.preferences.PreferenceRepository
 import pan.alexander.cordova.torrunner.framework.ActionSender
 import pan.alexander.cordova.torrunner.framework.ConfigurationManager
+import pan.alexander.cordova.torrunner.framework.CoreServiceActions.ACTION_RELOAD_TOR_CONFIGURATION
 import pan.alexander.cordova.torrunner.framework.CoreServiceActions.ACTION_RESTART_TOR
 import pan.alexander.cordova.torrunner.utils.Constants.MAX_PORT_NUMBER
-import pan.alexander.cordova.torrunner.utils.file.FileManager
 import pan.alexander.cordova.torrunner.utils.logger.Logger.loge
+import pan.alexander.cordova.torrunner.utils.logger.Logger.logi
 import java.io.File
 import java.lang.Exception
 import javax.inject.Inject
@@ -39,7 +40,7 @@ import kotlin.text.toInt
 class ConfigurationRepositoryImpl @Inject constructor(
     private val configurationManager: ConfigurationManager,
     private val preferences: PreferenceRepository,
-    private val fileManager: FileManager,
+    private val torConfigurationStore: TorConfigurationStore,
     private val actionSender: ActionSender
 ) : ConfigurationRepository {
 
@@ -63,14 +64,8 @@ class ConfigurationRepositoryImpl @Inject constructor(
 
     override fun getWebTunnelPath() = configurationManager.webTunnelPath
 
-    override fun getTorSocksPort() = getTorConfiguration().find {
-        it.first == "SOCKSPort"
-    }?.second?.substringAfterLast(":")
-        ?.takeIf {
-            it.matches(numberRegex)
-        }?.toInt()?.takeIf {
-            it <= MAX_PORT_NUMBER
-        } ?: configurationManager.torDefaultSocksPort
+    override fun getTorSocksPort() =
+        torConfigurationStore.get().socksPort ?: configurationManager.torDefaultSocksPort
 
     override fun getTorConfigurationDir() = configurationManager.torConfigurationDir
 
@@ -82,25 +77,21 @@ class ConfigurationRepositoryImpl @Inject constructor(
 
     override fun getTorPidPath() = configurationManager.torPidPath
 
+    override fun getTorControlPortFilePath() = configurationManager.torControlPortFilePath
+
+    override fun getTorControlCookiePath() = configurationManager.torControlCookiePath
+
+    override fun getAddressCheckerCachePath() = configurationManager.addressCheckerCachePath
+
     override fun getTorDefaultSocksPort() = configurationManager.torDefaultSocksPort
 
     override fun getTorAssetStream() = configurationManager.torAssetsStream
 
-    override fun getTorConfiguration(): List<Pair<String, String>> {
-        val result = mutableListOf<Pair<String, String>>()
-        val torConf = fileManager.readFile(configurationManager.torConfPath)
-        for (line in torConf) {
-            val spaceIndex = line.indexOf(" ")
-            if (spaceIndex > 0) {
-                val key = line.substring(0, spaceIndex).trim()
-                val value = line.substring(spaceIndex, line.length).trim()
-                result.add(key to value)
-            } else {
-                result.add(line to "")
-            }
-        }
-        return result
-    }
+    override fun getTorConfiguration(): List<Pair<String, String>> =
+        torConfigurationStore.get().lines
+
+    override fun rewriteTorConfiguration(lines: List<String>) =
+        torConfigurationStore.write(lines)
 
     override fun updateTorConfiguration(
         originalTorConf: List<Pair<String, String>>,
@@ -111,35 +102,30 @@ class ConfigurationRepositoryImpl @Inject constructor(
             return
         }
 
-        var configurationChanged = false
-
-        if (newTorConf.size != originalTorConf.size) {
-            configurationChanged = true
+        val changedKeys = TorConfigurationDiff.getChangedKeys(originalTorConf, newTorConf)
+        val strategy = TorConfigurationDiff.getStrategy(changedKeys)
+        if (strategy == TorConfigurationDiff.ApplyStrategy.NONE) {
+            return
         }
 
-        if (!configurationChanged) {
-            for (index in originalTorConf.indices) {
-                val originalLine = originalTorConf[index]
-                val newLine = newTorConf[index]
-                if (newLine.first != originalLine.first || newLine.second != originalLine.second) {
-                    configurationChanged = true
-                    break
+        val saved = torConfigurationStore.write(
+            newTorConf.map {
+                if (it.second.isNotEmpty()) {
+                    "${it.first} ${it.second}"
+                } else {
+                    it.first
                 }
             }
+        )
+        if (!saved) {
+            return
         }
 
-        if (configurationChanged) {
-            fileManager.rewriteFile(
-                configurationManager.torConfPath,
-                newTorConf.map {
-                    if (it.second.isNotEmpty()) {
-                        "${it.first} ${it.second}"
-                    } else {
-                        it.first
-                    }
-                }
-            )
+        logi("Tor configuration changed ${changedKeys.joinToString()}, apply with $strategy")
+        if (strategy == TorConfigurationDiff.ApplyStrategy.RESTART) {
             actionSender.sendIntent(ACTION_RESTART_TOR)
+        } else {
+            actionSender.sendIntent(ACTION_RELOAD_TOR_CONFIGURATION)
         }
     }
 
@@ -153,18 +139,11 @@ class ConfigurationRepositoryImpl @Inject constructor(
         configurationManager.updateCordovaConfiguration(configuration)
 
     override fun getTorConfigurationForCordova(): JSONObject {
-        val torConf = getTorConfiguration()
-
-        var torPort = configurationManager.torDefaultSocksPort
-        var bridgeType = BridgeType.NONE
-
-        for (confLine in torConf) {
-            if (confLine.first == "SOCKSPort") {
-                torPort = getTorPortFromLine(confLine.second)
-            } else if (confLine.first == "Bridge") {
-                bridgeType = getBridgeTypeFromLine(confLine.second)
-            }
-        }
+        val torConf = torConfigurationStore.get()
+        val torPort = torConf.socksPort ?: configurationManager.torDefaultSocksPort
+        val bridgeType = torConf.bridges.lastOrNull()?.let {
+            getBridgeTypeFromLine(it)
+        } ?: BridgeType.NONE
 
         val torMode = preferences.getTorMode()
 
@@ -320,14 +299,6 @@ class ConfigurationRepositoryImpl @Inject constructor(
         preferences.setTorMode(mode)
     }
 
-    private fun getTorPortFromLine(line: String): Int =
-        line.substringAfter(":")
-            .takeIf {
-                it.matches(numberRegex)
-            }?.toInt()?.takeIf {
-                it <= MAX_PORT_NUMBER
-            } ?: configurationManager.torDefaultSocksPort
-
     private fun getBridgeTypeFromLine(line: String): BridgeType =
         when (line.substringBefore(" ")) {
             "obfs3" -> BridgeType.OBFS3
@@ -0,0 +1,74 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.data.configuration
+
+import pan.alexander.cordova.torrunner.utils.Constants.MAX_PORT_NUMBER
+
+private val whitespaceRegex = Regex("\\s+")
+
+/**
+ * Immutable parsed tor.conf. Typed values are resolved once on parsing.
+ */
+class TorConfiguration private constructor(
+    val lines: List<Pair<String, String>>
+) {
+
+    val socksPort: Int? = lines.find { it.first == "SOCKSPort" }
+        ?.second
+        ?.substringAfterLast(":")
+        ?.takeIf { it.length in 1..5 && it.all(Char::isDigit) }
+        ?.toInt()
+        ?.takeIf { it <= MAX_PORT_NUMBER }
+
+    val useBridges: Boolean = lines.find { it.first == "UseBridges" }?.second == "1"
+
+    val bridges: List<String> = lines.filter { it.first == "Bridge" }.map { it.second }
+
+    val clientTransportPlugins: List<String> = lines.filter {
+        it.first == "ClientTransportPlugin"
+    }.map { it.second }
+
+    companion object {
+        //Comments, blank lines and whitespace inside values do not change how Tor reads the file
+        fun getDirectives(lines: List<Pair<String, String>>): List<Pair<String, String>> =
+            lines.mapNotNull { (key, value) ->
+                if (key.isBlank() || key.startsWith("#")) {
+                    null
+                } else {
+                    key to value.split(whitespaceRegex).filter { it.isNotEmpty() }.joinToString(" ")
+                }
+            }
+
+        fun parse(torConf: List<String>): TorConfiguration {
+            val result = mutableListOf<Pair<String, String>>()
+            for (line in torConf) {
+                val spaceIndex = line.indexOf(" ")
+                if (spaceIndex > 0) {
+                    val key = line.substring(0, spaceIndex).trim()
+                    val value = line.substring(spaceIndex, line.length).trim()
+                    result.add(key to value)
+                } else {
+                    result.add(line to "")
+                }
+            }
+            return TorConfiguration(result)
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+
+package pan.alexander.cordova.torrunner.data.configuration
+
+/**
+ * Decides how a tor.conf change should be applied to a running Tor.
+ * Most options, including SOCKSPort, bridges and transport plugins, are applied by a reload.
+ * Only options Tor refuses to change while running, and the control port options
+ * the plugin depends on, need a full restart.
+ */
+object TorConfigurationDiff {
+
+    private val restartRequiredKeys = setOf(
+        "DataDirectory",
+        "CacheDirectory",
+        "KeyDirectory",
+        "PidFile",
+        "RunAsDaemon",
+        "User",
+        "Sandbox",
+        "DisableAllSwap",
+        "HardwareAccel",
+        "AccelName",
+        "AccelDir",
+        "NoExec",
+        "DisableDebuggerAttachment",
+        "ControlPort",
+        "ControlPortWriteToFile",
+        "CookieAuthentication",
+        "CookieAuthFile"
+    )
+
+    fun getChangedKeys(
+        original: List<Pair<String, String>>,
+        new: List<Pair<String, String>>
+    ): Set<String> {
+        val originalValues = TorConfiguration.getDirectives(original).groupBy({ it.first }, { it.second })
+        val newValues = TorConfiguration.getDirectives(new).groupBy({ it.first }, { it.second })
+        return (originalValues.keys + newValues.keys).filterTo(mutableSetOf()) {
+            originalValues[it] != newValues[it]
+        }
+    }
+
+    fun getStrategy(changedKeys: Set<String>): ApplyStrategy =
+        when {
+            changedKeys.isEmpty() -> ApplyStrategy.NONE
+            changedKeys.any { it in restartRequiredKeys } -> ApplyStrategy.RESTART
+            else -> ApplyStrategy.RELOAD
+        }
+
+    enum class ApplyStrategy {
+        NONE,
+        RELOAD,
+        RESTART
+    }
+}
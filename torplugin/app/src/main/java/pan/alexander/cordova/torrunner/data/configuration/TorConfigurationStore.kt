@@ -0,0 +1,90 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+
+package pan.alexander.cordova.torrunner.data.configuration
+
+import pan.alexander.cordova.torrunner.framework.ConfigurationManager
+import pan.alexander.cordova.torrunner.utils.file.FileManager
+import java.io.File
+import javax.inject.Inject
+import javax.inject.Singleton
+
+private const val REVALIDATE_INTERVAL_MS = 2000L
+
+/**
+ * Keeps the parsed tor.conf in memory. Reads are a volatile load; the file is only
+ * checked for foreign edits by mtime and size once per [REVALIDATE_INTERVAL_MS].
+ * Writes made through [write] replace the cached model immediately.
+ */
+@Singleton
+class TorConfigurationStore @Inject constructor(
+    private val configurationManager: ConfigurationManager,
+    private val fileManager: FileManager
+) {
+
+    @Volatile
+    private var cached: CachedConfiguration? = null
+
+    fun get(): TorConfiguration {
+        val current = cached
+        if (current != null && System.nanoTime() - current.checkTime < REVALIDATE_INTERVAL_MS * 1_000_000) {
+            return current.configuration
+        }
+        return revalidate()
+    }
+
+    @Synchronized
+    fun write(lines: List<String>): Boolean {
+        val success = fileManager.rewriteFileAtomically(configurationManager.torConfPath, lines)
+        cached = if (success) {
+            load(TorConfiguration.parse(lines))
+        } else {
+            null
+        }
+        return success
+    }
+
+    @Synchronized
+    private fun revalidate(): TorConfiguration {
+        val current = cached
+        val file = File(configurationManager.torConfPath)
+        val lastModified = file.lastModified()
+        val size = file.length()
+        if (current != null && current.lastModified == lastModified && current.size == size) {
+            cached = current.copy(checkTime = System.nanoTime())
+            return current.configuration
+        }
+        val configuration = TorConfiguration.parse(fileManager.readFile(file))
+        cached = CachedConfiguration(configuration, lastModified, size, System.nanoTime())
+        return configuration
+    }
+
+    private fun load(configuration: TorConfiguration): CachedConfiguration {
+        val file = File(configurationManager.torConfPath)
+        return CachedConfiguration(configuration, file.lastModified(), file.length(), System.nanoTime())
+    }
+
+    private data class CachedConfiguration(
+        val configuration: TorConfiguration,
+        val lastModified: Long,
+        val size: Long,
+        val checkTime: Long
+    )
+}
@@ -0,0 +1,87 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.data.logs
+
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+import pan.alexander.cordova.torrunner.domain.configuration.ConfigurationRepository
+import pan.alexander.cordova.torrunner.domain.logs.LogArchive
+import pan.alexander.cordova.torrunner.domain.logs.LogRepository
+import pan.alexander.cordova.torrunner.domain.logs.LogUpdate
+import pan.alexander.cordova.torrunner.utils.file.FileManager
+import pan.alexander.cordova.torrunner.utils.file.FileTail
+import java.io.File
+import javax.inject.Inject
+
+private const val LOG_POLL_INTERVAL_MS = 1000L
+private const val ARCHIVE_EXTENSION = ".gz"
+private const val TEMP_EXTENSION = ".tmp"
+
+class LogRepositoryImpl @Inject constructor(
+    private val dispatcherIo: CoroutineDispatcher,
+    private val configuration: ConfigurationRepository,
+    private val fileManager: FileManager
+) : LogRepository {
+
+    override fun getTorLogUpdates(): Flow<LogUpdate> = flow {
+        val tail = FileTail(File(configuration.getTorLogPath()))
+        while (true) {
+            val chunk = tail.readAppendedLines()
+            if (chunk.lines.isNotEmpty() || chunk.truncated) {
+                emit(LogUpdate(chunk.lines, chunk.truncated))
+            }
+            delay(LOG_POLL_INTERVAL_MS)
+        }
+    }.flowOn(dispatcherIo)
+
+    override fun getTorLogSize(): Long =
+        File(configuration.getTorLogPath()).takeIf { it.isFile }?.length() ?: 0
+
+    override fun cutTorLogSegment(suffix: String): String? {
+        val log = File(configuration.getTorLogPath())
+        val segment = File(getTorLogDir(), "${log.name}.$suffix")
+        return segment.name.takeIf { fileManager.copyAndTruncateFile(log, segment) }
+    }
+
+    override fun archiveTorLogSegment(segment: String): Boolean {
+        val source = File(getTorLogDir(), segment)
+        return fileManager.gzipFile(source, File(source.path + ARCHIVE_EXTENSION))
+    }
+
+    override fun getTorLogArchives(): List<LogArchive> {
+        val logName = File(configuration.getTorLogPath()).name
+        return getTorLogDir()
+            .listFiles { file ->
+                file.name.startsWith("$logName.") && !file.name.endsWith(TEMP_EXTENSION)
+            }
+            ?.sortedByDescending { it.name }
+            ?.map { LogArchive(it.name, it.length(), it.name.endsWith(ARCHIVE_EXTENSION)) }
+            ?: emptyList()
+    }
+
+    override fun deleteTorLogArchive(archive: LogArchive) {
+        fileManager.deleteFile(File(getTorLogDir(), archive.name))
+    }
+
+    private fun getTorLogDir(): File = File(configuration.getTorLogPath()).absoluteFile.parentFile
+}
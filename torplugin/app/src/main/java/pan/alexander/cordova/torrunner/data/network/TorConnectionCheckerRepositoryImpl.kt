@@ -20,6 +20,7 @@
 package pan.alexander.cordova.torrunner.data.network
 
 import pan.alexander.cordova.torrunner.domain.configuration.ConfigurationRepository
+import pan.alexander.cordova.torrunner.domain.core.StartupMetrics
 import pan.alexander.cordova.torrunner.domain.network.TorConnectionCheckerRepository
 import pan.alexander.cordova.torrunner.utils.Constants.CLOUDFLARE_WEBSITE
 import pan.alexander.cordova.torrunner.utils.Constants.GOOGLE_WEBSITE
@@ -30,7 +31,8 @@ import javax.inject.Inject
 
 class TorConnectionCheckerRepositoryImpl @Inject constructor(
     private val addressChecker: AddressChecker,
-    private val configurationRepository: ConfigurationRepository
+    private val configurationRepository: ConfigurationRepository,
+    private val startupMetrics: StartupMetrics
 ) : TorConnectionCheckerRepository {
 
     override fun isTorConnected(): Boolean {
@@ -46,6 +48,10 @@ class TorConnectionCheckerRepositoryImpl @Inject constructor(
             port = 443,
             timeoutMs = 10000,
             socksPort = configurationRepository.getTorSocksPort()
-        )
+        ).also { connected ->
+            if (connected) {
+                startupMetrics.mark(StartupMetrics.MILESTONE_CONNECTED)
+            }
+        }
     }
 }
@@ -27,6 +27,8 @@ import javax.inject.Inject
 import androidx.core.content.edit
 import pan.alexander.cordova.torrunner.domain.network.NetworkType
 import pan.alexander.cordova.torrunner.domain.preferences.PreferenceKeys.LAST_NETWORK
+import pan.alexander.cordova.torrunner.domain.preferences.PreferenceKeys.IN_PROCESS_PROXY
+import pan.alexander.cordova.torrunner.domain.preferences.PreferenceKeys.PERSIST_ADDRESS_CHECKS
 
 class PreferenceRepositoryImpl @Inject constructor(
     private val preferences: SharedPreferences
@@ -59,4 +61,20 @@ class PreferenceRepositoryImpl @Inject constructor(
         }
     }
 
+    override fun isInProcessProxyEnabled(): Boolean =
+        preferences.getBoolean(IN_PROCESS_PROXY, false)
+
+    override fun setInProcessProxyEnabled(enabled: Boolean) =
+        preferences.edit {
+            putBoolean(IN_PROCESS_PROXY, enabled)
+        }
+
+    override fun isAddressChecksPersistenceEnabled(): Boolean =
+        preferences.getBoolean(PERSIST_ADDRESS_CHECKS, false)
+
+    override fun setAddressChecksPersistenceEnabled(enabled: Boolean) =
+        preferences.edit {
+            putBoolean(PERSIST_ADDRESS_CHECKS, enabled)
+        }
+
 }
@@ -2,4 +2,5 @@ package pan.alexander.cordova.torrunner.domain.addresschecker
 
 interface AddressCheckerRepository {
     fun isAddressReachable(address: DomainToPort): Boolean
+    fun clearCheckResults()
 }
@@ -40,10 +40,14 @@ interface ConfigurationRepository {
     fun getTorGeoipPath(): String
     fun getTorGeoip6Path(): String
     fun getTorPidPath(): String
+    fun getTorControlPortFilePath(): String
+    fun getTorControlCookiePath(): String
+    fun getAddressCheckerCachePath(): String
     fun getTorDefaultSocksPort(): Int
     fun getTorAssetStream(): InputStream
 
     fun getTorConfiguration(): List<Pair<String, String>>
+    fun rewriteTorConfiguration(lines: List<String>): Boolean
     fun updateTorConfiguration(
         originalTorConf: List<Pair<String, String>>,
         newTorConf: List<Pair<String, String>>
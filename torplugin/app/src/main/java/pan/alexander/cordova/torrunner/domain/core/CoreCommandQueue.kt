@@ -0,0 +1,178 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.domain.core
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineName
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.future.await
+import kotlinx.coroutines.launch
+import pan.alexander.cordova.torrunner.domain.installer.Installer
+import pan.alexander.cordova.torrunner.utils.logger.Logger.loge
+import pan.alexander.cordova.torrunner.utils.logger.Logger.logi
+import java.util.concurrent.atomic.AtomicBoolean
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlin.coroutines.coroutineContext
+
+/**
+ * Applies Tor commands one at a time on the supervisor control threads.
+ * Commands that arrive while another one is running are merged into a single pending request,
+ * so START, STOP, START ends as one START, and a STOP cancels a running command
+ * that has not reached the managers yet. TorManager installs Tor itself when starting,
+ * in parallel with the ports check.
+ */
+@Singleton
+class CoreCommandQueue @Inject constructor(
+    moduleSupervisor: ModuleSupervisor,
+    private val torManager: TorManager,
+    private val reverseProxyManager: ReverseProxyManager,
+    private val coreStatus: CoreStatus,
+    private val installer: Installer
+) {
+
+    private val scope by lazy {
+        CoroutineScope(
+            SupervisorJob() +
+                    moduleSupervisor.controlExecutor.asCoroutineDispatcher() +
+                    CoroutineName("CoreCommandQueue")
+        )
+    }
+
+    private val commandSignal = Channel<Unit>(Channel.CONFLATED)
+    private val started = AtomicBoolean(false)
+    private val lock = Any()
+
+    //START or STOP, the last one wins
+    private var pendingTarget: CoreCommand? = null
+    //RESTART or RELOAD to apply the changed configuration to a running Tor
+    private var pendingReapply: CoreCommand? = null
+
+    private var activeJob: Job? = null
+    private var activeStop = false
+
+    fun submit(command: CoreCommand) {
+        synchronized(lock) {
+            when (command) {
+                CoreCommand.START -> pendingTarget = CoreCommand.START
+                CoreCommand.STOP -> {
+                    pendingTarget = CoreCommand.STOP
+                    pendingReapply = null
+                    if (!activeStop) {
+                        activeJob?.cancel()
+                    }
+                }
+                CoreCommand.RESTART -> if (pendingTarget != CoreCommand.STOP) {
+                    pendingReapply = CoreCommand.RESTART
+                }
+                CoreCommand.RELOAD -> if (pendingTarget != CoreCommand.STOP && pendingReapply == null) {
+                    pendingReapply = CoreCommand.RELOAD
+                }
+            }
+        }
+
+        if (started.compareAndSet(false, true)) {
+            scope.launch {
+                for (signal in commandSignal) {
+                    executePendingCommands()
+                }
+            }
+        }
+
+        commandSignal.trySend(Unit)
+    }
+
+    private suspend fun executePendingCommands() = coroutineScope {
+        while (true) {
+            val job = synchronized(lock) {
+                val target = pendingTarget
+                val reapply = pendingReapply
+                if (target == null && reapply == null) {
+                    return@coroutineScope
+                }
+                pendingTarget = null
+                pendingReapply = null
+                activeStop = target == CoreCommand.STOP
+                launch(start = CoroutineStart.LAZY) {
+                    execute(target, reapply)
+                }.also { activeJob = it }
+            }
+
+            job.join()
+
+            synchronized(lock) {
+                activeJob = null
+                activeStop = false
+            }
+        }
+    }
+
+    private suspend fun execute(target: CoreCommand?, reapply: CoreCommand?) {
+        try {
+            when (target) {
+                CoreCommand.STOP -> {
+                    torManager.stopTor()
+                    reverseProxyManager.stopProxy()
+                }
+                CoreCommand.START -> {
+                    val torWasRunning = coreStatus.torState == CoreState.RUNNING
+                    torManager.startTor()
+                    coroutineContext.ensureActive()
+                    if (coreStatus.torState == CoreState.RUNNING) {
+                        reverseProxyManager.startProxy()
+                    }
+                    if (torWasRunning) {
+                        applyConfiguration(reapply)
+                    }
+                }
+                else -> {
+                    waitWhileTorConfigurationInstalling()
+                    applyConfiguration(reapply)
+                }
+            }
+        } catch (e: CancellationException) {
+            logi("CoreCommandQueue ${target ?: reapply} was superseded")
+            throw e
+        } catch (e: Exception) {
+            loge("CoreCommandQueue ${target ?: reapply}", e)
+        }
+    }
+
+    private suspend fun applyConfiguration(reapply: CoreCommand?) {
+        coroutineContext.ensureActive()
+        when (reapply) {
+            CoreCommand.RESTART -> torManager.restartTor()
+            CoreCommand.RELOAD -> torManager.reloadTorConfiguration()
+            else -> Unit
+        }
+    }
+
+    private suspend fun waitWhileTorConfigurationInstalling() {
+        installer.installTorIfRequired()
+        installer.getInstallation().await()
+    }
+}
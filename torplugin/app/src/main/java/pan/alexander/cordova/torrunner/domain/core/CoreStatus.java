@@ -23,36 +23,33 @@ import static pan.alexander.cordova.torrunner.domain.core.CoreState.RESTARTING;
 import static pan.alexander.cordova.torrunner.domain.core.CoreState.RUNNING;
 import static pan.alexander.cordova.torrunner.domain.core.CoreState.STARTING;
 import static pan.alexander.cordova.torrunner.domain.core.CoreState.STOPPED;
-import static pan.alexander.cordova.torrunner.utils.logger.Logger.loge;
 import static pan.alexander.cordova.torrunner.utils.logger.Logger.logi;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
-import pan.alexander.cordova.torrunner.domain.configuration.ConfigurationRepository;
-
 @Singleton
 public final class CoreStatus {
 
-    private final ConfigurationRepository configuration;
+    private final CoreStatusPublisher publisher;
+    private final StartupMetrics startupMetrics;
 
     private volatile CoreState torState = STOPPED;
     private volatile boolean torReady;
     private volatile boolean torConnectionAvailable;
+    private volatile int torBootstrapProgress;
 
     @Inject
-    CoreStatus(ConfigurationRepository configuration) {
-        this.configuration = configuration;
+    CoreStatus(CoreStatusPublisher publisher, StartupMetrics startupMetrics) {
+        this.publisher = publisher;
+        this.startupMetrics = startupMetrics;
     }
 
     public CoreState getTorState() {
         return torState;
     }
 
-    public void setTorState(CoreState torState) {
+    public synchronized void setTorState(CoreState torState) {
         logi("Tor State " + torState);
         this.torState = torState;
         updateCordovaConfiguration();
@@ -62,9 +59,10 @@ public final class CoreStatus {
         return torReady;
     }
 
-    public void setTorReady(boolean torReady) {
+    public synchronized void setTorReady(boolean torReady) {
         this.torReady = torReady;
         if (!torReady) {
+            torBootstrapProgress = 0;
             setTorConnectionAvailable(false);
         }
         updateCordovaConfiguration();
@@ -74,31 +72,38 @@ public final class CoreStatus {
         return torConnectionAvailable;
     }
 
-    public void setTorConnectionAvailable(boolean torConnectionAvailable) {
+    public synchronized void setTorConnectionAvailable(boolean torConnectionAvailable) {
         this.torConnectionAvailable = torConnectionAvailable;
         updateCordovaConfiguration();
     }
 
-    private void updateCordovaConfiguration() {
-        try {
-            if (torState == STOPPED || torState == STARTING) {
-                setTorStatus(torState);
-            } else if (torState == RUNNING && isTorReady() && isTorConnectionAvailable()) {
-                setTorStatus(RUNNING);
-            } else if (torState == RUNNING || torState == RESTARTING) {
-                setTorStatus(STARTING);
-            } else {
-                setTorStatus(STOPPED);
-            }
-        } catch (Exception e) {
-            loge("CoreStatus updateCordovaConfiguration", e);
+    public int getTorBootstrapProgress() {
+        return torBootstrapProgress;
+    }
+
+    public synchronized void setTorBootstrapProgress(int torBootstrapProgress) {
+        if (this.torBootstrapProgress == torBootstrapProgress) {
+            return;
         }
+        logi("Tor bootstrap " + torBootstrapProgress + "%");
+        this.torBootstrapProgress = torBootstrapProgress;
+        startupMetrics.markBootstrap(torBootstrapProgress);
+        updateCordovaConfiguration();
     }
 
-    private void setTorStatus(CoreState state) throws JSONException {
-        JSONObject json = new JSONObject();
-        json.put("torState", state.name());
-        configuration.updateCordovaConfiguration(json);
+    //Called with the monitor held, so the last change is always the last snapshot published
+    private void updateCordovaConfiguration() {
+        CoreState state;
+        if (torState == STOPPED || torState == STARTING) {
+            state = torState;
+        } else if (torState == RUNNING && isTorReady() && isTorConnectionAvailable()) {
+            state = RUNNING;
+        } else if (torState == RUNNING || torState == RESTARTING) {
+            state = STARTING;
+        } else {
+            state = STOPPED;
+        }
+        publisher.update(new TorStatusSnapshot(state, torBootstrapProgress, torConnectionAvailable));
     }
 
 }
@@ -0,0 +1,95 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+
+package pan.alexander.cordova.torrunner.domain.core
+
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineName
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.launch
+import org.json.JSONObject
+import pan.alexander.cordova.torrunner.domain.configuration.ConfigurationRepository
+import pan.alexander.cordova.torrunner.utils.logger.Logger.loge
+import java.util.concurrent.atomic.AtomicBoolean
+import javax.inject.Inject
+import javax.inject.Singleton
+
+private const val STATUS_COALESCE_WINDOW_MS = 100L
+
+/**
+ * Forwards Tor status to Cordova only when it really changes.
+ * Equal snapshots are dropped by the StateFlow, and changes within
+ * [STATUS_COALESCE_WINDOW_MS] are merged into a single update.
+ */
+@Singleton
+class CoreStatusPublisher @Inject constructor(
+    dispatcherIo: CoroutineDispatcher,
+    private val configuration: ConfigurationRepository
+) {
+
+    private val scope by lazy {
+        CoroutineScope(
+            SupervisorJob() + dispatcherIo + CoroutineName("CoreStatusPublisher")
+        )
+    }
+
+    private val mutableStatus = MutableStateFlow(
+        TorStatusSnapshot(CoreState.STOPPED, 0, false)
+    )
+    val status: StateFlow<TorStatusSnapshot> = mutableStatus.asStateFlow()
+
+    private val started = AtomicBoolean(false)
+
+    @Volatile
+    private var lastPublished: TorStatusSnapshot? = null
+
+    fun update(snapshot: TorStatusSnapshot) {
+        mutableStatus.value = snapshot
+        if (started.compareAndSet(false, true)) {
+            scope.launch {
+                mutableStatus.collect {
+                    delay(STATUS_COALESCE_WINDOW_MS)
+                    publish(mutableStatus.value)
+                }
+            }
+        }
+    }
+
+    private fun publish(snapshot: TorStatusSnapshot) {
+        if (snapshot == lastPublished) {
+            return
+        }
+        try {
+            val json = JSONObject()
+            json.put("torState", snapshot.state.name)
+            json.put("torBootstrapProgress", snapshot.bootstrapProgress)
+            json.put("torConnectionAvailable", snapshot.connectionAvailable)
+            configuration.updateCordovaConfiguration(json)
+            lastPublished = snapshot
+        } catch (e: Exception) {
+            loge("CoreStatusPublisher publish", e)
+        }
+    }
+}
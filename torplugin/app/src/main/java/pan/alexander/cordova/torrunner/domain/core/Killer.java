@@ -23,22 +23,20 @@ import static pan.alexander.cordova.torrunner.domain.core.CoreState.RESTARTING;
 import static pan.alexander.cordova.torrunner.domain.core.CoreState.RUNNING;
 import static pan.alexander.cordova.torrunner.domain.core.CoreState.STOPPED;
 import static pan.alexander.cordova.torrunner.domain.core.CoreState.STOPPING;
+import static pan.alexander.cordova.torrunner.domain.core.ModuleSupervisor.REVERSE_PROXY_MODULE;
+import static pan.alexander.cordova.torrunner.domain.core.ModuleSupervisor.TOR_MODULE;
 import static pan.alexander.cordova.torrunner.utils.logger.Logger.loge;
-import static pan.alexander.cordova.torrunner.utils.logger.Logger.logi;
 import static pan.alexander.cordova.torrunner.utils.logger.Logger.logw;
 
-import com.jrummyapps.android.shell.Shell;
-
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import pan.alexander.cordova.torrunner.domain.addresschecker.AddressCheckerRepository;
+import pan.alexander.cordova.torrunner.domain.core.ModuleSupervisor.ModuleHandle;
 import pan.alexander.cordova.torrunner.framework.ActionSender;
 import pan.alexander.cordova.torrunner.framework.ConfigurationManager;
 import pan.alexander.cordova.torrunner.utils.file.FileManager;
@@ -49,25 +47,32 @@ public class Killer {
     private final ConfigurationManager configuration;
     private final ActionSender actionSender;
     private final FileManager fileManager;
+    private final ModuleTerminator moduleTerminator;
+    private final ModuleSupervisor moduleSupervisor;
+    private final AddressCheckerRepository addressCheckerRepository;
 
     private final CoreStatus coreStatus;
 
     private final ReentrantLock torLock;
     private final ReentrantLock reverseProxyLock;
 
-    private static Thread torThread;
-    private static Thread reverseProxyThread;
 
     @Inject
     Killer(
             ConfigurationManager configuration,
             ActionSender actionSender,
             FileManager fileManager,
+            ModuleTerminator moduleTerminator,
+            ModuleSupervisor moduleSupervisor,
+            AddressCheckerRepository addressCheckerRepository,
             CoreStatus coreStatus
     ) {
         this.configuration = configuration;
         this.actionSender = actionSender;
         this.fileManager = fileManager;
+        this.moduleTerminator = moduleTerminator;
+        this.moduleSupervisor = moduleSupervisor;
+        this.addressCheckerRepository = addressCheckerRepository;
         this.coreStatus = coreStatus;
         torLock = new ReentrantLock();
         reverseProxyLock = new ReentrantLock();
@@ -77,21 +82,6 @@ public class Killer {
         //TODO
     }
 
-    private void makeDelay(int sec) {
-        try {
-            TimeUnit.SECONDS.sleep(sec);
-        } catch (InterruptedException e) {
-            loge("Killer makeDelay interrupted!", e);
-        }
-    }
-
-    void setTorThread(Thread torThread) {
-        Killer.torThread = torThread;
-    }
-
-    Thread getTorThread() {
-        return torThread;
-    }
 
 
     public Runnable getTorKillerRunnable() {
@@ -109,26 +99,25 @@ public class Killer {
 
             try {
                 String torPid = readPidFile(configuration.getTorPidPath());
+                ModuleHandle torModule = moduleSupervisor.getModule(TOR_MODULE);
 
-                boolean result = doThreeAttemptsToStopModule(
+                boolean result = moduleTerminator.stopModule(
                         configuration.getTorPath(),
                         torPid,
-                        torThread
+                        torModule
                 );
 
-                if (!result && torThread != null && torThread.isAlive()) {
+                if (!result && torModule != null && torModule.isAlive()) {
                     logw("Killer cannot stop Tor. Stop with interrupt thread!");
-                    makeDelay(5);
-                    stopModuleWithInterruptThread(torThread);
+                    moduleTerminator.stopModuleWithInterrupt(torModule);
                 } else if (!result) {
-                    logw("Killer cannot stop Tor. Thread is null");
+                    logw("Killer cannot stop Tor. module is not running");
                 }
 
-                if (torThread != null && torThread.isAlive()) {
+                if (torModule != null && torModule.isAlive()) {
 
                     if (coreStatus.getTorState() != RESTARTING) {
                         //ModulesAux.saveTorStateRunning(true); TODO
-                        makeDelay(1);
                         sendResultIntent();
                     }
 
@@ -140,7 +129,7 @@ public class Killer {
                     if (coreStatus.getTorState() != RESTARTING) {
                         //ModulesAux.saveTorStateRunning(false); TODO
                         coreStatus.setTorState(STOPPED);
-                        makeDelay(1);
+                        addressCheckerRepository.clearCheckResults();
                         sendResultIntent();
                     }
                 }
@@ -153,13 +142,6 @@ public class Killer {
         };
     }
 
-    void setReverseProxyThread(Thread thread) {
-        Killer.reverseProxyThread = thread;
-    }
-
-    Thread getReverseProxyThread() {
-        return reverseProxyThread;
-    }
 
 
     public Runnable getReverseProxyKillerRunnable() {
@@ -169,22 +151,22 @@ public class Killer {
 
             try {
                 String reverseProxyPid = readPidFile(configuration.getReverseProxyPidPath());
+                ModuleHandle reverseProxyModule = moduleSupervisor.getModule(REVERSE_PROXY_MODULE);
 
-                boolean result = doThreeAttemptsToStopModule(
+                boolean result = moduleTerminator.stopModule(
                         configuration.getReverseProxyPath(),
                         reverseProxyPid,
-                        reverseProxyThread
+                        reverseProxyModule
                 );
 
-                if (!result && reverseProxyThread != null && reverseProxyThread.isAlive()) {
+                if (!result && reverseProxyModule != null && reverseProxyModule.isAlive()) {
                     logw("Killer cannot stop Reverse Proxy. Stop with interrupt thread!");
-                    makeDelay(5);
-                    stopModuleWithInterruptThread(reverseProxyThread);
+                    moduleTerminator.stopModuleWithInterrupt(reverseProxyModule);
                 } else if (!result) {
-                    logw("Killer cannot stop Reverse Proxy. Thread is null");
+                    logw("Killer cannot stop Reverse Proxy. module is not running");
                 }
 
-                if (reverseProxyThread != null && reverseProxyThread.isAlive()) {
+                if (reverseProxyModule != null && reverseProxyModule.isAlive()) {
                     loge("Killer cannot stop Reverse Proxy!");
                 }
 
@@ -197,150 +179,6 @@ public class Killer {
         };
     }
 
-    private boolean killModule(
-            String module,
-            String pid,
-            Thread thread,
-            String signal,
-            int delaySec
-    ) {
-        boolean result = false;
-
-        if (module.contains("/")) {
-            module = module.substring(module.lastIndexOf("/"));
-        }
-
-        List<String> preparedCommands = prepareKillCommands(module, pid, signal);
-
-        if (!pid.isEmpty()) {
-            killWithPid(signal, pid, delaySec);
-        }
-
-        if (thread != null) {
-            result = !thread.isAlive();
-        }
-
-        List<String> shellResult = null;
-        if (!result) {
-            shellResult = killWithSH(module, preparedCommands, delaySec);
-        }
-
-        if (thread != null) {
-            result = !thread.isAlive();
-        }
-
-        if (shellResult != null) {
-            logi("Kill " + module + ": result " + result + "\n" + shellResult);
-        } else {
-            logi("Kill " + module + ": result " + result);
-        }
-
-        return result;
-    }
-
-    private void killWithPid(String signal, String pid, int delay) {
-        try {
-            if (signal.isEmpty()) {
-                android.os.Process.sendSignal(Integer.parseInt(pid), 15);
-            } else {
-                android.os.Process.killProcess(Integer.parseInt(pid));
-            }
-            makeDelay(delay);
-        } catch (Exception e) {
-            loge("Killer killWithPid", e);
-        }
-    }
-
-    private List<String> killWithSH(String module, List<String> commands, int delay) {
-        List<String> shellResult = null;
-        try {
-            shellResult = Shell.SH.run(commands.toArray(new String[0])).stdout;
-            makeDelay(delay);
-        } catch (Exception e) {
-            loge("Kill " + module + " without root", e);
-        }
-        return shellResult;
-    }
-
-    //kill default signal SIGTERM - 15, SIGKILL -9, SIGQUIT - 3
-    private List<String> prepareKillCommands(String module, String pid, String signal) {
-        List<String> result;
-
-        if (pid.isEmpty()) {
-            String killStringToyBox = "toybox pkill " + module + " || true";
-            String killString = "pkill " + module + " || true";
-            if (!signal.isEmpty()) {
-                killStringToyBox = "toybox pkill -" + signal + " " + module + " || true";
-                killString = "pkill -" + signal + " " + module + " || true";
-            }
-
-            result = new ArrayList<>(Arrays.asList(
-                    killStringToyBox,
-                    killString
-            ));
-        } else {
-            String killAllStringToolBox = "toolbox kill " + pid + " || true";
-            String killStringToyBox = "toybox kill " + pid + " || true";
-            String killString = "kill " + pid + " || true";
-            if (!signal.isEmpty()) {
-                killAllStringToolBox = "toolbox kill -s " + signal + " " + pid + " || true";
-                killStringToyBox = "toybox kill -s " + signal + " " + pid + " || true";
-                killString = "kill -s " + signal + " " + pid + " || true";
-            }
-
-            result = new ArrayList<>(Arrays.asList(
-                    killAllStringToolBox,
-                    killStringToyBox,
-                    killString
-            ));
-        }
-
-        return result;
-    }
-
-    private boolean doThreeAttemptsToStopModule(
-            String modulePath,
-            String pid,
-            Thread thread
-    ) {
-        boolean result = false;
-        int attempts = 0;
-        while (attempts < 3 && !result) {
-            if (attempts < 2) {
-                result = killModule(modulePath, pid, thread, "", attempts + 2);
-            } else {
-                result = killModule(modulePath, pid, thread, "SIGKILL", attempts + 1);
-            }
-
-            attempts++;
-        }
-        return result;
-    }
-
-    private boolean stopModuleWithInterruptThread(Thread thread) {
-        boolean result = false;
-        int attempts = 0;
-
-        try {
-            while (attempts < 3 && !result) {
-                if (thread != null && thread.isAlive()) {
-                    thread.interrupt();
-                    makeDelay(3);
-                }
-
-                if (thread != null) {
-                    result = !thread.isAlive();
-                }
-
-                attempts++;
-            }
-        } catch (Exception e) {
-            loge("Kill with interrupt thread", e);
-        }
-
-        return result;
-    }
-
     private String readPidFile(String path) {
         String pid = "";
 
@@ -0,0 +1,181 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.domain.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Runs module processes and the tasks that control them on reused named threads,
+ * and keeps a handle for each running module, so it can be found without enumerating threads.
+ */
+@Singleton
+public class ModuleSupervisor {
+
+    public static final String TOR_MODULE = "TorThread";
+    public static final String REVERSE_PROXY_MODULE = "ReverseProxyThread";
+
+    private static final int MAX_CONTROL_THREADS = 16;
+    private static final int MAX_MODULE_THREADS = 4;
+    private static final long THREAD_KEEP_ALIVE_SEC = 60;
+    private static final long READY_POLL_INTERVAL_MS = 50;
+
+    private final ConcurrentHashMap<String, ModuleHandle> modules = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+
+    private final ExecutorService controlExecutor;
+    private final ExecutorService moduleExecutor;
+
+    @Inject
+    public ModuleSupervisor() {
+        this(System::currentTimeMillis);
+    }
+
+    ModuleSupervisor(LongSupplier clock) {
+        this.clock = clock;
+        controlExecutor = createExecutor("ModuleControl", MAX_CONTROL_THREADS, true);
+        moduleExecutor = createExecutor("Module", MAX_MODULE_THREADS, false);
+    }
+
+    //Threads for the tasks that start and stop modules, see CoreCommandQueue
+    public Executor getControlExecutor() {
+        return controlExecutor;
+    }
+
+    public ModuleHandle startModule(String name, Runnable runnable) {
+        ModuleHandle handle = new ModuleHandle(name, clock.getAsLong());
+        modules.put(name, handle);
+        try {
+            moduleExecutor.execute(() -> {
+                Thread thread = Thread.currentThread();
+                String threadName = thread.getName();
+                thread.setName(name);
+                handle.thread = thread;
+                try {
+                    runnable.run();
+                } finally {
+                    handle.thread = null;
+                    handle.onExit();
+                    Thread.interrupted();
+                    thread.setName(threadName);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            handle.onExit();
+            throw e;
+        }
+        return handle;
+    }
+
+    public ModuleHandle getModule(String name) {
+        return modules.get(name);
+    }
+
+    private ExecutorService createExecutor(String name, int maxThreads, boolean daemon) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(
+                0,
+                maxThreads,
+                THREAD_KEEP_ALIVE_SEC,
+                TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+                    thread.setDaemon(daemon);
+                    return thread;
+                }
+        );
+    }
+
+    public final class ModuleHandle {
+        private final String name;
+        private final long startTime;
+        private final CountDownLatch exitLatch = new CountDownLatch(1);
+        private volatile Thread thread;
+
+        private ModuleHandle(String name, long startTime) {
+            this.name = name;
+            this.startTime = startTime;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public long getUptimeMs() {
+            return clock.getAsLong() - startTime;
+        }
+
+        public boolean isAlive() {
+            return exitLatch.getCount() > 0;
+        }
+
+        //Returns true as soon as the module exits, false if it is still running after the timeout
+        public boolean awaitExit(long timeoutMs) {
+            try {
+                return exitLatch.await(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        //Returns true as soon as the condition is met, false if the module exits or the timeout elapses
+        public boolean awaitReady(BooleanSupplier ready, long timeoutMs) {
+            for (long waited = 0; waited <= timeoutMs; waited += READY_POLL_INTERVAL_MS) {
+                if (ready.getAsBoolean()) {
+                    return true;
+                }
+                if (awaitExit(READY_POLL_INTERVAL_MS)) {
+                    return false;
+                }
+            }
+            return ready.getAsBoolean();
+        }
+
+        public void interrupt() {
+            Thread thread = this.thread;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+
+        private void onExit() {
+            modules.remove(name, this);
+            exitLatch.countDown();
+        }
+    }
+}
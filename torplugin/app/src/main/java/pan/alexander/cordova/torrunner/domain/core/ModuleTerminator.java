@@ -0,0 +1,217 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.domain.core;
+
+import static pan.alexander.cordova.torrunner.utils.logger.Logger.loge;
+import static pan.alexander.cordova.torrunner.utils.logger.Logger.logi;
+
+import com.jrummyapps.android.shell.Shell;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import pan.alexander.cordova.torrunner.domain.core.ModuleSupervisor.ModuleHandle;
+
+/**
+ * Stops a module process with SIGTERM, then SIGKILL, then by interrupting its thread.
+ * Each step waits for the module to exit for its own grace period.
+ */
+@Singleton
+class ModuleTerminator {
+
+    //Time for a module to exit after SIGTERM before SIGKILL is sent
+    static final long TERMINATE_GRACE_PERIOD_MS = 3000;
+    static final long KILL_GRACE_PERIOD_MS = 2000;
+    static final long INTERRUPT_GRACE_PERIOD_MS = 3000;
+    private static final long PROCESS_EXIT_POLL_INTERVAL_MS = 50;
+
+    private final ProcessController processController;
+    private final long terminateGracePeriodMs;
+    private final long killGracePeriodMs;
+    private final long interruptGracePeriodMs;
+
+    @Inject
+    ModuleTerminator(ProcessController processController) {
+        this(
+                processController,
+                TERMINATE_GRACE_PERIOD_MS,
+                KILL_GRACE_PERIOD_MS,
+                INTERRUPT_GRACE_PERIOD_MS
+        );
+    }
+
+    ModuleTerminator(
+            ProcessController processController,
+            long terminateGracePeriodMs,
+            long killGracePeriodMs,
+            long interruptGracePeriodMs
+    ) {
+        this.processController = processController;
+        this.terminateGracePeriodMs = terminateGracePeriodMs;
+        this.killGracePeriodMs = killGracePeriodMs;
+        this.interruptGracePeriodMs = interruptGracePeriodMs;
+    }
+
+    private boolean killModule(
+            String modulePath,
+            String pid,
+            ModuleHandle module,
+            int signal,
+            long gracePeriodMs
+    ) {
+        boolean result;
+        long startTime = System.nanoTime();
+
+        String moduleName = modulePath;
+        if (moduleName.contains("/")) {
+            moduleName = moduleName.substring(moduleName.lastIndexOf("/"));
+        }
+
+        int signalledPid = processController.sendSignal(modulePath, pid, signal);
+
+        if (signalledPid > 0) {
+            result = waitForExit(signalledPid, module, gracePeriodMs);
+        } else {
+            //Neither the started process, the pid file nor /proc know the module
+            result = module == null || !module.isAlive();
+        }
+
+        List<String> shellResult = null;
+        if (!result && signalledPid <= 0) {
+            //Forking a shell is the last resort
+            String shellSignal = signal == ProcessController.SIGKILL ? "SIGKILL" : "";
+            shellResult = killWithSH(moduleName, prepareKillCommands(moduleName, pid, shellSignal));
+            result = waitForExit(parsePid(pid), module, gracePeriodMs);
+        }
+
+        long timeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        if (shellResult != null) {
+            logi("Kill " + moduleName + ": result " + result + " in " + timeMs + " ms\n" + shellResult);
+        } else {
+            logi("Kill " + moduleName + ": result " + result + " in " + timeMs + " ms");
+        }
+
+        return result;
+    }
+
+    //Returns as soon as the module exits. The module task ends when its process exits,
+    //without the task the /proc entry of the pid is watched.
+    private boolean waitForExit(int pid, ModuleHandle module, long timeoutMs) {
+        try {
+            if (module != null) {
+                return module.awaitExit(timeoutMs);
+            } else if (pid > 0) {
+                File procEntry = new File("/proc/" + pid);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+                while (procEntry.exists() && System.nanoTime() < deadline) {
+                    TimeUnit.MILLISECONDS.sleep(PROCESS_EXIT_POLL_INTERVAL_MS);
+                }
+                return !procEntry.exists();
+            }
+        } catch (InterruptedException e) {
+            loge("Killer waitForExit interrupted!", e);
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private int parsePid(String pid) {
+        try {
+            return Integer.parseInt(pid);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private List<String> killWithSH(String module, List<String> commands) {
+        List<String> shellResult = null;
+        try {
+            shellResult = Shell.SH.run(commands.toArray(new String[0])).stdout;
+        } catch (Exception e) {
+            loge("Kill " + module + " without root", e);
+        }
+        return shellResult;
+    }
+
+    //kill default signal SIGTERM - 15, SIGKILL -9, SIGQUIT - 3
+    private List<String> prepareKillCommands(String module, String pid, String signal) {
+        List<String> result;
+
+        if (pid.isEmpty()) {
+            String killStringToyBox = "toybox pkill " + module + " || true";
+            String killString = "pkill " + module + " || true";
+            if (!signal.isEmpty()) {
+                killStringToyBox = "toybox pkill -" + signal + " " + module + " || true";
+                killString = "pkill -" + signal + " " + module + " || true";
+            }
+
+            result = new ArrayList<>(Arrays.asList(
+                    killStringToyBox,
+                    killString
+            ));
+        } else {
+            String killAllStringToolBox = "toolbox kill " + pid + " || true";
+            String killStringToyBox = "toybox kill " + pid + " || true";
+            String killString = "kill " + pid + " || true";
+            if (!signal.isEmpty()) {
+                killAllStringToolBox = "toolbox kill -s " + signal + " " + pid + " || true";
+                killStringToyBox = "toybox kill -s " + signal + " " + pid + " || true";
+                killString = "kill -s " + signal + " " + pid + " || true";
+            }
+
+            result = new ArrayList<>(Arrays.asList(
+                    killAllStringToolBox,
+                    killStringToyBox,
+                    killString
+            ));
+        }
+
+        return result;
+    }
+
+    //SIGTERM first, SIGKILL if the module is still alive after the grace period
+    boolean stopModule(
+            String modulePath,
+            String pid,
+            ModuleHandle module
+    ) {
+        boolean result = killModule(modulePath, pid, module, ProcessController.SIGTERM, terminateGracePeriodMs);
+        if (!result) {
+            result = killModule(modulePath, pid, module, ProcessController.SIGKILL, killGracePeriodMs);
+        }
+        return result;
+    }
+
+    boolean stopModuleWithInterrupt(ModuleHandle module) {
+        if (module == null) {
+            return false;
+        }
+
+        module.interrupt();
+
+        return module.awaitExit(interruptGracePeriodMs);
+    }
+}
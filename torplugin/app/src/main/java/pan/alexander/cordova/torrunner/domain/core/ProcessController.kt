@@ -0,0 +1,171 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+
+package pan.alexander.cordova.torrunner.domain.core
+
+import pan.alexander.cordova.torrunner.utils.logger.Logger.logi
+import pan.alexander.cordova.torrunner.utils.logger.Logger.logw
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+import javax.inject.Inject
+import javax.inject.Singleton
+
+private val pidRegex = Regex("pid=(\\d+)")
+
+/**
+ * Signals module processes without forking a shell.
+ * The pid is taken from the Process started by [ProcessStarter], then from the pid file,
+ * and at last found by scanning /proc for the module executable.
+ */
+@Singleton
+class ProcessController internal constructor(
+    private val signalSender: SignalSender
+) {
+
+    @Inject
+    constructor() : this(SignalSender { pid, signal -> android.os.Process.sendSignal(pid, signal) })
+
+    private val processes = ConcurrentHashMap<String, Process>()
+    private val lastSignals = ConcurrentHashMap<String, SignalResult>()
+
+    @Volatile
+    private var pidFieldAccessible = true
+
+    fun register(modulePath: String, process: Process) {
+        processes[modulePath] = process
+    }
+
+    fun unregister(modulePath: String, process: Process) {
+        processes.remove(modulePath, process)
+    }
+
+    //Returns the signalled pid or -1 if the module process was not found
+    fun sendSignal(modulePath: String, pidFromFile: String, signal: Int): Int {
+        val startTime = System.nanoTime()
+
+        var source = PidSource.PROCESS
+        var pid = processes[modulePath]?.takeIf { isRunning(it) }?.let { getPid(it) } ?: -1
+        if (pid <= 0) {
+            source = PidSource.PID_FILE
+            pid = pidFromFile.toIntOrNull()?.takeIf { isProcessOf(it, modulePath) } ?: -1
+        }
+        if (pid <= 0) {
+            source = PidSource.PROC_SCAN
+            pid = findPidInProc(modulePath)
+        }
+        if (pid <= 0) {
+            logw("ProcessController ${modulePath.substringAfterLast("/")} process not found")
+            return -1
+        }
+
+        try {
+            signalSender.sendSignal(pid, signal)
+        } catch (e: Exception) {
+            logw("ProcessController sendSignal $signal to $pid failed ${e.message}")
+            return -1
+        }
+
+        val result = SignalResult(
+            pid = pid,
+            signal = signal,
+            source = source,
+            durationUs = (System.nanoTime() - startTime) / 1000
+        )
+        lastSignals[modulePath] = result
+        logi("Signal $signal sent to ${modulePath.substringAfterLast("/")} $result")
+
+        return pid
+    }
+
+    fun getLastSignal(modulePath: String): SignalResult? = lastSignals[modulePath]
+
+    private fun isRunning(process: Process): Boolean = try {
+        process.exitValue()
+        false
+    } catch (_: IllegalThreadStateException) {
+        true
+    }
+
+    //Android has no Process.pid(), but its process implementations keep the pid in a private field.
+    //When reflection is refused, it is not tried again and the pid is parsed from toString(),
+    //which these implementations format as Process[pid=...].
+    private fun getPid(process: Process): Int {
+        if (pidFieldAccessible) {
+            try {
+                return process.javaClass.getDeclaredField("pid").run {
+                    isAccessible = true
+                    getInt(process)
+                }
+            } catch (e: Exception) {
+                pidFieldAccessible = false
+                logw("ProcessController cannot read pid of ${process.javaClass.name} $e")
+            }
+        }
+
+        val pid = pidRegex.find(process.toString())?.groupValues?.get(1)?.toIntOrNull() ?: -1
+        if (pid <= 0) {
+            logw("ProcessController cannot get pid of ${process.javaClass.name}")
+        }
+        return pid
+    }
+
+    private fun isProcessOf(pid: Int, modulePath: String): Boolean =
+        readCommandLine(pid)?.startsWith(modulePath) == true
+
+    private fun findPidInProc(modulePath: String): Int {
+        val entries = File("/proc").list() ?: return -1
+        for (entry in entries) {
+            val pid = entry.toIntOrNull() ?: continue
+            if (isProcessOf(pid, modulePath)) {
+                return pid
+            }
+        }
+        return -1
+    }
+
+    private fun readCommandLine(pid: Int): String? = try {
+        File("/proc/$pid/cmdline").readText().substringBefore('\u0000')
+    } catch (_: Exception) {
+        null
+    }
+
+    data class SignalResult(
+        val pid: Int,
+        val signal: Int,
+        val source: PidSource,
+        val durationUs: Long
+    )
+
+    fun interface SignalSender {
+        fun sendSignal(pid: Int, signal: Int)
+    }
+
+    enum class PidSource {
+        PROCESS,
+        PID_FILE,
+        PROC_SCAN
+    }
+
+    companion object {
+        const val SIGHUP = 1
+        const val SIGKILL = 9
+        const val SIGTERM = 15
+    }
+}
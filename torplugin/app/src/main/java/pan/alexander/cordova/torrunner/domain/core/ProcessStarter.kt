@@ -21,22 +21,53 @@ package pan.alexander.cordova.torrunner.domain.core
 
 import pan.alexander.cordova.torrunner.utils.logger.Logger.loge
 import pan.alexander.cordova.torrunner.utils.logger.Logger.logi
+import pan.alexander.cordova.torrunner.utils.logger.Logger.logw
 import java.io.*
+import kotlin.concurrent.thread
 
-class ProcessStarter(private val libraryDir: String) {
+//Only the last lines are kept for the CommandResult, the whole output is streamed to the listener
+private const val MAX_OUTPUT_LINES = 100
+private const val STDERR_DRAIN_TIMEOUT_MS = 5000L
+
+class ProcessStarter @JvmOverloads constructor(
+    private val libraryDir: String,
+    //A child process that inherited stderr can keep it open after the module exits
+    private val stderrDrainTimeoutMs: Long = STDERR_DRAIN_TIMEOUT_MS
+) {
 
     var stdOutputListener: OnStdOutputListener? = null
+    var processController: ProcessController? = null
 
     fun startProcess(startCommand: String): CommandResult {
 
-        val stdout = mutableListOf<String>()
-        val stderr = mutableListOf<String>()
+        val stdout = LinesRingBuffer(MAX_OUTPUT_LINES)
+        val stderr = LinesRingBuffer(MAX_OUTPUT_LINES)
         var exitCode: Int
+        var stderrReader: Thread? = null
+        val modulePath = startCommand.substringBefore(" ")
+        var process: Process? = null
 
         try {
 
             val env = Array(1) { "LD_LIBRARY_PATH=$libraryDir" }
-            val process = Runtime.getRuntime().exec(startCommand, env)
+            process = Runtime.getRuntime().exec(startCommand, env)
+            processController?.register(modulePath, process)
+            stdOutputListener?.onProcessStarted()
+
+            //Drain stderr concurrently, otherwise the filled pipe can stall the process
+            stderrReader = thread(name = "${Thread.currentThread().name}StdErr", isDaemon = true) {
+                try {
+                    BufferedReader(InputStreamReader(process.errorStream)).use { bufferedReader ->
+                        var line = bufferedReader.readLine()
+                        while (line != null) {
+                            stderr.add(line)
+                            loge(line)
+                            line = bufferedReader.readLine()
+                        }
+                    }
+                } catch (_: IOException) {
+                }
+            }
 
             BufferedReader(InputStreamReader(process.inputStream)).use { bufferedReader ->
                 var line = bufferedReader.readLine()
@@ -48,15 +79,6 @@ class ProcessStarter(private val libraryDir: String) {
                 }
             }
 
-            BufferedReader(InputStreamReader(process.errorStream)).use { bufferedReader ->
-                var line = bufferedReader.readLine()
-                while (line != null) {
-                    stderr.add(line)
-                    loge(line)
-                    line = bufferedReader.readLine()
-                }
-            }
-
             try {
                 OutputStreamWriter(process.outputStream, "UTF-8").use { writer ->
                     writer.write("exit\n")
@@ -64,7 +86,8 @@ class ProcessStarter(private val libraryDir: String) {
                 }
             } catch (e: IOException) {
                 //noinspection StatementWithEmptyBody
-                if (e.message?.contains("EPIPE") == true || e.message?.contains("Stream closed") == true) {
+                val message = e.message ?: ""
+                if (message.contains("EPIPE") || message.contains("Broken pipe") || message.contains("Stream closed")) {
                     // Method most horrid to catch broken pipe, in which case we do nothing. The command is not a shell, the
                     // shell closed stdin, the script already contained the exit command, etc. these cases we want the output
                     // instead of returning null
@@ -75,17 +98,59 @@ class ProcessStarter(private val libraryDir: String) {
             }
 
             exitCode = process.waitFor()
+            stderrReader.join(stderrDrainTimeoutMs)
+            if (stderrReader.isAlive) {
+                logw("$modulePath stderr is still open after exit, stop reading it")
+                stderrReader.interrupt()
+                closeQuietly(process.errorStream)
+            }
             process.destroy()
         } catch (_: InterruptedException) {
+            stderrReader?.interrupt()
             exitCode = ShellExitCode.WATCHDOG_EXIT
         } catch (_: IOException) {
             exitCode = ShellExitCode.SHELL_WRONG_UID
+        } finally {
+            process?.let { processController?.unregister(modulePath, it) }
         }
 
-        return CommandResult(stdout, stderr, exitCode)
+        return CommandResult(stdout.toList(), stderr.toList(), exitCode)
+    }
+
+    private fun closeQuietly(stream: Closeable) {
+        try {
+            stream.close()
+        } catch (_: IOException) {
+        }
     }
 
     interface OnStdOutputListener {
+        fun onProcessStarted()
         fun onStdOutput(stdout: String)
     }
+
+    private class LinesRingBuffer(private val capacity: Int) {
+        private val lines = arrayOfNulls<String>(capacity)
+        private var next = 0
+        private var size = 0
+
+        @Synchronized
+        fun add(line: String) {
+            lines[next] = line
+            next = (next + 1) % capacity
+            if (size < capacity) {
+                size++
+            }
+        }
+
+        @Synchronized
+        fun toList(): List<String> {
+            val result = ArrayList<String>(size)
+            val first = (next - size + capacity) % capacity
+            for (i in 0 until size) {
+                result.add(lines[(first + i) % capacity]!!)
+            }
+            return result
+        }
+    }
 }
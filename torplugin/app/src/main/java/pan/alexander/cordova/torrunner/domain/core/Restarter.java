@@ -38,16 +38,19 @@ public class Restarter {
     private final FileManager fileManager;
     private final ConfigurationManager configuration;
     private final ActionSender actionSender;
+    private final ProcessController processController;
 
     @Inject
     public Restarter(
             FileManager fileManager,
             ConfigurationManager configuration,
-            ActionSender actionSender
+            ActionSender actionSender,
+            ProcessController processController
     ) {
         this.fileManager = fileManager;
         this.configuration = configuration;
         this.actionSender = actionSender;
+        this.processController = processController;
     }
 
     public void restartTor() {
@@ -82,26 +85,20 @@ public class Restarter {
         return pid;
     }
 
-    private synchronized void restartModule(String module, String pid) {
+    private synchronized void restartModule(String modulePath, String pid) {
+        if (processController.sendSignal(modulePath, pid, ProcessController.SIGHUP) > 0) {
+            return;
+        }
+
+        //Forking a shell is the last resort
+        String module = modulePath;
         if (module.contains("/")) {
             module = module.substring(module.lastIndexOf("/"));
         }
 
         String[] preparedCommands = prepareRestartCommand(module, pid);
 
-        if (!pid.isEmpty()) {
-            killWithPid(pid);
-        } else {
-            killWithSH(module, preparedCommands);
-        }
-    }
-
-    private void killWithPid(String pid) {
-        try {
-            android.os.Process.sendSignal(Integer.parseInt(pid), 1);
-        } catch (Exception e) {
-            loge("Restarter killWithPid", e);
-        }
+        killWithSH(module, preparedCommands);
     }
 
     private void killWithSH(String module, String[] commands) {
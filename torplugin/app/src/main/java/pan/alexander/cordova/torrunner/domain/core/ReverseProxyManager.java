@@ -19,30 +19,42 @@
 
 package pan.alexander.cordova.torrunner.domain.core;
 
+import static pan.alexander.cordova.torrunner.domain.core.ModuleSupervisor.REVERSE_PROXY_MODULE;
+import static pan.alexander.cordova.torrunner.framework.CoreServiceActions.ACTION_STOP_TOR;
 import static pan.alexander.cordova.torrunner.utils.logger.Logger.loge;
+import static pan.alexander.cordova.torrunner.utils.logger.Logger.logi;
 import static pan.alexander.cordova.torrunner.utils.logger.Logger.logw;
-import static pan.alexander.cordova.torrunner.utils.thread.ThreadDelay.makeDelay;
 
 import java.util.concurrent.locks.ReentrantLock;
 
+import androidx.annotation.WorkerThread;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import pan.alexander.cordova.torrunner.domain.configuration.ConfigurationRepository;
+import pan.alexander.cordova.torrunner.domain.core.ModuleSupervisor.ModuleHandle;
+import pan.alexander.cordova.torrunner.domain.preferences.PreferenceRepository;
+import pan.alexander.cordova.torrunner.framework.ActionSender;
 import pan.alexander.cordova.torrunner.utils.portchecker.PortChecker;
-import pan.alexander.cordova.torrunner.utils.thread.ThreadFinder;
+import pan.alexander.cordova.torrunner.utils.proxy.FrontProxy;
 
 @Singleton
 public class ReverseProxyManager {
 
-    private static final int START_DELAY_SEC = 30;
+    private static final long PROXY_PORT_READY_TIMEOUT_MS = 5000;
+    private static final long PROXY_PORT_RELEASE_TIMEOUT_MS = 5000;
+    private static final long IN_PROCESS_PROXY_STOP_TIMEOUT_MS = 3000;
 
     private final CoreStatus coreStatus;
     private final PortChecker portChecker;
     private final ConfigurationRepository configuration;
     private final StarterHelper starterHelper;
     private final Killer killer;
-    private final ThreadFinder threadFinder;
+    private final ModuleSupervisor moduleSupervisor;
+    private final PreferenceRepository preferences;
+    private final FrontProxy frontProxy;
+    private final ActionSender actionSender;
 
     @Inject
     public ReverseProxyManager(
@@ -51,81 +63,74 @@ public class ReverseProxyManager {
             CoreStatus coreStatus,
             StarterHelper starterHelper,
             Killer killer,
-            ThreadFinder threadFinder
+            ModuleSupervisor moduleSupervisor,
+            PreferenceRepository preferences,
+            FrontProxy frontProxy,
+            ActionSender actionSender
     ) {
         this.portChecker = portChecker;
         this.configuration = configuration;
         this.coreStatus = coreStatus;
         this.starterHelper = starterHelper;
         this.killer = killer;
-        this.threadFinder = threadFinder;
+        this.moduleSupervisor = moduleSupervisor;
+        this.preferences = preferences;
+        this.frontProxy = frontProxy;
+        this.actionSender = actionSender;
     }
 
     private final ReentrantLock lock = new ReentrantLock();
 
+    //Blocks until the Reverse Proxy is started. Commands are serialized by CoreCommandQueue.
+    @WorkerThread
     public void startProxy() {
 
-        if (lock.isLocked()) {
-            return;
-        }
+        lock.lock();
 
-        new Thread(() -> {
+        try {
 
-            if (!lock.tryLock()) {
+            if (coreStatus.getTorState() != CoreState.RUNNING) {
+                logw("Reverse Proxy is not started because Tor is not running");
                 return;
             }
 
-            int counter = 0;
-            while (coreStatus.getTorState() != CoreState.RUNNING && counter < START_DELAY_SEC) {
-                counter ++;
-                makeDelay(1);
-            }
-
-            try {
-                Thread previousReverseProxyThread = checkPreviouslyRunningReverseProxyModule();
-
-                if (previousReverseProxyThread != null && previousReverseProxyThread.isAlive()) {
-                    changeReverseProxyStatus(previousReverseProxyThread);
-                    return;
-                }
+            ModuleHandle previousReverseProxyModule = checkPreviouslyRunningReverseProxyModule();
 
-                if (stopReverseProxyIfPortIsBusy()) {
-                    changeReverseProxyStatus(killer.getReverseProxyThread());
-                    logw("Reverse Proxy port " + configuration.getReverseProxyDefaultPort() + " is busy");
-                    return;
-                }
+            if (previousReverseProxyModule != null && previousReverseProxyModule.isAlive()) {
+                changeReverseProxyStatus(previousReverseProxyModule);
+                return;
+            }
 
-                Thread reverseProxyThread = new Thread(starterHelper.getReverseProxyStarterRunnable());
-                reverseProxyThread.setName("ReverseProxyThread");
-                reverseProxyThread.setDaemon(false);
-                try {
-                    reverseProxyThread.setPriority(Thread.NORM_PRIORITY);
-                } catch (SecurityException e) {
-                    loge("Reverse Proxy start", e);
-                }
-                reverseProxyThread.start();
+            if (stopReverseProxyIfPortIsBusy()) {
+                changeReverseProxyStatus(moduleSupervisor.getModule(REVERSE_PROXY_MODULE));
+                logw("Reverse Proxy port " + configuration.getReverseProxyDefaultPort() + " is busy");
+                return;
+            }
 
-                changeReverseProxyStatus(reverseProxyThread);
+            ModuleHandle reverseProxyModule = moduleSupervisor.startModule(
+                    REVERSE_PROXY_MODULE,
+                    preferences.isInProcessProxyEnabled()
+                            ? getInProcessProxyRunnable()
+                            : starterHelper.getReverseProxyStarterRunnable()
+            );
 
-            } catch (Exception e) {
-                loge("Reverse Proxy was unable to start", e);
-                sendReverseProxyStartFailureToJavaScript();
-            } finally {
-                if (lock.isHeldByCurrentThread()) {
-                    lock.unlock();
-                }
-            }
+            changeReverseProxyStatus(reverseProxyModule);
 
-        }).start();
+        } catch (Exception e) {
+            loge("Reverse Proxy was unable to start", e);
+            sendReverseProxyStartFailureToJavaScript();
+        } finally {
+            lock.unlock();
+        }
 
     }
 
-    private Thread checkPreviouslyRunningReverseProxyModule() {
+    private ModuleHandle checkPreviouslyRunningReverseProxyModule() {
 
-        Thread result = null;
+        ModuleHandle result = null;
 
         try {
-            result = threadFinder.findThreadByName("ReverseProxyThread");
+            result = moduleSupervisor.getModule(REVERSE_PROXY_MODULE);
         } catch (Exception e) {
             loge("Tor manager checkPreviouslyRunningReverseProxyModule", e);
         }
@@ -133,14 +138,17 @@ public class ReverseProxyManager {
         return result;
     }
 
-    private void changeReverseProxyStatus(final Thread reverseProxyThread) {
+    private void changeReverseProxyStatus(final ModuleHandle reverseProxyModule) {
 
-        makeDelay(2);
+        if (reverseProxyModule != null) {
+            reverseProxyModule.awaitReady(
+                    () -> portChecker.isPortBusy(String.valueOf(configuration.getReverseProxyDefaultPort())),
+                    PROXY_PORT_READY_TIMEOUT_MS
+            );
+        }
 
-        if (reverseProxyThread.isAlive()) {
-            if (killer != null) {
-                killer.setReverseProxyThread(reverseProxyThread);
-            }
+        if (reverseProxyModule == null || !reverseProxyModule.isAlive()) {
+            logw("Reverse Proxy module is not running");
         }
     }
 
@@ -148,31 +156,68 @@ public class ReverseProxyManager {
         boolean stopRequired = portChecker.isPortBusy(configuration.getReverseProxyDefaultPort() + "");
 
         if (stopRequired) {
-            try {
 
-                Thread killerThread = new Thread(killer.getReverseProxyKillerRunnable());
-                killerThread.start();
+            stopRunningProxy();
 
-                while (killerThread.isAlive()) {
-                    killerThread.join();
-                }
-
-                makeDelay(5);
-
-                stopRequired = portChecker.isPortBusy(configuration.getReverseProxyDefaultPort() + "");
-                if (stopRequired) {
-                    return true;
-                }
-
-            } catch (InterruptedException e) {
-                loge("TorManager stopReverseProxyIfPortsIsBusy join interrupted!", e);
+            boolean portReleased = portChecker.awaitPortAvailable(
+                    configuration.getReverseProxyDefaultPort(),
+                    PROXY_PORT_RELEASE_TIMEOUT_MS
+            );
+            if (!portReleased) {
+                return true;
             }
         }
         return false;
     }
 
+    @WorkerThread
     public void stopProxy() {
-        new Thread(killer.getReverseProxyKillerRunnable()).start();
+
+        lock.lock();
+
+        try {
+            stopRunningProxy();
+        } catch (Exception e) {
+            loge("ReverseProxyManager stopProxy", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //The in-process proxy has no pid file, so it is stopped directly instead of by the Killer
+    private void stopRunningProxy() {
+        if (!frontProxy.isRunning()) {
+            killer.getReverseProxyKillerRunnable().run();
+            return;
+        }
+
+        frontProxy.stop();
+
+        ModuleHandle reverseProxyModule = moduleSupervisor.getModule(REVERSE_PROXY_MODULE);
+        if (reverseProxyModule != null
+                && !reverseProxyModule.awaitExit(IN_PROCESS_PROXY_STOP_TIMEOUT_MS)) {
+            logw("In-process proxy did not stop in time. Stop with interrupt thread!");
+            reverseProxyModule.interrupt();
+        }
+    }
+
+    private Runnable getInProcessProxyRunnable() {
+        return () -> {
+            logi("Start in-process proxy");
+            try {
+                frontProxy.run(
+                        configuration.getReverseProxyDefaultPort(),
+                        configuration.getTorSocksPort()
+                );
+            } catch (Exception e) {
+                loge("In-process proxy failed", e);
+
+                if (coreStatus.getTorState() == CoreState.RUNNING) {
+                    logw("Stop Tor because of a reverse proxy failure");
+                    actionSender.sendIntent(ACTION_STOP_TOR);
+                }
+            }
+        };
     }
 
     private void sendReverseProxyStartFailureToJavaScript() {
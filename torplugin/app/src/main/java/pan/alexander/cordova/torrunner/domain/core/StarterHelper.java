@@ -64,6 +64,9 @@ public class StarterHelper implements ProcessStarter.OnStdOutputListener {
     private final Restarter restarter;
     private final ActionSender actionSender;
     private final TorConnectionCheckerInteractor torConnectionCheckerInteractor;
+    private final TorControlManager torControlManager;
+    private final ProcessController processController;
+    private final StartupMetrics startupMetrics;
     private final int EXTRA_CONNECTION_CHECK_MIN_INTERVAL_SEC = 60;
     private volatile long lastExtraConnectionCheck;
 
@@ -76,7 +79,10 @@ public class StarterHelper implements ProcessStarter.OnStdOutputListener {
             Installer installer,
             Restarter restarter,
             ActionSender actionSender,
-            TorConnectionCheckerInteractor torConnectionCheckerInteractor
+            TorConnectionCheckerInteractor torConnectionCheckerInteractor,
+            TorControlManager torControlManager,
+            ProcessController processController,
+            StartupMetrics startupMetrics
     ) {
         this.configuration = configuration;
         this.coreStatus = coreStatus;
@@ -86,44 +92,61 @@ public class StarterHelper implements ProcessStarter.OnStdOutputListener {
         this.restarter = restarter;
         this.actionSender = actionSender;
         this.torConnectionCheckerInteractor = torConnectionCheckerInteractor;
+        this.torControlManager = torControlManager;
+        this.processController = processController;
+        this.startupMetrics = startupMetrics;
         this.lastExtraConnectionCheck = System.currentTimeMillis();
     }
 
-    Runnable getTorStarterRunnable() {
-        return () -> {
+    //Corrects and saves tor.conf and returns the Tor command line.
+    //Runs before the Tor module is started, while the ports are checked.
+    String prepareTorCommand() {
+        List<String> lines = readTorConfiguration();
 
-            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+        List<String> newLines = new ArrayList<>(lines);
 
-            String torCmdString;
-            final CommandResult shellResult;
-            List<String> lines = readTorConfiguration();
+        correctObfsModulePath(newLines);
 
-            List<String> newLines = new ArrayList<>(lines);
+        correctControlPortOptions(newLines);
 
-            correctObfsModulePath(newLines);
+        //checkTorPortsForBusyness(newLines); TODO
 
-            //checkTorPortsForBusyness(newLines); TODO
+        boolean webTunnelUsed = isWebTunnelBridgesUsed(newLines);
 
-            boolean webTunnelUsed = isWebTunnelBridgesUsed(newLines);
+        if (lines.size() != newLines.size() || !new HashSet<>(lines).containsAll(newLines)) {
+            saveTorConfiguration(newLines);
+        }
 
-            if (lines.size() != newLines.size() || !new HashSet<>(lines).containsAll(newLines)) {
-                saveTorConfiguration(newLines);
-            }
+        String torCmdString = configuration.getTorPath()
+                + " -f " + configuration.getTorConfPath()
+                + " -pidfile " + configuration.getTorPidPath();
+        String fakeHosts = getFakeSniHosts();
+        if (!fakeHosts.isEmpty() && !webTunnelUsed) {
+            torCmdString += " -fake-hosts " + fakeHosts;
+        }
 
-            torCmdString = configuration.getTorPath()
-                    + " -f " + configuration.getTorConfPath()
-                    + " -pidfile " + configuration.getTorPidPath();
-            String fakeHosts = getFakeSniHosts();
-            if (!fakeHosts.isEmpty() && !webTunnelUsed) {
-                torCmdString += " -fake-hosts " + fakeHosts;
-            }
+        return torCmdString;
+    }
+
+    Runnable getTorStarterRunnable(String torCmdString) {
+        return () -> {
+
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+
+            final CommandResult shellResult;
 
             logi("Tor is listening on port " + configuration.getTorSocksPort());
 
+            torControlManager.prepare();
+            torControlManager.connect();
+
             ProcessStarter starter = new ProcessStarter(configuration.getNativeLibPath());
             starter.setStdOutputListener(this);
+            starter.setProcessController(processController);
             shellResult = starter.startProcess(torCmdString);
 
+            torControlManager.disconnect();
+
             if (shellResult.isSuccessful()) {
                 if (coreStatus.getTorState() == RUNNING) {
                     coreStatus.setTorState(STOPPED);
@@ -176,8 +199,9 @@ public class StarterHelper implements ProcessStarter.OnStdOutputListener {
                     + " -sockport " + configuration.getTorSocksPort()
                     + " -pidfile " + configuration.getReverseProxyPidPath();
 
-            shellResult = new ProcessStarter(configuration.getNativeLibPath())
-                    .startProcess(reverseProxyCmdString);
+            ProcessStarter starter = new ProcessStarter(configuration.getNativeLibPath());
+            starter.setProcessController(processController);
+            shellResult = starter.startProcess(reverseProxyCmdString);
 
 
             if (shellResult.isSuccessful()) {
@@ -218,6 +242,34 @@ public class StarterHelper implements ProcessStarter.OnStdOutputListener {
         }
     }
 
+    //Tor writes the automatically selected control port to the file, so there is no port conflicts
+    private void correctControlPortOptions(List<String> lines) {
+        List<String> controlOptions = new ArrayList<>();
+        controlOptions.add("ControlPort auto");
+        controlOptions.add("ControlPortWriteToFile " + configuration.getTorControlPortFilePath());
+        controlOptions.add("CookieAuthentication 1");
+        controlOptions.add("CookieAuthFile " + configuration.getTorControlCookiePath());
+
+        for (String option : controlOptions) {
+            String key = option.substring(0, option.indexOf(" ") + 1);
+            boolean found = false;
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                if (line.startsWith(key)) {
+                    if (!found && !line.equals(option)) {
+                        lines.set(i, option);
+                    } else if (found) {
+                        lines.remove(i--);
+                    }
+                    found = true;
+                }
+            }
+            if (!found) {
+                lines.add(option);
+            }
+        }
+    }
+
     private void checkTorPortsForBusyness(List<String> lines) {
 
         String socksPort = configuration.getTorDefaultSocksPort() + "";
@@ -264,7 +316,7 @@ public class StarterHelper implements ProcessStarter.OnStdOutputListener {
     }
 
     private void saveTorConfiguration(List<String> lines) {
-        fileManager.rewriteFile(configuration.getTorConfPath(), lines);
+        configuration.rewriteTorConfiguration(lines);
     }
 
     private String getFakeSniHosts() {
@@ -311,16 +363,29 @@ public class StarterHelper implements ProcessStarter.OnStdOutputListener {
         //TODO
     }
 
+    @Override
+    public void onProcessStarted() {
+        startupMetrics.mark(StartupMetrics.MILESTONE_PROCESS_SPAWNED);
+    }
+
     @Override
     public void onStdOutput(@NotNull String stdout) {
-        if(stdout.endsWith("Bootstrapped 100% (done): Done")) {
-            coreStatus.setTorReady(true);
-            torConnectionCheckerInteractor.checkInternetConnection();
-        } else if ((stdout.endsWith("Ignoring directory request, since no bridge nodes are available yet.")
-                || stdout.endsWith("We will try to fetch missing descriptors soon.")
-                || stdout.endsWith("Discarding this circuit.")
-                || stdout.endsWith("Possible compression bomb; abandoning stream.")
-                || stdout.endsWith("Retrying on a new circuit."))
+        //Tor output is used as a fallback only, when control port is unavailable
+        if (torControlManager.isConnected()) {
+            return;
+        }
+
+        TorOutputEvent event = TorOutputClassifier.classify(stdout);
+        if (event == TorOutputEvent.BOOTSTRAP) {
+            int progress = TorOutputClassifier.getBootstrapProgress(stdout);
+            if (progress >= 0) {
+                coreStatus.setTorBootstrapProgress(progress);
+            }
+            if (progress == 100) {
+                coreStatus.setTorReady(true);
+                torConnectionCheckerInteractor.checkInternetConnection();
+            }
+        } else if (event.isConnectionProblem()
                 && System.currentTimeMillis() - lastExtraConnectionCheck > EXTRA_CONNECTION_CHECK_MIN_INTERVAL_SEC * 1000) {
             lastExtraConnectionCheck = System.currentTimeMillis();
             torConnectionCheckerInteractor.checkInternetConnection();
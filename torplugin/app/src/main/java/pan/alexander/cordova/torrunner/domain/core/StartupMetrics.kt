@@ -0,0 +1,106 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.domain.core
+
+import org.json.JSONObject
+import pan.alexander.cordova.torrunner.utils.metrics.LatencyHistogram
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.function.LongSupplier
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Collects the time from the Tor start request to each startup milestone over all starts.
+ * Every milestone is recorded once per start, the histograms are kept in memory only.
+ */
+@Singleton
+class StartupMetrics internal constructor(
+    private val clock: LongSupplier
+) {
+
+    @Inject
+    constructor() : this(LongSupplier { System.currentTimeMillis() })
+
+    private val milestones = ConcurrentHashMap<String, LatencyHistogram>()
+    private val stages = ConcurrentHashMap<String, LatencyHistogram>()
+    private val reachedMilestones = ConcurrentHashMap.newKeySet<String>()
+    private val starts = AtomicLong()
+
+    //Stage durations of the last finished start, in the order the stages ended
+    @Volatile
+    private var lastStages: Map<String, Long> = emptyMap()
+
+    //The time of the start request, 0 when no start is tracked
+    @Volatile
+    private var startRequestTime = 0L
+
+    fun onStartRequested() {
+        reachedMilestones.clear()
+        startRequestTime = clock.asLong
+        starts.incrementAndGet()
+    }
+
+    fun onStopRequested() {
+        startRequestTime = 0
+    }
+
+    fun mark(milestone: String) {
+        val origin = startRequestTime
+        if (origin == 0L || !reachedMilestones.add(milestone)) {
+            return
+        }
+        milestones.getOrPut(milestone) { LatencyHistogram() }.record(clock.asLong - origin)
+        //The first successful connection check is the last milestone
+        if (milestone == MILESTONE_CONNECTED) {
+            startRequestTime = 0
+        }
+    }
+
+    fun markBootstrap(progress: Int) = mark("$MILESTONE_BOOTSTRAP_PREFIX$progress")
+
+    fun recordStages(durations: Map<String, Long>) {
+        durations.forEach { (stage, durationMs) ->
+            stages.getOrPut(stage) { LatencyHistogram() }.record(durationMs)
+        }
+        lastStages = LinkedHashMap(durations)
+    }
+
+    fun toJson(): JSONObject = JSONObject().apply {
+        put("starts", starts.get())
+        put("milestones", toJson(milestones))
+        put("stages", toJson(stages))
+        put("lastStages", JSONObject().apply {
+            lastStages.forEach { (stage, durationMs) -> put(stage, durationMs) }
+        })
+    }
+
+    private fun toJson(histograms: Map<String, LatencyHistogram>) = JSONObject().apply {
+        histograms.forEach { (name, histogram) -> put(name, histogram.toJson()) }
+    }
+
+    companion object {
+        const val MILESTONE_INSTALLED = "installed"
+        const val MILESTONE_PROCESS_SPAWNED = "process_spawned"
+        const val MILESTONE_SOCKS_PORT_OPEN = "socks_port_open"
+        const val MILESTONE_BOOTSTRAP_PREFIX = "bootstrap_"
+        const val MILESTONE_CONNECTED = "connected"
+    }
+}
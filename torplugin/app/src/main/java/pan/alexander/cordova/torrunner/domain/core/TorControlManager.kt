@@ -0,0 +1,248 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.domain.core
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineName
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.job
+import kotlinx.coroutines.launch
+import pan.alexander.cordova.torrunner.domain.configuration.ConfigurationRepository
+import pan.alexander.cordova.torrunner.domain.network.TorConnectionCheckerInteractor
+import pan.alexander.cordova.torrunner.utils.Constants.LOOPBACK_ADDRESS
+import pan.alexander.cordova.torrunner.utils.control.TorControlConnection
+import pan.alexander.cordova.torrunner.utils.control.TorControlEvent
+import pan.alexander.cordova.torrunner.utils.file.FileManager
+import pan.alexander.cordova.torrunner.utils.logger.Logger.logd
+import pan.alexander.cordova.torrunner.utils.logger.Logger.loge
+import pan.alexander.cordova.torrunner.utils.logger.Logger.logi
+import pan.alexander.cordova.torrunner.utils.logger.Logger.logw
+import java.io.File
+import java.net.InetSocketAddress
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlin.coroutines.coroutineContext
+
+private const val CONTROL_PORT_WAIT_TIMEOUT_SEC = 30
+private const val CONTROL_PORT_POLL_INTERVAL_MS = 100L
+private const val EXTRA_CONNECTION_CHECK_MIN_INTERVAL_SEC = 60
+
+@Singleton
+class TorControlManager @Inject constructor(
+    dispatcherIo: CoroutineDispatcher,
+    private val configuration: ConfigurationRepository,
+    private val coreStatus: CoreStatus,
+    private val fileManager: FileManager,
+    private val torConnectionCheckerInteractor: TorConnectionCheckerInteractor
+) : TorControlConnection.OnTorControlEventListener {
+
+    private val scope by lazy {
+        CoroutineScope(
+            SupervisorJob() + dispatcherIo + CoroutineName("TorControlManager")
+        )
+    }
+
+    private val connectionProblemActions = setOf(
+        "CIRCUIT_NOT_ESTABLISHED",
+        "NOT_ENOUGH_DIR_INFO",
+        "DANGEROUS_PORT",
+        "SOCKS_BAD_HOSTNAME"
+    )
+
+    @Volatile
+    private var connection: TorControlConnection? = null
+
+    @Volatile
+    private var task: Job? = null
+
+    @Volatile
+    private var lastExtraConnectionCheck = 0L
+
+    @Volatile
+    var lastBandwidth: TorControlEvent.Bandwidth? = null
+        private set
+
+    fun isConnected() = connection?.isClosed == false
+
+    //Returns false when the control port is unavailable, so the caller can send SIGHUP instead
+    fun reloadConfiguration(): Boolean {
+        val connection = connection?.takeIf { !it.isClosed } ?: return false
+        return try {
+            connection.signal("RELOAD")
+            true
+        } catch (e: Exception) {
+            logw("Tor control port reload failed ${e.message}")
+            false
+        }
+    }
+
+    //Should be called before Tor starts, so the stale port file will not be used
+    fun prepare() {
+        disconnect()
+        fileManager.deleteFile(configuration.getTorControlPortFilePath())
+    }
+
+    @Synchronized
+    fun connect() {
+        task?.cancel()
+        task = scope.launch {
+            tryConnect()
+        }
+    }
+
+    @Synchronized
+    fun disconnect() {
+        task?.cancel()
+        task = null
+        connection?.let {
+            it.listener = null
+            it.close()
+        }
+        connection = null
+        lastBandwidth = null
+    }
+
+    private suspend fun tryConnect() {
+        try {
+            val address = waitForControlPort()
+            if (address == null) {
+                logw("Tor control port is unavailable, fall back to the Tor output")
+                return
+            }
+
+            val cookie = File(configuration.getTorControlCookiePath()).readBytes()
+
+            val job = coroutineContext.job
+            val connection = TorControlConnection.open(address)
+            try {
+                connection.listener = this
+                connection.authenticate(cookie)
+                connection.setEvents("STATUS_CLIENT", "CIRC", "STREAM", "BW")
+            } catch (e: Exception) {
+                connection.close()
+                throw e
+            }
+            if (!publishConnection(connection, job)) {
+                logi("Tor control connection is not used, it was cancelled during the handshake")
+                return
+            }
+
+            logi("Tor control port connected")
+
+            //Bootstrap events that took place before the connection was established
+            connection.getInfo("status/bootstrap-phase")
+                ?.let { TorControlEvent.parseBootstrapPhase(it) }
+                ?.let { onBootstrap(it) }
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            loge("TorControlManager connect", e)
+        }
+    }
+
+    /**
+     * The handshake blocks and cannot be cancelled, so a [disconnect] or a newer [connect]
+     * may have happened in the meantime. In that case the connection is closed instead.
+     */
+    @Synchronized
+    private fun publishConnection(connection: TorControlConnection, job: Job): Boolean {
+        val unusedConnection = if (job.isActive && task === job) {
+            this.connection.also { this.connection = connection }
+        } else {
+            connection
+        }
+        unusedConnection?.let {
+            it.listener = null
+            it.close()
+        }
+        return unusedConnection !== connection
+    }
+
+    private suspend fun waitForControlPort(): InetSocketAddress? {
+        val portFile = File(configuration.getTorControlPortFilePath())
+        val cookieFile = File(configuration.getTorControlCookiePath())
+        val startTime = System.currentTimeMillis()
+        while (coroutineContext.isActive
+            && System.currentTimeMillis() - startTime < CONTROL_PORT_WAIT_TIMEOUT_SEC * 1000L
+            && coreStatus.torState != CoreState.STOPPING
+            && coreStatus.torState != CoreState.STOPPED
+        ) {
+            if (portFile.isFile && cookieFile.isFile) {
+                //ControlPortWriteToFile content is PORT=127.0.0.1:port
+                val port = fileManager.readFile(portFile).firstOrNull {
+                    it.startsWith("PORT=")
+                }?.substringAfterLast(":")?.trim()?.toIntOrNull()
+                if (port != null) {
+                    return InetSocketAddress(LOOPBACK_ADDRESS, port)
+                }
+            }
+            delay(CONTROL_PORT_POLL_INTERVAL_MS)
+        }
+        return null
+    }
+
+    override fun onTorControlEvent(event: TorControlEvent) {
+        //Bandwidth events arrive every second
+        logd { "Tor control event $event" }
+        when (event) {
+            is TorControlEvent.Bootstrap -> onBootstrap(event)
+            is TorControlEvent.ClientStatus -> if (event.action in connectionProblemActions) {
+                checkConnectionIfRequired()
+            }
+            is TorControlEvent.CircuitStatus -> if (event.status == "FAILED") {
+                checkConnectionIfRequired()
+            }
+            is TorControlEvent.Bandwidth -> lastBandwidth = event
+            is TorControlEvent.StreamStatus -> Unit
+        }
+    }
+
+    //A late callback from a replaced connection must not drop the current one
+    @Synchronized
+    override fun onTorControlConnectionLost(connection: TorControlConnection) {
+        if (this.connection !== connection) {
+            return
+        }
+        this.connection = null
+        logw("Tor control connection lost")
+    }
+
+    private fun onBootstrap(event: TorControlEvent.Bootstrap) {
+        coreStatus.setTorBootstrapProgress(event.progress)
+        if (event.progress == 100 && !coreStatus.isTorReady) {
+            coreStatus.setTorReady(true)
+            torConnectionCheckerInteractor.checkInternetConnection()
+        } else if (event.warning) {
+            checkConnectionIfRequired()
+        }
+    }
+
+    private fun checkConnectionIfRequired() {
+        if (System.currentTimeMillis() - lastExtraConnectionCheck > EXTRA_CONNECTION_CHECK_MIN_INTERVAL_SEC * 1000L) {
+            lastExtraConnectionCheck = System.currentTimeMillis()
+            torConnectionCheckerInteractor.checkInternetConnection()
+        }
+    }
+}
@@ -23,27 +23,39 @@ import static pan.alexander.cordova.torrunner.domain.core.CoreState.RESTARTING;
 import static pan.alexander.cordova.torrunner.domain.core.CoreState.RUNNING;
 import static pan.alexander.cordova.torrunner.domain.core.CoreState.STARTING;
 import static pan.alexander.cordova.torrunner.domain.core.CoreState.STOPPED;
+import static pan.alexander.cordova.torrunner.domain.core.ModuleSupervisor.TOR_MODULE;
+import static pan.alexander.cordova.torrunner.domain.core.TorStartupTimer.STAGE_CONFIGURATION;
+import static pan.alexander.cordova.torrunner.domain.core.TorStartupTimer.STAGE_INSTALL;
+import static pan.alexander.cordova.torrunner.domain.core.TorStartupTimer.STAGE_PORTS;
+import static pan.alexander.cordova.torrunner.domain.core.TorStartupTimer.STAGE_SOCKS;
 import static pan.alexander.cordova.torrunner.utils.logger.Logger.loge;
-import static pan.alexander.cordova.torrunner.utils.thread.ThreadDelay.makeDelay;
+import static pan.alexander.cordova.torrunner.utils.logger.Logger.logi;
 
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import androidx.annotation.WorkerThread;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import dagger.Lazy;
 import pan.alexander.cordova.torrunner.domain.configuration.ConfigurationRepository;
+import pan.alexander.cordova.torrunner.domain.core.ModuleSupervisor.ModuleHandle;
+import pan.alexander.cordova.torrunner.domain.installer.Installer;
 import pan.alexander.cordova.torrunner.domain.network.OnTorConnectionCheckedListener;
 import pan.alexander.cordova.torrunner.domain.network.TorConnectionCheckerInteractor;
 import pan.alexander.cordova.torrunner.utils.file.FileManager;
 import pan.alexander.cordova.torrunner.utils.network.NetworkChecker;
 import pan.alexander.cordova.torrunner.utils.portchecker.PortChecker;
-import pan.alexander.cordova.torrunner.utils.thread.ThreadFinder;
 
 @Singleton
 public class TorManager implements OnTorConnectionCheckedListener {
 
+    private static final long SOCKS_PORT_READY_TIMEOUT_MS = 10_000;
+
     private final PortChecker portChecker;
     private final FileManager fileManager;
     private final ConfigurationRepository configuration;
@@ -51,9 +63,13 @@ public class TorManager implements OnTorConnectionCheckedListener {
     private final StarterHelper starterHelper;
     private final Restarter restarter;
     private final Killer killer;
-    private final ThreadFinder threadFinder;
+    private final ModuleSupervisor moduleSupervisor;
     private final TorRestarterReconnector torRestarterReconnector;
+    private final TorControlManager torControlManager;
     private final NetworkChecker networkChecker;
+    private final Installer installer;
+    private final TorStartupTimer startupTimer;
+    private final StartupMetrics startupMetrics;
 
     private final Lazy<TorConnectionCheckerInteractor> torConnectionCheckerInteractor;
 
@@ -66,9 +82,13 @@ public class TorManager implements OnTorConnectionCheckedListener {
             StarterHelper starterHelper,
             Restarter restarter,
             Killer killer,
-            ThreadFinder threadFinder,
+            ModuleSupervisor moduleSupervisor,
             TorRestarterReconnector torRestarterReconnector,
+            TorControlManager torControlManager,
             NetworkChecker networkChecker,
+            Installer installer,
+            TorStartupTimer startupTimer,
+            StartupMetrics startupMetrics,
             Lazy<TorConnectionCheckerInteractor> torConnectionCheckerInteractor
     ) {
         this.portChecker = portChecker;
@@ -78,77 +98,77 @@ public class TorManager implements OnTorConnectionCheckedListener {
         this.starterHelper = starterHelper;
         this.restarter = restarter;
         this.killer = killer;
-        this.threadFinder = threadFinder;
+        this.moduleSupervisor = moduleSupervisor;
         this.torRestarterReconnector = torRestarterReconnector;
+        this.torControlManager = torControlManager;
         this.networkChecker = networkChecker;
+        this.installer = installer;
+        this.startupTimer = startupTimer;
+        this.startupMetrics = startupMetrics;
         this.torConnectionCheckerInteractor = torConnectionCheckerInteractor;
     }
 
     private final ReentrantLock lock = new ReentrantLock();
 
+    //Blocks until Tor is started. Commands are serialized by CoreCommandQueue.
+    @WorkerThread
     public void startTor() {
 
-        if (lock.isLocked()) {
-            return;
-        }
+        lock.lock();
 
-        new Thread(() -> {
-
-            if (!lock.tryLock()) {
-                return;
-            }
+        try {
 
             if (coreStatus.getTorState() == STOPPED) {
                 coreStatus.setTorState(STARTING);
             }
 
-            try {
-                Thread previousTorThread = checkPreviouslyRunningTorModule();
-
-                if (previousTorThread != null && previousTorThread.isAlive()) {
-                    changeTorStatus(previousTorThread);
-                    return;
-                }
-
-                if (stopTorIfPortsIsBusy()) {
-                    changeTorStatus(killer.getTorThread());
-                    return;
-                }
-
-                clearTorLog();
-
-                Thread torThread = new Thread(starterHelper.getTorStarterRunnable());
-                torThread.setName("TorThread");
-                torThread.setDaemon(false);
-                try {
-                    torThread.setPriority(Thread.NORM_PRIORITY);
-                } catch (SecurityException e) {
-                    loge("TorManager startTor", e);
-                }
-                torThread.start();
-
-                changeTorStatus(torThread);
-
-            } catch (Exception e) {
-                loge("Tor was unable to start", e);
-                sendTorStartFailureToJavaScript();
-            } finally {
-                if (lock.isHeldByCurrentThread()) {
-                    lock.unlock();
-                }
+            ModuleHandle previousTorModule = checkPreviouslyRunningTorModule();
+
+            if (previousTorModule != null && previousTorModule.isAlive()) {
+                changeTorStatus(previousTorModule);
+                return;
+            }
+
+            startupTimer.begin();
+
+            //Installation with tor.conf preparation and the ports check don't depend on each other
+            CompletableFuture<String> torCommand = runStage(STAGE_INSTALL, this::installTorIfRequired)
+                    .thenCompose(installed -> runStage(STAGE_CONFIGURATION, starterHelper::prepareTorCommand));
+            CompletableFuture<Boolean> portsBusy = runStage(STAGE_PORTS, this::stopTorIfPortsIsBusy);
+
+            if (portsBusy.join()) {
+                changeTorStatus(moduleSupervisor.getModule(TOR_MODULE));
+                return;
             }
 
-        }).start();
+            clearTorLog();
+
+            ModuleHandle torModule = moduleSupervisor.startModule(
+                    TOR_MODULE,
+                    starterHelper.getTorStarterRunnable(torCommand.join())
+            );
+
+            long socksStartTime = startupTimer.now();
+            changeTorStatus(torModule);
+            startupTimer.record(STAGE_SOCKS, socksStartTime);
+            startupTimer.finish();
+
+        } catch (Exception e) {
+            loge("Tor was unable to start", e);
+            sendTorStartFailureToJavaScript();
+        } finally {
+            lock.unlock();
+        }
 
     }
 
-    private Thread checkPreviouslyRunningTorModule() {
+    private ModuleHandle checkPreviouslyRunningTorModule() {
 
-        Thread result = null;
+        ModuleHandle result = null;
 
         try {
             if (coreStatus.getTorState() != RESTARTING) {
-                result = threadFinder.findThreadByName("TorThread");
+                result = moduleSupervisor.getModule(TOR_MODULE);
             }
         } catch (Exception e) {
             loge("checkPreviouslyRunningTorModule", e);
@@ -157,17 +177,40 @@ public class TorManager implements OnTorConnectionCheckedListener {
         return result;
     }
 
-    private void changeTorStatus(final Thread torThread) {
-
-        makeDelay(2);
+    private <T> CompletableFuture<T> runStage(String stage, Supplier<T> step) {
+        return CompletableFuture.supplyAsync(() -> {
+            long stageStartTime = startupTimer.now();
+            try {
+                return step.get();
+            } finally {
+                startupTimer.record(stage, stageStartTime);
+            }
+        }, moduleSupervisor.getControlExecutor());
+    }
 
-        if (torThread.isAlive()) {
+    private boolean installTorIfRequired() {
+        installer.installTorIfRequired();
+        boolean installed = installer.getInstallation().join();
+        startupMetrics.mark(StartupMetrics.MILESTONE_INSTALLED);
+        return installed;
+    }
 
-            coreStatus.setTorState(RUNNING);
+    //Tor opens the SOCKS port shortly after start, long before it is bootstrapped
+    private void changeTorStatus(final ModuleHandle torModule) {
 
-            if (killer != null) {
-                killer.setTorThread(torThread);
+        if (torModule != null) {
+            boolean socksPortOpen = torModule.awaitReady(
+                    () -> portChecker.isPortBusy(String.valueOf(configuration.getTorSocksPort())),
+                    SOCKS_PORT_READY_TIMEOUT_MS
+            );
+            if (socksPortOpen) {
+                startupMetrics.mark(StartupMetrics.MILESTONE_SOCKS_PORT_OPEN);
             }
+        }
+
+        if (torModule != null && torModule.isAlive()) {
+
+            coreStatus.setTorState(RUNNING);
 
             checkInternetConnection();
         } else {
@@ -179,102 +222,84 @@ public class TorManager implements OnTorConnectionCheckedListener {
         boolean stopRequired = portChecker.isPortBusy(configuration.getTorDefaultSocksPort() + "");
 
         if (stopRequired) {
-            try {
-                coreStatus.setTorState(RESTARTING);
-
-                Thread killerThread = new Thread(killer.getTorKillerRunnable());
-                killerThread.start();
+            coreStatus.setTorState(RESTARTING);
 
-                while (killerThread.isAlive()) {
-                    killerThread.join();
-                }
+            killer.getTorKillerRunnable().run();
 
-                makeDelay(5);
-
-                if (coreStatus.getTorState() == RUNNING) {
-                    return true;
-                }
-
-                coreStatus.setTorState(STARTING);
-
-            } catch (InterruptedException e) {
-                loge("TorManager restartTor join interrupted!", e);
+            if (coreStatus.getTorState() == RUNNING) {
+                return true;
             }
+
+            coreStatus.setTorState(STARTING);
         }
         return false;
     }
 
+    @WorkerThread
     public void stopTor() {
-        new Thread(killer.getTorKillerRunnable()).start();
+
+        lock.lock();
+
+        try {
+            killer.getTorKillerRunnable().run();
+        } catch (Exception e) {
+            loge("TorManager stopTor", e);
+        } finally {
+            lock.unlock();
+        }
     }
 
+    @WorkerThread
     public void reloadTorConfiguration() {
 
-        if (coreStatus.getTorState() != RUNNING || lock.isLocked()) {
-            return;
-        }
+        lock.lock();
 
-        new Thread(() -> {
+        try {
 
-            if (!lock.tryLock()) {
+            if (coreStatus.getTorState() != RUNNING) {
                 return;
             }
 
-            try {
-
+            if (torControlManager.reloadConfiguration()) {
+                logi("Tor configuration reloaded");
+            } else {
                 restarter.getTorRestarterRunnable().run();
-
-                checkInternetConnection();
-
-            } catch (Exception e) {
-                loge("TorManager restartTor", e);
-            } finally {
-                if (lock.isHeldByCurrentThread()) {
-                    lock.unlock();
-                }
             }
 
-        }).start();
+            checkInternetConnection();
+
+        } catch (Exception e) {
+            loge("TorManager reloadTorConfiguration", e);
+        } finally {
+            lock.unlock();
+        }
     }
 
+    @WorkerThread
     public void restartTor() {
-        if (coreStatus.getTorState() != RUNNING || lock.isLocked()) {
-            return;
-        }
 
-        new Thread(() -> {
+        lock.lock();
+
+        try {
 
-            if (!lock.tryLock()) {
+            if (coreStatus.getTorState() != RUNNING) {
                 return;
             }
 
-            try {
-                coreStatus.setTorState(RESTARTING);
-
-                Thread killerThread = new Thread(killer.getTorKillerRunnable());
-                killerThread.start();
-
-                while (killerThread.isAlive()) {
-                    killerThread.join();
-                }
-
-                makeDelay(5);
+            coreStatus.setTorState(RESTARTING);
 
-                if (coreStatus.getTorState() != RUNNING) {
-                    lock.unlock();
-                    startTor();
-                    checkInternetConnection();
-                }
+            killer.getTorKillerRunnable().run();
 
-            } catch (InterruptedException e) {
-                loge("TorManager restartTorFull join interrupted!", e);
-            } finally {
-                if (lock.isHeldByCurrentThread()) {
-                    lock.unlock();
-                }
+            if (coreStatus.getTorState() != RUNNING) {
+                startTor();
+                checkInternetConnection();
             }
 
-        }).start();
+        } catch (Exception e) {
+            loge("TorManager restartTorFull", e);
+        } finally {
+            lock.unlock();
+        }
     }
 
     private void clearTorLog() {
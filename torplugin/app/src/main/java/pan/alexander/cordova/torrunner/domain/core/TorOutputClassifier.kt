@@ -0,0 +1,164 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.domain.core
+
+private const val BOOTSTRAP_PATTERN = "Bootstrapped "
+private const val MAX_LOG_PREFIX_LENGTH = 64
+
+/**
+ * Maps a Tor output line to [TorOutputEvent] without allocations.
+ * Tail patterns are compiled into one trie of reversed strings, so a line is checked
+ * against all of them in a single backward pass that usually stops after a few chars.
+ */
+object TorOutputClassifier {
+
+    private val suffixTrie = ReversedTrie(
+        listOf(
+            "Ignoring directory request, since no bridge nodes are available yet." to TorOutputEvent.NO_BRIDGES,
+            "We will try to fetch missing descriptors soon." to TorOutputEvent.MISSING_DESCRIPTORS,
+            "Discarding this circuit." to TorOutputEvent.CIRCUIT_DISCARDED,
+            "Possible compression bomb; abandoning stream." to TorOutputEvent.COMPRESSION_BOMB,
+            "Retrying on a new circuit." to TorOutputEvent.CIRCUIT_RETRY
+        )
+    )
+
+    @JvmStatic
+    fun classify(line: CharSequence): TorOutputEvent {
+        val event = suffixTrie.matchSuffix(line)
+        if (event != TorOutputEvent.NONE) {
+            return event
+        }
+        return if (findBootstrapValueStart(line) >= 0) TorOutputEvent.BOOTSTRAP else TorOutputEvent.NONE
+    }
+
+    //Returns the value of "Bootstrapped 45% (loading_descriptors): ..." or -1
+    @JvmStatic
+    fun getBootstrapProgress(line: CharSequence): Int {
+        var index = findBootstrapValueStart(line)
+        if (index < 0) {
+            return -1
+        }
+        var progress = -1
+        while (index < line.length) {
+            val char = line[index++]
+            if (char in '0'..'9') {
+                progress = if (progress < 0) char - '0' else progress * 10 + (char - '0')
+            } else {
+                return if (char == '%') progress else -1
+            }
+        }
+        return -1
+    }
+
+    //Tor output looks like "Oct 17 23:00:00.000 [notice] Bootstrapped 45% ..."
+    private fun findBootstrapValueStart(line: CharSequence): Int {
+        if (line is String) {
+            //Intrinsic String search is several times faster than charAt loops
+            val prefixEnd = line.indexOf(']')
+            val messageStart = if (prefixEnd in 0 until MAX_LOG_PREFIX_LENGTH) prefixEnd + 2 else 0
+            return if (line.startsWith(BOOTSTRAP_PATTERN, messageStart)) {
+                messageStart + BOOTSTRAP_PATTERN.length
+            } else {
+                -1
+            }
+        }
+        var messageStart = 0
+        val prefixEnd = minOf(line.length, MAX_LOG_PREFIX_LENGTH)
+        for (i in 0 until prefixEnd) {
+            if (line[i] == ']') {
+                messageStart = i + 2
+                break
+            }
+        }
+        if (messageStart + BOOTSTRAP_PATTERN.length > line.length) {
+            return -1
+        }
+        for (i in BOOTSTRAP_PATTERN.indices) {
+            if (line[messageStart + i] != BOOTSTRAP_PATTERN[i]) {
+                return -1
+            }
+        }
+        return messageStart + BOOTSTRAP_PATTERN.length
+    }
+
+    private class ReversedTrie(patterns: List<Pair<String, TorOutputEvent>>) {
+
+        private val events = TorOutputEvent.entries
+        private val charToColumn = IntArray(128) { -1 }
+        private val alphabetSize: Int
+        private val transitions: IntArray
+        private val outputs: IntArray
+
+        init {
+            var columns = 0
+            for ((text, _) in patterns) {
+                for (char in text) {
+                    require(char.code < 128) { "Only ASCII patterns are supported" }
+                    if (charToColumn[char.code] == -1) {
+                        charToColumn[char.code] = columns++
+                    }
+                }
+            }
+            alphabetSize = columns
+
+            val nodes = mutableListOf(IntArray(alphabetSize) { -1 })
+            val nodeOutputs = mutableListOf(-1)
+            for ((text, event) in patterns) {
+                var node = 0
+                for (i in text.indices.reversed()) {
+                    val column = charToColumn[text[i].code]
+                    if (nodes[node][column] == -1) {
+                        nodes[node][column] = nodes.size
+                        nodes.add(IntArray(alphabetSize) { -1 })
+                        nodeOutputs.add(-1)
+                    }
+                    node = nodes[node][column]
+                }
+                nodeOutputs[node] = event.ordinal
+            }
+
+            transitions = IntArray(nodes.size * alphabetSize)
+            for (node in nodes.indices) {
+                nodes[node].copyInto(transitions, node * alphabetSize)
+            }
+            outputs = nodeOutputs.toIntArray()
+        }
+
+        fun matchSuffix(line: CharSequence): TorOutputEvent {
+            var node = 0
+            var index = line.length - 1
+            while (index >= 0) {
+                val code = line[index--].code
+                val column = if (code < 128) charToColumn[code] else -1
+                if (column < 0) {
+                    return TorOutputEvent.NONE
+                }
+                node = transitions[node * alphabetSize + column]
+                if (node < 0) {
+                    return TorOutputEvent.NONE
+                }
+                if (outputs[node] >= 0) {
+                    return events[outputs[node]]
+                }
+            }
+            return TorOutputEvent.NONE
+        }
+    }
+}
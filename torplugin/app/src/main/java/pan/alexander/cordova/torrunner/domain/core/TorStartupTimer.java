@@ -0,0 +1,77 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.domain.core;
+
+import static pan.alexander.cordova.torrunner.utils.logger.Logger.logi;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Measures the duration of each stage of a Tor start and hands them to {@link StartupMetrics},
+ * so the time until the SOCKS port is ready can be compared between versions.
+ */
+@Singleton
+public class TorStartupTimer {
+
+    public static final String STAGE_INSTALL = "install";
+    public static final String STAGE_CONFIGURATION = "configuration";
+    public static final String STAGE_PORTS = "ports";
+    public static final String STAGE_SOCKS = "socks";
+    public static final String STAGE_TOTAL = "total";
+
+    private final LongSupplier clock;
+    private final StartupMetrics startupMetrics;
+    private final Map<String, Long> stages = new LinkedHashMap<>();
+    private long startTime;
+
+    @Inject
+    public TorStartupTimer(StartupMetrics startupMetrics) {
+        this(System::currentTimeMillis, startupMetrics);
+    }
+
+    TorStartupTimer(LongSupplier clock, StartupMetrics startupMetrics) {
+        this.clock = clock;
+        this.startupMetrics = startupMetrics;
+    }
+
+    public long now() {
+        return clock.getAsLong();
+    }
+
+    public synchronized void begin() {
+        stages.clear();
+        startTime = now();
+    }
+
+    public synchronized void record(String stage, long stageStartTime) {
+        stages.put(stage, now() - stageStartTime);
+    }
+
+    public synchronized void finish() {
+        stages.put(STAGE_TOTAL, now() - startTime);
+        startupMetrics.recordStages(stages);
+        logi("Tor start stages, ms " + stages);
+    }
+}
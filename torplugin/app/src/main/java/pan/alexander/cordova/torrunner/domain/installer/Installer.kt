@@ -29,6 +29,7 @@ import pan.alexander.cordova.torrunner.utils.logger.Logger.loge
 import pan.alexander.cordova.torrunner.utils.logger.Logger.logi
 import pan.alexander.cordova.torrunner.utils.zip.ZipFileManager
 import java.io.File
+import java.util.concurrent.CompletableFuture
 import java.util.concurrent.atomic.AtomicBoolean
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -44,41 +45,46 @@ class Installer @Inject constructor(
     @Volatile
     var installing = AtomicBoolean(false)
 
+    private val installationLock = Any()
+    private var installation: CompletableFuture<Boolean> = CompletableFuture.completedFuture(true)
+
     @WorkerThread
-    fun installTorIfRequired(): Boolean {
-        if (installing.compareAndSet(false, true)) {
-            try {
-                if (!configurationRepository.isTorConfigurationAvailable()) {
-                    return installTorConfiguration()
-                }
-            } catch (e: Exception) {
-                loge("Installer installTorIfRequired", e)
-                return false
-            } finally {
-                installing.set(false)
-            }
-        }
-        return true
-    }
+    fun installTorIfRequired(): Boolean = install("installTorIfRequired")
 
     @WorkerThread
-    fun reinstallTor(): Boolean {
-        if (installing.compareAndSet(false, true)) {
-            try {
-                if (!configurationRepository.isTorConfigurationAvailable()) {
-                    return installTorConfiguration()
-                }
-            } catch (e: Exception) {
-                loge("Installer reinstallTor", e)
-                return false
-            } finally {
+    fun reinstallTor(): Boolean = install("reinstallTor")
+
+    //Completes when the current installation is finished, so callers don't have to poll
+    fun getInstallation(): CompletableFuture<Boolean> = synchronized(installationLock) {
+        installation
+    }
+
+    private fun install(caller: String): Boolean {
+        val future = synchronized(installationLock) {
+            if (installing.compareAndSet(false, true)) {
+                CompletableFuture<Boolean>().also { installation = it }
+            } else {
+                null
+            }
+        } ?: return true
+
+        var success = true
+        try {
+            if (!configurationRepository.isTorConfigurationAvailable()) {
+                success = installTorConfiguration()
+            }
+        } catch (e: Exception) {
+            loge("Installer $caller", e)
+            success = false
+        } finally {
+            synchronized(installationLock) {
                 installing.set(false)
+                future.complete(success)
             }
         }
-        return true
+        return success
     }
 
-
     private fun installTorConfiguration(): Boolean {
         logi("Start adding Tor configuration")
         var success = removeInstallationDirs()
@@ -137,7 +143,7 @@ class Installer @Inject constructor(
                 }
             }
             if (savingRequired) {
-                fileManager.rewriteFile(File(configurationRepository.getTorConfPath()), torConf)
+                configurationRepository.rewriteTorConfiguration(torConf)
             }
         }
         return true
@@ -0,0 +1,41 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.domain.logs
+
+import kotlinx.coroutines.flow.Flow
+
+interface LogRepository {
+    //The last lines of Tor.log, then the lines appended to it
+    fun getTorLogUpdates(): Flow<LogUpdate>
+
+    //0 when there is no log
+    fun getTorLogSize(): Long
+
+    //Copies Tor.log to a segment and truncates it in place, returns the segment name or null
+    fun cutTorLogSegment(suffix: String): String?
+
+    //Replaces the segment with its archive
+    fun archiveTorLogSegment(segment: String): Boolean
+
+    //Archives and uncompressed segments, the newest first
+    fun getTorLogArchives(): List<LogArchive>
+
+    fun deleteTorLogArchive(archive: LogArchive)
+}
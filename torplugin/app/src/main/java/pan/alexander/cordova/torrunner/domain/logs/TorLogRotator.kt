@@ -0,0 +1,135 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.domain.logs
+
+import androidx.annotation.WorkerThread
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineName
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import pan.alexander.cordova.torrunner.utils.logger.Logger.loge
+import pan.alexander.cordova.torrunner.utils.logger.Logger.logi
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.function.LongSupplier
+import javax.inject.Inject
+import javax.inject.Singleton
+
+private const val LOG_CHECK_INTERVAL_MS = 60_000L
+private const val MAX_LOG_SIZE_BYTES = 1024L * 1024
+private const val MAX_ARCHIVES = 5
+private const val MAX_ARCHIVES_SIZE_BYTES = 2L * 1024 * 1024
+
+/**
+ * Keeps Tor.log below [MAX_LOG_SIZE_BYTES] with copy and truncate,
+ * so Tor keeps writing to the same file without a signal. Tor opens the log in append mode,
+ * so it continues from the beginning of the truncated file.
+ * Copied segments are compressed in the background and the oldest archives are removed.
+ * A segment that could not be compressed counts towards the limits and is retried on the next check.
+ */
+@Singleton
+class TorLogRotator internal constructor(
+    dispatcherIo: CoroutineDispatcher,
+    private val logRepository: LogRepository,
+    private val clock: LongSupplier
+) {
+
+    @Inject
+    constructor(
+        dispatcherIo: CoroutineDispatcher,
+        logRepository: LogRepository
+    ) : this(dispatcherIo, logRepository, LongSupplier { System.currentTimeMillis() })
+
+    private val scope by lazy {
+        CoroutineScope(
+            SupervisorJob() + dispatcherIo + CoroutineName("TorLogRotator")
+        )
+    }
+
+    private val started = AtomicBoolean(false)
+    private val lock = Any()
+
+    fun start() {
+        if (!started.compareAndSet(false, true)) {
+            return
+        }
+        scope.launch {
+            while (isActive) {
+                try {
+                    rotateIfRequired()
+                } catch (e: Exception) {
+                    loge("TorLogRotator", e)
+                }
+                delay(LOG_CHECK_INTERVAL_MS)
+            }
+        }
+    }
+
+    fun stop() {
+        scope.coroutineContext.cancelChildren()
+        started.set(false)
+    }
+
+    @WorkerThread
+    fun rotateIfRequired(): Boolean = synchronized(lock) {
+        val rotated = logRepository.getTorLogSize() >= MAX_LOG_SIZE_BYTES && cutSegment()
+
+        //Segments whose compression failed earlier are retried
+        if (rotated || logRepository.getTorLogArchives().any { !it.isCompressed }) {
+            scope.launch {
+                archiveSegments()
+                removeOldArchives()
+            }
+        }
+
+        return rotated
+    }
+
+    //Copy first and compress later, to keep the window between the copy and the truncation short
+    private fun cutSegment(): Boolean {
+        val timestamp = SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(Date(clock.asLong))
+        val segment = logRepository.cutTorLogSegment(timestamp) ?: return false
+        logi("Tor log rotated to $segment")
+        return true
+    }
+
+    private fun archiveSegments() = synchronized(lock) {
+        logRepository.getTorLogArchives()
+            .filter { !it.isCompressed }
+            .forEach { logRepository.archiveTorLogSegment(it.name) }
+    }
+
+    //Uncompressed segments are counted with their own size
+    private fun removeOldArchives() = synchronized(lock) {
+        var totalSize = 0L
+        logRepository.getTorLogArchives().forEachIndexed { index, archive ->
+            totalSize += archive.sizeBytes
+            if (index >= MAX_ARCHIVES || totalSize > MAX_ARCHIVES_SIZE_BYTES) {
+                logRepository.deleteTorLogArchive(archive)
+            }
+        }
+    }
+}
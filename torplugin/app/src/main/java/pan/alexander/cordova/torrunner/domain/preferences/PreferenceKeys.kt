@@ -22,4 +22,6 @@ package pan.alexander.cordova.torrunner.domain.preferences
 object PreferenceKeys {
     const val TOR_MODE = "TOR_MODE"
     const val LAST_NETWORK = "LAST_NETWORK"
+    const val IN_PROCESS_PROXY = "IN_PROCESS_PROXY"
+    const val PERSIST_ADDRESS_CHECKS = "PERSIST_ADDRESS_CHECKS"
 }
@@ -28,4 +28,10 @@ interface PreferenceRepository {
 
     fun getLastNetwork(): NetworkType
     fun setLastNetwork(networkType: NetworkType)
+
+    fun isInProcessProxyEnabled(): Boolean
+    fun setInProcessProxyEnabled(enabled: Boolean)
+
+    fun isAddressChecksPersistenceEnabled(): Boolean
+    fun setAddressChecksPersistenceEnabled(enabled: Boolean)
 }
@@ -49,6 +49,9 @@ class ConfigurationManager @Inject constructor(
     val torGeoipPath by lazy { "$torConfigurationDir/geoip" }
     val torGeoip6Path by lazy { "$torConfigurationDir/geoip6" }
     val torPidPath by lazy { "$appDataDir/tor.pid" }
+    val torControlPortFilePath by lazy { "$appDataDir/tor.control" }
+    val torControlCookiePath by lazy { "$appDataDir/tor_data/control_auth_cookie" }
+    val addressCheckerCachePath by lazy { "$appDataDir/address_checker.cache" }
 
     val torAssetsStream by lazy { context.assets.open("tor.mp3") }
 
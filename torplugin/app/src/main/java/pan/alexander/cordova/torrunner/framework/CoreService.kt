@@ -25,14 +25,15 @@ import android.os.IBinder
 import kotlinx.coroutines.CoroutineName
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.cancelChildren
-import kotlinx.coroutines.delay
 import kotlinx.coroutines.launch
 import pan.alexander.cordova.torrunner.App
+import pan.alexander.cordova.torrunner.domain.core.CoreCommand
+import pan.alexander.cordova.torrunner.domain.core.CoreCommandQueue
 import pan.alexander.cordova.torrunner.domain.core.CoreState
 import pan.alexander.cordova.torrunner.domain.core.CoreStatus
-import pan.alexander.cordova.torrunner.domain.core.ReverseProxyManager
+import pan.alexander.cordova.torrunner.domain.core.StartupMetrics
 import pan.alexander.cordova.torrunner.domain.core.TorManager
-import pan.alexander.cordova.torrunner.domain.installer.Installer
+import pan.alexander.cordova.torrunner.domain.logs.TorLogRotator
 import pan.alexander.cordova.torrunner.domain.network.NetworkRepository
 import pan.alexander.cordova.torrunner.domain.network.TorConnectionCheckerInteractor
 import pan.alexander.cordova.torrunner.framework.CoreServiceActions.ACTION_RELOAD_TOR_CONFIGURATION
@@ -45,19 +46,19 @@ import pan.alexander.cordova.torrunner.utils.logger.Logger.logi
 import pan.alexander.cordova.torrunner.utils.network.NetworkChecker
 import javax.inject.Inject
 import kotlin.coroutines.CoroutineContext
-import kotlin.time.DurationUnit
-import kotlin.time.toDuration
 
 class CoreService : Service() {
 
     @Inject
     lateinit var torManager: TorManager
     @Inject
-    lateinit var reverseProxyManager: ReverseProxyManager
-    @Inject
     lateinit var coreStatus: CoreStatus
     @Inject
-    lateinit var installer: Installer
+    lateinit var coreCommandQueue: CoreCommandQueue
+    @Inject
+    lateinit var startupMetrics: StartupMetrics
+    @Inject
+    lateinit var torLogRotator: TorLogRotator
     @Inject
     lateinit var coroutineContext: CoroutineContext
     @Inject
@@ -80,6 +81,8 @@ class CoreService : Service() {
         listenNetworkChanges()
 
         torConnectionCheckerInteractor.addListener(torManager)
+
+        torLogRotator.start()
     }
 
     private fun listenNetworkChanges() {
@@ -103,9 +106,11 @@ class CoreService : Service() {
         networkRepository.unlistenNetworkChanges()
 
         if (coreStatus.torState != CoreState.STOPPED) {
-            stopTor().also { stopProxy() }
+            coreCommandQueue.submit(CoreCommand.STOP)
         }
 
+        torLogRotator.stop()
+
         scope.coroutineContext.cancelChildren()
 
         logi("Core Service stopped")
@@ -127,14 +132,20 @@ class CoreService : Service() {
         when (action) {
             ACTION_START_TOR -> {
                 if (networkChecker.isNetworkAvailable()) {
-                    startTor().also { startProxy() }
+                    if (coreStatus.torState == CoreState.STOPPED) {
+                        startupMetrics.onStartRequested()
+                    }
+                    coreCommandQueue.submit(CoreCommand.START)
                 } else {
                     logi("But the network is unavailable")
                 }
             }
-            ACTION_STOP_TOR -> stopTor().also { stopProxy() }
-            ACTION_RESTART_TOR -> restartTor()
-            ACTION_RELOAD_TOR_CONFIGURATION -> reloadTorConfiguration()
+            ACTION_STOP_TOR -> {
+                startupMetrics.onStopRequested()
+                coreCommandQueue.submit(CoreCommand.STOP)
+            }
+            ACTION_RESTART_TOR -> coreCommandQueue.submit(CoreCommand.RESTART)
+            ACTION_RELOAD_TOR_CONFIGURATION -> coreCommandQueue.submit(CoreCommand.RELOAD)
             ACTION_STOP_SERVICE -> stopService()
             else -> {
                 stopSelf()
@@ -146,42 +157,6 @@ class CoreService : Service() {
         return START_REDELIVER_INTENT
     }
 
-    private fun startTor() = scope.launch {
-        waitWhileTorConfigurationInstalling()
-        torManager.startTor()
-    }
-
-    private fun stopTor() {
-        torManager.stopTor()
-    }
-
-    private fun restartTor() = scope.launch {
-        waitWhileTorConfigurationInstalling()
-        torManager.restartTor()
-    }
-
-    private fun reloadTorConfiguration() = scope.launch {
-        waitWhileTorConfigurationInstalling()
-        torManager.reloadTorConfiguration()
-    }
-
-    private fun startProxy() {
-        reverseProxyManager.startProxy()
-    }
-
-    private fun stopProxy() {
-        reverseProxyManager.stopProxy()
-    }
-
-    private suspend fun waitWhileTorConfigurationInstalling() {
-        installer.installTorIfRequired()
-        while (isTorConfigurationInstalling()) {
-            delay(1.toDuration(DurationUnit.SECONDS))
-        }
-    }
-
-    private fun isTorConfigurationInstalling() = installer.installing.get()
-
     private fun stopService() {
         try {
             stopSelf()
@@ -0,0 +1,10 @@
+package pan.alexander.cordova.torrunner.framework.webview
+
+enum class BodyCaptureMode {
+    /** Only the body length is recorded */
+    METADATA,
+    /** Bodies longer than the limit are cut to it */
+    TRUNCATED,
+    /** Whole bodies are recorded, binary ones are transferred in chunks */
+    FULL
+}
@@ -0,0 +1,119 @@
+package pan.alexander.cordova.torrunner.framework.webview
+
+import android.os.SystemClock
+import java.util.ArrayDeque
+import java.util.TreeSet
+
+/**
+ * Keeps the requests recorded by the JavaScript interface until WebView asks for them.
+ *
+ * Only the latest [capacity] requests not older than [maxAgeMs] are kept. Requests are
+ * indexed by exact URL, and a sorted set of the same URLs serves the fallback lookup
+ * of a recorded URL that is a prefix of the requested one, e.g. a GET form whose
+ * parameters are appended to the action URL.
+ */
+internal class RecordedRequestStore(
+    private val capacity: Int = DEFAULT_CAPACITY,
+    private val maxAgeMs: Long = DEFAULT_MAX_AGE_MS,
+    private val clock: () -> Long = { SystemClock.elapsedRealtime() }
+) {
+
+    private val entries = ArrayDeque<Entry>()
+    private val entriesByUrl = HashMap<String, ArrayDeque<Entry>>()
+    private val urls = TreeSet<String>()
+    private var sequence = 0L
+
+    val size: Int
+        @Synchronized get() = entries.size
+
+    @Synchronized
+    fun add(request: RequestInspectorJavaScriptInterface.RecordedRequest) {
+        val now = clock()
+        evict(now)
+        if (entries.size >= capacity) {
+            removeOldest()
+        }
+        val entry = Entry(request, now, sequence++)
+        entries.addLast(entry)
+        entriesByUrl.getOrPut(request.url) {
+            urls.add(request.url)
+            ArrayDeque()
+        }.addLast(entry)
+    }
+
+    @Synchronized
+    fun find(url: String): RequestInspectorJavaScriptInterface.RecordedRequest? {
+        evict(clock())
+        if (entries.isEmpty()) {
+            return null
+        }
+        return (entriesByUrl[url]?.peekLast() ?: findLatestByPrefix(url))?.request
+    }
+
+    @Synchronized
+    fun clear() {
+        entries.clear()
+        entriesByUrl.clear()
+        urls.clear()
+    }
+
+    /**
+     * Visits only the recorded URLs that are prefixes of [url]. When a candidate is not
+     * a prefix, no prefix can lie between the common part and the candidate, so the
+     * search continues from the floor of the common part.
+     */
+    private fun findLatestByPrefix(url: String): Entry? {
+        var latest: Entry? = null
+        var candidate = urls.floor(url)
+        while (candidate != null) {
+            candidate = if (url.startsWith(candidate)) {
+                val entry = entriesByUrl[candidate]?.peekLast()
+                if (entry != null && (latest == null || entry.sequence > latest.sequence)) {
+                    latest = entry
+                }
+                urls.lower(candidate)
+            } else {
+                urls.floor(url.substring(0, commonPrefixLength(url, candidate)))
+            }
+        }
+        return latest
+    }
+
+    private fun commonPrefixLength(first: String, second: String): Int {
+        val length = minOf(first.length, second.length)
+        var i = 0
+        while (i < length && first[i] == second[i]) {
+            i++
+        }
+        return i
+    }
+
+    private fun evict(now: Long) {
+        while (entries.isNotEmpty() && now - entries.peekFirst()!!.timeMs > maxAgeMs) {
+            removeOldest()
+        }
+    }
+
+    private fun removeOldest() {
+        val entry = entries.pollFirst() ?: return
+        val url = entry.request.url
+        val sameUrlEntries = entriesByUrl[url] ?: return
+        // The oldest entry overall is also the oldest one for its URL
+        sameUrlEntries.pollFirst()
+        if (sameUrlEntries.isEmpty()) {
+            entriesByUrl.remove(url)
+            urls.remove(url)
+        }
+    }
+
+    private class Entry(
+        val request: RequestInspectorJavaScriptInterface.RecordedRequest,
+        val timeMs: Long,
+        val sequence: Long
+    )
+
+    companion object {
+        const val DEFAULT_CAPACITY = 512
+        const val DEFAULT_MAX_AGE_MS = 60_000L
+    }
+}
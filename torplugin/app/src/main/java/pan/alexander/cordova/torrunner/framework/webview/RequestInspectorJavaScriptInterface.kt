@@ -1,5 +1,6 @@
 package pan.alexander.cordova.torrunner.framework.webview
 
+import android.util.Base64
 import android.util.Log
 import android.webkit.JavascriptInterface
 import android.webkit.WebView
@@ -7,30 +8,31 @@ import org.apache.cordova.engine.SystemWebView
 import org.intellij.lang.annotations.Language
 import org.json.JSONArray
 import org.json.JSONObject
+import java.io.ByteArrayOutputStream
 import java.net.URLEncoder
 import java.util.Locale
 import kotlin.collections.iterator
 
-internal class RequestInspectorJavaScriptInterface(webView: SystemWebView) {
+internal class RequestInspectorJavaScriptInterface(
+    private val options: RequestInspectorOptions
+) {
 
-    init {
+    constructor(webView: SystemWebView, options: RequestInspectorOptions) : this(options) {
         webView.addJavascriptInterface(this, INTERFACE_NAME)
     }
 
-    private val recordedRequests = ArrayList<RecordedRequest>()
+    private val recordedRequests = RecordedRequestStore()
+
+    //Binary bodies arrive in chunks before the request that refers to them
+    private val pendingBodies = object : LinkedHashMap<Int, ByteArrayOutputStream>() {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Int, ByteArrayOutputStream>?) =
+            size > MAX_PENDING_BODIES
+    }
 
     fun findRecordedRequestForUrl(url: String): RecordedRequest? {
-        return synchronized(recordedRequests) {
-            // use findLast instead of find to find the last added query matching a URL -
-            // they are included at the end of the list when written.
-            recordedRequests.findLast { recordedRequest ->
-                // Added search by exact URL to find the actual request body
-                url == recordedRequest.url
-            } ?: recordedRequests.findLast { recordedRequest ->
-                // Previously, there was only a search by contains, and because of this, sometimes the wrong request body was found
-                url.contains(recordedRequest.url)
-            }
-        }
+        // Search by exact URL first to find the actual request body,
+        // then fall back to the latest recorded URL that is a prefix of the requested one
+        return recordedRequests.find(url)
     }
 
     data class RecordedRequest(
@@ -41,7 +43,10 @@ internal class RequestInspectorJavaScriptInterface(webView: SystemWebView) {
         val formParameters: Map<String, String>,
         val headers: Map<String, String>,
         val trace: String,
-        val enctype: String?
+        val enctype: String?,
+        val binaryBody: ByteArray? = null,
+        val bodyLength: Long = body.length.toLong(),
+        val isBodyComplete: Boolean = true
     )
 
     @JavascriptInterface
@@ -57,27 +62,28 @@ internal class RequestInspectorJavaScriptInterface(webView: SystemWebView) {
         val headerMap = getHeadersAsMap(headers)
         val formParameterMap = getFormParametersAsMap(formParameterJsonArray)
 
-        val body = when (enctype) {
-            "application/x-www-form-urlencoded" -> {
-                headerMap["content-type"] = enctype
-                getUrlEncodedFormBody(formParameterJsonArray)
-            }
-
-            "multipart/form-data" -> {
-                headerMap["content-type"] = "multipart/form-data; boundary=$MULTIPART_FORM_BOUNDARY"
-                getMultiPartFormBody(formParameterJsonArray)
-            }
-
-            "text/plain" -> {
-                headerMap["content-type"] = enctype
-                getPlainTextFormBody(formParameterJsonArray)
-            }
-
+        val contentType = when (enctype) {
+            "application/x-www-form-urlencoded", "text/plain" -> enctype
+            "multipart/form-data" -> "multipart/form-data; boundary=$MULTIPART_FORM_BOUNDARY"
             else -> {
                 Log.e(LOG_TAG, "Incorrect encoding received from JavaScript: $enctype")
-                ""
+                null
             }
         }
+        contentType?.let { headerMap["content-type"] = it }
+
+        val body = when {
+            contentType == null -> ""
+            options.bodyCaptureMode == BodyCaptureMode.METADATA -> ""
+            enctype == "application/x-www-form-urlencoded" -> getUrlEncodedFormBody(formParameterJsonArray)
+            enctype == "multipart/form-data" -> getMultiPartFormBody(formParameterJsonArray)
+            else -> getPlainTextFormBody(formParameterJsonArray)
+        }
+        //Form values are not passed in the METADATA mode, so the length is unknown too
+        val bodyKnown = options.bodyCaptureMode != BodyCaptureMode.METADATA && contentType != null
+        val bodyLength = if (bodyKnown) body.length else -1
+        val truncated = options.bodyCaptureMode == BodyCaptureMode.TRUNCATED
+                && bodyLength > options.maxCapturedBodyLength
 
         Log.i(LOG_TAG, "Recorded form submission from JavaScript")
         addRecordedRequest(
@@ -85,17 +91,28 @@ internal class RequestInspectorJavaScriptInterface(webView: SystemWebView) {
                 WebViewRequestType.FORM,
                 url,
                 method,
-                body,
+                if (truncated) body.substring(0, options.maxCapturedBodyLength) else body,
                 formParameterMap,
                 headerMap,
                 trace,
-                enctype
+                enctype,
+                bodyLength = bodyLength.toLong(),
+                isBodyComplete = bodyKnown && !truncated
             )
         )
     }
 
     @JavascriptInterface
-    fun recordXhr(url: String, method: String, body: String, headers: String, trace: String) {
+    fun recordXhr(
+        url: String,
+        method: String,
+        body: String,
+        headers: String,
+        trace: String,
+        bodyId: Int,
+        bodyLength: Long,
+        bodyComplete: Boolean
+    ) {
         Log.i(LOG_TAG, "Recorded XHR from JavaScript")
         val headerMap = getHeadersAsMap(headers)
         addRecordedRequest(
@@ -107,13 +124,25 @@ internal class RequestInspectorJavaScriptInterface(webView: SystemWebView) {
                 mapOf(),
                 headerMap,
                 trace,
-                null
+                null,
+                takePendingBody(bodyId),
+                bodyLength,
+                bodyComplete
             )
         )
     }
 
     @JavascriptInterface
-    fun recordFetch(url: String, method: String, body: String, headers: String, trace: String) {
+    fun recordFetch(
+        url: String,
+        method: String,
+        body: String,
+        headers: String,
+        trace: String,
+        bodyId: Int,
+        bodyLength: Long,
+        bodyComplete: Boolean
+    ) {
         Log.i(LOG_TAG, "Recorded fetch from JavaScript")
         val headerMap = getHeadersAsMap(headers)
         addRecordedRequest(
@@ -125,15 +154,33 @@ internal class RequestInspectorJavaScriptInterface(webView: SystemWebView) {
                 mapOf(),
                 headerMap,
                 trace,
-                null
+                null,
+                takePendingBody(bodyId),
+                bodyLength,
+                bodyComplete
             )
         )
     }
 
-    private fun addRecordedRequest(recordedRequest: RecordedRequest) {
-        synchronized(recordedRequests) {
-            recordedRequests.add(recordedRequest)
+    @JavascriptInterface
+    fun recordBodyChunk(bodyId: Int, base64Chunk: String) {
+        val chunk = Base64.decode(base64Chunk, Base64.NO_WRAP)
+        synchronized(pendingBodies) {
+            pendingBodies.getOrPut(bodyId) { ByteArrayOutputStream(chunk.size) }.write(chunk)
+        }
+    }
+
+    private fun takePendingBody(bodyId: Int): ByteArray? {
+        if (bodyId == NO_BODY_ID) {
+            return null
         }
+        return synchronized(pendingBodies) {
+            pendingBodies.remove(bodyId)
+        }?.toByteArray() ?: ByteArray(0)
+    }
+
+    private fun addRecordedRequest(recordedRequest: RecordedRequest) {
+        recordedRequests.add(recordedRequest)
     }
 
     private fun getHeadersAsMap(headersString: String): MutableMap<String, String> {
@@ -242,22 +289,72 @@ internal class RequestInspectorJavaScriptInterface(webView: SystemWebView) {
         private const val LOG_TAG = "RequestInspectorJs"
         private const val MULTIPART_FORM_BOUNDARY = "----WebKitFormBoundaryU7CgQs9WnqlZYKs6"
         private const val INTERFACE_NAME = "RequestInspection"
+        private const val MAX_PENDING_BODIES = 16
+        private const val NO_BODY_ID = 0
+        private const val BODY_CHUNK_SIZE = 16 * 1024
 
         @Language("JS")
         private const val JAVASCRIPT_INTERCEPTION_CODE = """
 function getFullUrl(url) {
-    if (url.startsWith("/")) {
-        return location.protocol + '//' + location.host + url;
-    } else {
+    try {
+        return new URL(url, document.baseURI).href;
+    } catch (e) {
         return url;
     }
 }
 
+function getStackTrace() {
+    return requestInspectorOptions.captureStackTrace ? new Error().stack : "";
+}
+
+let lastBodyId = $NO_BODY_ID;
+
+// Text bodies are passed as they are, binary ones in base64 chunks before the request is recorded,
+// streams, blobs and form data are not readable synchronously, so only their size is known
+function captureBody(body) {
+    const mode = requestInspectorOptions.bodyCaptureMode;
+    const maxLength = requestInspectorOptions.maxCapturedBodyLength;
+    if (body === undefined || body === null) {
+        return {text: "", id: $NO_BODY_ID, length: 0, complete: true};
+    }
+    if (typeof body === 'string' || body instanceof URLSearchParams) {
+        const text = String(body);
+        if (mode === 'METADATA') {
+            return {text: "", id: $NO_BODY_ID, length: text.length, complete: text.length === 0};
+        } else if (mode === 'TRUNCATED' && text.length > maxLength) {
+            return {text: text.substring(0, maxLength), id: $NO_BODY_ID, length: text.length, complete: false};
+        }
+        return {text: text, id: $NO_BODY_ID, length: text.length, complete: true};
+    }
+
+    let bytes = null;
+    if (body instanceof ArrayBuffer) {
+        bytes = new Uint8Array(body);
+    } else if (ArrayBuffer.isView(body)) {
+        bytes = new Uint8Array(body.buffer, body.byteOffset, body.byteLength);
+    }
+    if (bytes === null) {
+        const size = typeof body.size === 'number' ? body.size : -1;
+        return {text: "", id: $NO_BODY_ID, length: size, complete: size === 0};
+    }
+    if (mode === 'METADATA') {
+        return {text: "", id: $NO_BODY_ID, length: bytes.length, complete: bytes.length === 0};
+    }
+
+    const capturedLength = mode === 'TRUNCATED' ? Math.min(bytes.length, maxLength) : bytes.length;
+    const id = ++lastBodyId;
+    for (let offset = 0; offset < capturedLength; offset += $BODY_CHUNK_SIZE) {
+        const chunk = bytes.subarray(offset, Math.min(offset + $BODY_CHUNK_SIZE, capturedLength));
+        $INTERFACE_NAME.recordBodyChunk(id, btoa(String.fromCharCode.apply(null, chunk)));
+    }
+    return {text: "", id: id, length: bytes.length, complete: capturedLength === bytes.length};
+}
+
 function recordFormSubmission(form) {
     var jsonArr = [];
     for (i = 0; i < form.elements.length; i++) {
         var parName = form.elements[i].name;
-        var parValue = form.elements[i].value;
+        var parValue = requestInspectorOptions.bodyCaptureMode === 'METADATA' ? "" : form.elements[i].value;
         var parType = form.elements[i].type;
         var parChecked = form.elements[i].checked;
         var parId = form.elements[i].id;
@@ -275,13 +372,12 @@ function recordFormSubmission(form) {
     const method = form.attributes['method'] === undefined ? "GET" : form.attributes['method'].nodeValue;
     const url = getFullUrl(path);
     const encType = form.attributes['enctype'] === undefined ? "application/x-www-form-urlencoded" : form.attributes['enctype'].nodeValue;
-    const err = new Error();
     $INTERFACE_NAME.recordFormSubmission(
         url,
         method,
         JSON.stringify(jsonArr),
         "{}",
-        err.stack,
+        getStackTrace(),
         encType
     );
 }
@@ -316,14 +412,17 @@ XMLHttpRequest.prototype.setRequestHeader = function (header, value) {
 };
 XMLHttpRequest.prototype._send = XMLHttpRequest.prototype.send;
 XMLHttpRequest.prototype.send = function (body) {
-    const err = new Error();
     const url = getFullUrl(xmlhttpRequestUrl);
+    const capturedBody = captureBody(body);
     $INTERFACE_NAME.recordXhr(
         url,
         lastXmlhttpRequestPrototypeMethod,
-        body || "",
+        capturedBody.text,
         JSON.stringify(xmlhttpRequestHeaders),
-        err.stack
+        getStackTrace(),
+        capturedBody.id,
+        capturedBody.length,
+        capturedBody.complete
     );
     lastXmlhttpRequestPrototypeMethod = null;
     xmlhttpRequestUrl = null;
@@ -341,7 +440,7 @@ window.fetch = function () {
     if (typeof firstArgument === 'string') {
         url = firstArgument;
         method = arguments[1] && 'method' in arguments[1] ? arguments[1]['method'] : "GET";
-        body = arguments[1] && 'body' in arguments[1] ? arguments[1]['body'] : "";
+        body = arguments[1] && 'body' in arguments[1] ? arguments[1]['body'] : null;
         headers = JSON.stringify(arguments[1] && 'headers' in arguments[1] ? arguments[1]['headers'] : {});
     } else {
         // Request object
@@ -351,15 +450,30 @@ window.fetch = function () {
         headers = JSON.stringify(Object.fromEntries(firstArgument.headers.entries()));
     }
     const fullUrl = getFullUrl(url);
-    const err = new Error();
-    $INTERFACE_NAME.recordFetch(fullUrl, method, body, headers, err.stack);
+    const capturedBody = captureBody(body);
+    $INTERFACE_NAME.recordFetch(
+        fullUrl,
+        method,
+        capturedBody.text,
+        headers,
+        getStackTrace(),
+        capturedBody.id,
+        capturedBody.length,
+        capturedBody.complete
+    );
     return window._fetch.apply(this, arguments);
 }
         """
 
-        fun enabledRequestInspection(webView: WebView, extraJavaScriptToInject: String) {
+        fun enabledRequestInspection(webView: WebView, options: RequestInspectorOptions) {
+            val inspectorOptions = JSONObject().apply {
+                put("bodyCaptureMode", options.bodyCaptureMode.name)
+                put("maxCapturedBodyLength", options.maxCapturedBodyLength)
+                put("captureStackTrace", options.captureStackTrace)
+            }
             webView.evaluateJavascript(
-                "javascript: $JAVASCRIPT_INTERCEPTION_CODE\n$extraJavaScriptToInject",
+                "javascript: var requestInspectorOptions = $inspectorOptions;\n" +
+                        "$JAVASCRIPT_INTERCEPTION_CODE\n${options.extraJavaScriptToInject}",
                 null
             )
         }
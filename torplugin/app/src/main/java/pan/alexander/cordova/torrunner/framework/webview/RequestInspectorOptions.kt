@@ -1,5 +1,22 @@
 package pan.alexander.cordova.torrunner.framework.webview
 
+import android.util.Log
+
+/**
+ * @param requestLogLevel priority used to log intercepted requests. Requests are logged only
+ * when it is loggable for the "RequestInspectorWebView" tag, so the default [Log.DEBUG] is off
+ * until enabled with `adb shell setprop log.tag.RequestInspectorWebView DEBUG`.
+ * @param requestLogSampleRate log only every n-th intercepted request.
+ * @param bodyCaptureMode how much of XHR, fetch and form bodies is passed from JavaScript.
+ * @param maxCapturedBodyLength limit for the [BodyCaptureMode.TRUNCATED] mode,
+ * in characters for text bodies and in bytes for binary ones.
+ * @param captureStackTrace record the JavaScript stack trace of each request.
+ */
 data class RequestInspectorOptions(
-    val extraJavaScriptToInject: String = ""
+    val extraJavaScriptToInject: String = "",
+    val requestLogLevel: Int = Log.DEBUG,
+    val requestLogSampleRate: Int = 1,
+    val bodyCaptureMode: BodyCaptureMode = BodyCaptureMode.METADATA,
+    val maxCapturedBodyLength: Int = 64 * 1024,
+    val captureStackTrace: Boolean = false
 )
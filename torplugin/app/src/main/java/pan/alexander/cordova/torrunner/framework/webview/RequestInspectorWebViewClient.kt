@@ -9,15 +9,22 @@ import android.webkit.WebView
 import org.apache.cordova.engine.SystemWebView
 import org.apache.cordova.engine.SystemWebViewClient
 import org.apache.cordova.engine.SystemWebViewEngine
+import java.util.concurrent.atomic.AtomicLong
 
 @SuppressLint("SetJavaScriptEnabled")
 open class RequestInspectorWebViewClient @JvmOverloads constructor(
     engine: SystemWebViewEngine,
     webView: SystemWebView,
-    private val options: RequestInspectorOptions = RequestInspectorOptions()
+    private val options: RequestInspectorOptions = RequestInspectorOptions(),
+    private val torRequestRouter: TorRequestRouter? = null
 ) : SystemWebViewClient(engine) {
 
-    private val interceptionJavascriptInterface = RequestInspectorJavaScriptInterface(webView)
+    private val interceptionJavascriptInterface = RequestInspectorJavaScriptInterface(webView, options)
+    private val requestLogSampleRate = options.requestLogSampleRate.coerceAtLeast(1)
+    private val interceptedRequestsCount = AtomicLong()
+
+    @Volatile
+    private var requestLoggingEnabled = isRequestLoggingEnabled()
 
     init {
         val webSettings = webView.settings
@@ -29,13 +36,12 @@ open class RequestInspectorWebViewClient @JvmOverloads constructor(
         view: WebView,
         request: WebResourceRequest
     ): WebResourceResponse? {
-        if (request.url.toString().startsWith("https://localhost/")) {
+        val url = request.url.toString()
+        if (url.startsWith("https://localhost/")) {
             return super.shouldInterceptRequest(view, request)
         }
-        val recordedRequest = interceptionJavascriptInterface.findRecordedRequestForUrl(
-            request.url.toString()
-        )
-        val webViewRequest = WebViewRequest.Companion.create(request, recordedRequest)
+        val recordedRequest = interceptionJavascriptInterface.findRecordedRequestForUrl(url)
+        val webViewRequest = WebViewRequest.Companion.create(url, request, recordedRequest)
         return shouldInterceptRequest(view, webViewRequest)
     }
 
@@ -44,20 +50,31 @@ open class RequestInspectorWebViewClient @JvmOverloads constructor(
         webViewRequest: WebViewRequest
     ): WebResourceResponse? {
         logWebViewRequest(webViewRequest)
-        return null
+        return torRequestRouter?.route(webViewRequest)
     }
 
     @Suppress("MemberVisibilityCanBePrivate")
     protected fun logWebViewRequest(webViewRequest: WebViewRequest) {
-        Log.i(LOG_TAG, "Sending request from WebView: $webViewRequest")
+        if (!requestLoggingEnabled) {
+            return
+        }
+        if (interceptedRequestsCount.getAndIncrement() % requestLogSampleRate != 0L) {
+            return
+        }
+        Log.println(
+            options.requestLogLevel,
+            LOG_TAG,
+            "Sending request from WebView: $webViewRequest"
+        )
     }
 
+    private fun isRequestLoggingEnabled(): Boolean =
+        Log.isLoggable(LOG_TAG, options.requestLogLevel)
+
     override fun onPageStarted(view: WebView, url: String, favicon: Bitmap?) {
         Log.i(LOG_TAG, "Page started loading, enabling request inspection. URL: $url")
-        RequestInspectorJavaScriptInterface.enabledRequestInspection(
-            view,
-            options.extraJavaScriptToInject
-        )
+        requestLoggingEnabled = isRequestLoggingEnabled()
+        RequestInspectorJavaScriptInterface.enabledRequestInspection(view, options)
         super.onPageStarted(view, url, favicon)
     }
 
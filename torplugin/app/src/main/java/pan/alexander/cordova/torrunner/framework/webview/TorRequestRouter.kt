@@ -0,0 +1,238 @@
+package pan.alexander.cordova.torrunner.framework.webview
+
+import android.net.Uri
+import android.os.SystemClock
+import android.webkit.CookieManager
+import android.webkit.WebResourceResponse
+import org.json.JSONObject
+import pan.alexander.cordova.torrunner.domain.addresschecker.AddressCheckerRepository
+import pan.alexander.cordova.torrunner.domain.addresschecker.DomainToPort
+import pan.alexander.cordova.torrunner.domain.configuration.ConfigurationRepository
+import pan.alexander.cordova.torrunner.domain.core.CoreState
+import pan.alexander.cordova.torrunner.domain.core.CoreStatus
+import pan.alexander.cordova.torrunner.domain.core.TorMode
+import pan.alexander.cordova.torrunner.domain.preferences.PreferenceRepository
+import pan.alexander.cordova.torrunner.framework.ActionSender
+import pan.alexander.cordova.torrunner.framework.CoreServiceActions.ACTION_START_TOR
+import pan.alexander.cordova.torrunner.utils.Constants.LOOPBACK_ADDRESS
+import pan.alexander.cordova.torrunner.utils.logger.Logger.loge
+import pan.alexander.cordova.torrunner.utils.logger.Logger.logi
+import pan.alexander.cordova.torrunner.utils.network.SocksHttpClient
+import java.io.ByteArrayInputStream
+import java.io.IOException
+import java.net.URL
+import java.util.concurrent.atomic.AtomicLong
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Makes the same Tor or direct decision as the JavaScript isUseWithTor for each WebView request,
+ * using the native reachability cache, and loads the requests that need Tor through its SOCKS port.
+ */
+@Singleton
+class TorRequestRouter @Inject constructor(
+    private val addressChecker: AddressCheckerRepository,
+    private val preferences: PreferenceRepository,
+    private val configuration: ConfigurationRepository,
+    private val coreStatus: CoreStatus,
+    private val actionSender: ActionSender,
+    private val socksHttpClient: SocksHttpClient
+) {
+
+    private val cookieStore = object : SocksHttpClient.CookieStore {
+        override fun getCookie(url: String): String? =
+            CookieManager.getInstance().getCookie(url)
+
+        override fun setCookie(url: String, cookie: String) =
+            CookieManager.getInstance().setCookie(url, cookie)
+    }
+
+    //Requests that need Tor arrive in bursts, but Tor is started once
+    private val torStartRequestTime = AtomicLong(-TOR_START_DEBOUNCE_MS)
+
+    /**
+     * @return response loaded through Tor, or null to let WebView load the request directly.
+     */
+    fun route(request: WebViewRequest): WebResourceResponse? {
+        val uri = Uri.parse(request.url)
+        val scheme = uri.scheme
+        val host = uri.host
+        if (scheme != "http" && scheme != "https" || host.isNullOrEmpty() || isLocalHost(host)) {
+            return null
+        }
+
+        val torMode = preferences.getTorMode()
+        val useTor = when (torMode) {
+            TorMode.ALWAYS -> true
+            TorMode.AUTO -> {
+                val port = uri.port.takeIf { it > 0 } ?: if (scheme == "https") 443 else 80
+                !addressChecker.isAddressReachable(DomainToPort(host, port))
+            }
+            else -> false
+        }
+        if (!useTor) {
+            return null
+        }
+
+        if (coreStatus.torState == CoreState.STOPPED) {
+            startTor(host)
+        }
+
+        if (!coreStatus.isTorReady) {
+            return fallback(torMode, HTTP_SERVICE_UNAVAILABLE, "Tor is not ready")
+        }
+
+        val body = when {
+            request.method in METHODS_WITHOUT_BODY -> null
+            //Only the body recorded by JavaScript is known
+            request.type != WebViewRequestType.HTML && request.isBodyComplete ->
+                request.binaryBody ?: request.body.toByteArray()
+            else -> return fallback(torMode, HTTP_NOT_IMPLEMENTED, "Request body is unknown")
+        }
+
+        return try {
+            loadThroughTor(request, body)
+        } catch (e: Exception) {
+            loge("TorRequestRouter ${request.method} $host", e)
+            fallback(torMode, HTTP_BAD_GATEWAY, "Bad Gateway")
+        }
+    }
+
+    private fun startTor(host: String) {
+        val now = SystemClock.elapsedRealtime()
+        val lastRequestTime = torStartRequestTime.get()
+        if (now - lastRequestTime >= TOR_START_DEBOUNCE_MS
+            && torStartRequestTime.compareAndSet(lastRequestTime, now)
+        ) {
+            logi("Start Tor because $host requires Tor")
+            actionSender.sendIntent(ACTION_START_TOR)
+        }
+    }
+
+    //Do not leak the request in the ALWAYS mode
+    private fun fallback(torMode: TorMode, statusCode: Int, reasonPhrase: String) =
+        if (torMode == TorMode.ALWAYS) {
+            errorResponse(statusCode, reasonPhrase)
+        } else {
+            null
+        }
+
+    private fun loadThroughTor(request: WebViewRequest, body: ByteArray?): WebResourceResponse {
+        val headers = request.headers.filter { (name, value) ->
+            name.isNotEmpty() && value.isNotEmpty() && name !in EXCLUDED_REQUEST_HEADERS
+        }
+        val response = socksHttpClient.execute(
+            request.url,
+            request.method,
+            headers,
+            body,
+            configuration.getTorSocksPort(),
+            cookieStore,
+            followRedirects = !request.isForMainFrame
+        )
+
+        //WebView would show the target document under the original URL,
+        //so it navigates to the target of a main frame redirect itself
+        if (request.isForMainFrame && response.statusCode in 300..399) {
+            response.body.close()
+            return redirectResponse(request.url, response)
+        }
+
+        //Redirects of sub-resources are followed by the client,
+        //WebView does not accept them from intercepted requests
+        if (response.statusCode !in 100..299 && response.statusCode !in 400..599) {
+            response.body.close()
+            throw IOException("Unexpected response code ${response.statusCode}")
+        }
+
+        //Cookies are already stored by the client against the URL that set them
+        val responseHeaders = HashMap<String, String>(response.headers.size * 4 / 3 + 1)
+        for ((name, values) in response.headers) {
+            if (!name.equals(SET_COOKIE_HEADER, ignoreCase = true)) {
+                responseHeaders[name] = values.joinToString(", ")
+            }
+        }
+
+        val contentType = response.headers.entries
+            .firstOrNull { it.key.equals(CONTENT_TYPE_HEADER, ignoreCase = true) }
+            ?.value?.firstOrNull()
+        val mimeType = contentType?.substringBefore(";")?.trim()?.takeIf { it.isNotEmpty() }
+            ?: DEFAULT_MIME_TYPE
+        val encoding = contentType?.split(";")
+            ?.map { it.trim() }
+            ?.firstOrNull { it.startsWith("charset=", ignoreCase = true) }
+            ?.substringAfter("=")
+            ?.trim('"')
+
+        return WebResourceResponse(
+            mimeType,
+            encoding,
+            response.statusCode,
+            response.reasonPhrase.ifBlank { "Unknown" },
+            responseHeaders,
+            response.body
+        )
+    }
+
+    private fun redirectResponse(url: String, response: SocksHttpClient.Response): WebResourceResponse {
+        val location = response.headers.entries
+            .firstOrNull { it.key.equals(LOCATION_HEADER, ignoreCase = true) }
+            ?.value?.firstOrNull()
+            ?: throw IOException("Redirect ${response.statusCode} without location")
+        val target = URL(URL(url), location)
+        if (target.protocol != "http" && target.protocol != "https") {
+            throw IOException("Unsupported redirect to ${target.protocol}")
+        }
+        //A quoted JSON string is a valid JavaScript string literal, and "</" is escaped in it
+        val page = "<!DOCTYPE html><html><head><script>location.replace(" +
+                JSONObject.quote(target.toString()) +
+                ");</script></head><body></body></html>"
+        return WebResourceResponse(
+            HTML_MIME_TYPE,
+            Charsets.UTF_8.name(),
+            HTTP_OK,
+            "OK",
+            mapOf(CACHE_CONTROL_HEADER to "no-store"),
+            ByteArrayInputStream(page.toByteArray())
+        )
+    }
+
+    private fun errorResponse(statusCode: Int, reasonPhrase: String) = WebResourceResponse(
+        DEFAULT_MIME_TYPE,
+        null,
+        statusCode,
+        reasonPhrase,
+        emptyMap(),
+        ByteArrayInputStream(ByteArray(0))
+    )
+
+    private fun isLocalHost(host: String) =
+        host == "localhost" || host == LOOPBACK_ADDRESS || host == "[::1]" || host == "::1"
+
+    private companion object {
+        const val HTTP_OK = 200
+        const val HTTP_NOT_IMPLEMENTED = 501
+        const val HTTP_BAD_GATEWAY = 502
+        const val HTTP_SERVICE_UNAVAILABLE = 503
+        const val TOR_START_DEBOUNCE_MS = 10_000L
+        const val SET_COOKIE_HEADER = "Set-Cookie"
+        const val CONTENT_TYPE_HEADER = "Content-Type"
+        const val LOCATION_HEADER = "Location"
+        const val CACHE_CONTROL_HEADER = "Cache-Control"
+        const val HTML_MIME_TYPE = "text/html"
+        const val DEFAULT_MIME_TYPE = "text/plain"
+
+        val METHODS_WITHOUT_BODY = setOf("GET", "HEAD", "OPTIONS")
+
+        //Conditional headers could lead to 304, which WebView does not accept,
+        //and the transparent gzip of HttpURLConnection needs its own Accept-Encoding
+        val EXCLUDED_REQUEST_HEADERS = setOf(
+            "host",
+            "connection",
+            "content-length",
+            "accept-encoding",
+            "if-none-match",
+            "if-modified-since"
+        )
+    }
+}
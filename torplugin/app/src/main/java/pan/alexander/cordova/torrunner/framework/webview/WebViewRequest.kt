@@ -4,19 +4,84 @@ import android.os.Build
 import android.webkit.CookieManager
 import android.webkit.WebResourceRequest
 
-data class WebViewRequest(
-    val type: WebViewRequestType,
+/**
+ * View of a request made by WebView, completed with the data recorded by JavaScript.
+ *
+ * Properties are read from the underlying request on demand. Headers, which require
+ * a cookie lookup and lowercase copies of both header maps, are built once on first access,
+ * so requests that are never inspected do not pay for them.
+ */
+class WebViewRequest private constructor(
     val url: String,
-    val method: String,
-    val body: String,
-    val formParameters: Map<String, String>,
-    val headers: Map<String, String>,
-    val trace: String,
-    val enctype: String?,
-    val isForMainFrame: Boolean,
-    val isRedirect: Boolean,
-    val hasGesture: Boolean
+    private val webResourceRequest: WebResourceRequest,
+    private val recordedRequest: RequestInspectorJavaScriptInterface.RecordedRequest?
 ) {
+
+    @Volatile
+    private var cachedHeaders: Map<String, String>? = null
+
+    val type: WebViewRequestType
+        get() = recordedRequest?.type ?: WebViewRequestType.HTML
+
+    val method: String
+        get() = webResourceRequest.method
+
+    val body: String
+        get() = recordedRequest?.body ?: ""
+
+    /** Body of XHR or fetch sent as ArrayBuffer or typed array, when it was captured */
+    val binaryBody: ByteArray?
+        get() = recordedRequest?.binaryBody
+
+    /** Length of the original body, -1 when unknown */
+    val bodyLength: Long
+        get() = recordedRequest?.bodyLength ?: -1L
+
+    /** Whether [body] or [binaryBody] holds the whole original body */
+    val isBodyComplete: Boolean
+        get() = recordedRequest?.isBodyComplete ?: true
+
+    val formParameters: Map<String, String>
+        get() = recordedRequest?.formParameters ?: emptyMap()
+
+    val headers: Map<String, String>
+        get() = cachedHeaders ?: buildHeaders().also { cachedHeaders = it }
+
+    val trace: String
+        get() = recordedRequest?.trace ?: ""
+
+    val enctype: String?
+        get() = recordedRequest?.enctype
+
+    val isForMainFrame: Boolean
+        get() = webResourceRequest.isForMainFrame
+
+    val isRedirect: Boolean
+        get() = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            webResourceRequest.isRedirect
+        } else {
+            false
+        }
+
+    val hasGesture: Boolean
+        get() = webResourceRequest.hasGesture()
+
+    private fun buildHeaders(): Map<String, String> {
+        val requestHeaders = webResourceRequest.requestHeaders
+        val recordedHeaders = recordedRequest?.headers ?: emptyMap()
+        val headers = HashMap<String, String>(
+            (requestHeaders.size + recordedHeaders.size + 1) * 4 / 3 + 1
+        )
+        headers["cookie"] = CookieManager.getInstance().getCookie(url) ?: ""
+        for ((key, value) in recordedHeaders) {
+            headers[key.lowercase()] = value
+        }
+        for ((key, value) in requestHeaders) {
+            headers[key.lowercase()] = value
+        }
+        return headers
+    }
+
     override fun toString(): String {
         val headersString = headers.entries.joinToString("\n", "\n") { (key, value) ->
             "       $key: $value"
@@ -36,7 +101,8 @@ data class WebViewRequest(
   Type: $type
   URL: $url
   Method: $method
-  Body: $body
+  Body: ${binaryBody?.let { "${it.size} bytes" } ?: body}
+  Body length: $bodyLength${if (isBodyComplete) "" else " (not captured completely)"}
   Headers: $headersString
   FormParameters: $formParametersString
   Trace: $traceWithIndent
@@ -49,43 +115,9 @@ data class WebViewRequest(
 
     companion object {
         internal fun create(
+            url: String,
             webResourceRequest: WebResourceRequest,
             recordedRequest: RequestInspectorJavaScriptInterface.RecordedRequest?
-        ): WebViewRequest {
-            val type = recordedRequest?.type ?: WebViewRequestType.HTML
-            val url = webResourceRequest.url.toString()
-            val cookies = CookieManager.getInstance().getCookie(url) ?: ""
-            val headers = HashMap<String, String>()
-            headers["cookie"] = cookies
-            if (recordedRequest != null) {
-                val recordedHeadersInLowercase = recordedRequest.headers.mapKeys { (key, _) ->
-                    key.lowercase()
-                }
-                headers.putAll(recordedHeadersInLowercase)
-            }
-            val requestHeadersInLowercase = webResourceRequest.requestHeaders.mapKeys { (key, _) ->
-                key.lowercase()
-            }
-            headers.putAll(requestHeadersInLowercase)
-
-            val isRedirect = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                webResourceRequest.isRedirect
-            } else {
-                false
-            }
-            return WebViewRequest(
-                type = type,
-                url = url,
-                method = webResourceRequest.method,
-                body = recordedRequest?.body ?: "",
-                headers = headers,
-                trace = recordedRequest?.trace ?: "",
-                enctype = recordedRequest?.enctype,
-                isForMainFrame = webResourceRequest.isForMainFrame,
-                isRedirect = isRedirect,
-                hasGesture = webResourceRequest.hasGesture(),
-                formParameters = recordedRequest?.formParameters ?: mapOf()
-            )
-        }
+        ): WebViewRequest = WebViewRequest(url, webResourceRequest, recordedRequest)
     }
 }
@@ -21,13 +21,25 @@ package pan.alexander.cordova.torrunner.plugin
 
 import org.apache.cordova.CallbackContext
 import org.apache.cordova.CordovaPlugin
+import org.apache.cordova.engine.SystemWebView
+import org.apache.cordova.engine.SystemWebViewEngine
 import org.json.JSONArray
 import org.json.JSONObject
 import pan.alexander.cordova.torrunner.App
 import pan.alexander.cordova.torrunner.domain.AppManager
+import pan.alexander.cordova.torrunner.domain.preferences.PreferenceRepository
+import pan.alexander.cordova.torrunner.framework.webview.BodyCaptureMode
+import pan.alexander.cordova.torrunner.framework.webview.RequestInspectorOptions
+import pan.alexander.cordova.torrunner.framework.webview.RequestInspectorWebViewClient
+import pan.alexander.cordova.torrunner.framework.webview.TorRequestRouter
+import pan.alexander.cordova.torrunner.utils.logger.Logger
 import pan.alexander.cordova.torrunner.utils.logger.Logger.LOG_TAG
 import javax.inject.Inject
 
+private const val ROUTE_WEBVIEW_REQUESTS_PREFERENCE = "TorRunnerRouteWebViewRequests"
+private const val IN_PROCESS_PROXY_PREFERENCE = "TorRunnerInProcessProxy"
+private const val PERSIST_ADDRESS_CHECKS_PREFERENCE = "TorRunnerPersistAddressChecks"
+private const val LOG_LEVEL_PREFERENCE = "TorRunnerLogLevel"
 
 class Plugin : CordovaPlugin() {
 
@@ -35,6 +47,10 @@ class Plugin : CordovaPlugin() {
     lateinit var appManager: AppManager
     @Inject
     lateinit var torPluginManager: TorPluginManager
+    @Inject
+    lateinit var torRequestRouter: TorRequestRouter
+    @Inject
+    lateinit var preferenceRepository: PreferenceRepository
 
     init {
         App.Companion.instance.daggerComponent.inject(this)
@@ -74,6 +90,26 @@ class Plugin : CordovaPlugin() {
                     callbackContext
                 )
 
+                PluginAction.CHECK_ADDRESSES.name -> torPluginManager.checkAddresses(
+                    cordova,
+                    args?.optJSONArray(0),
+                    callbackContext
+                )
+
+                PluginAction.GET_STARTUP_METRICS.name -> torPluginManager.getStartupMetrics(
+                    cordova,
+                    callbackContext
+                )
+
+                PluginAction.GET_LOGS.name -> torPluginManager.getLogs(
+                    callbackContext
+                )
+
+                PluginAction.GET_PROXY_STATS.name -> torPluginManager.getProxyStats(
+                    cordova,
+                    callbackContext
+                )
+
                 else -> {
                     callbackContext?.error("Plugin invalid action: $action")
                     return false
@@ -88,6 +124,48 @@ class Plugin : CordovaPlugin() {
 
     override fun pluginInitialize() {
         instance = this
+
+        //DEBUG, INFO, WARN or ERROR, INFO if not set
+        val logLevel = preferences.getString(LOG_LEVEL_PREFERENCE, Logger.LogLevel.INFO.name)
+        Logger.minLevel = Logger.LogLevel.values().firstOrNull {
+            it.name.equals(logLevel, ignoreCase = true)
+        } ?: Logger.LogLevel.INFO
+
+        //Applied the next time the reverse proxy starts
+        preferenceRepository.setInProcessProxyEnabled(
+            preferences.getBoolean(IN_PROCESS_PROXY_PREFERENCE, false)
+        )
+        //Checked addresses are a browsing history, so they stay in memory unless the app opts in
+        preferenceRepository.setAddressChecksPersistenceEnabled(
+            preferences.getBoolean(PERSIST_ADDRESS_CHECKS_PREFERENCE, false)
+        )
+
+        if (preferences.getBoolean(ROUTE_WEBVIEW_REQUESTS_PREFERENCE, false)) {
+            routeWebViewRequests()
+        }
+    }
+
+    //Tor or direct connection is chosen natively for each WebView request,
+    //without calling isUseWithTor from JavaScript
+    private fun routeWebViewRequests() {
+        val engine = webView?.engine as? SystemWebViewEngine ?: run {
+            handleExceptionWithoutContext(
+                IllegalStateException("Routing WebView requests requires the system WebView engine")
+            )
+            return
+        }
+        val systemWebView = engine.view as? SystemWebView ?: return
+        cordova.activity.runOnUiThread {
+            systemWebView.setWebViewClient(
+                RequestInspectorWebViewClient(
+                    engine,
+                    systemWebView,
+                    //Bodies are replayed when requests are loaded through Tor
+                    RequestInspectorOptions(bodyCaptureMode = BodyCaptureMode.FULL),
+                    torRequestRouter
+                )
+            )
+        }
     }
 
     override fun onResume(multitasking: Boolean) {
@@ -101,6 +179,8 @@ class Plugin : CordovaPlugin() {
     override fun onDestroy() {
         instance = null
 
+        torPluginManager.stopLogs()
+
         appManager.onActivityDestroyed()
     }
 
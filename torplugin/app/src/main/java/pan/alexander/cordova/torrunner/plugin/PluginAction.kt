@@ -24,5 +24,9 @@ enum class PluginAction {
     STOP_TOR,
     GET_CONFIGURATION,
     SET_CONFIGURATION,
-    CHECK_ADDRESS
+    CHECK_ADDRESS,
+    CHECK_ADDRESSES,
+    GET_STARTUP_METRICS,
+    GET_LOGS,
+    GET_PROXY_STATS
 }
\ No newline at end of file
@@ -19,35 +19,55 @@
 
 package pan.alexander.cordova.torrunner.plugin
 
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineName
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.flow.catch
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
 import org.apache.cordova.CallbackContext
 import org.apache.cordova.CordovaInterface
 import org.apache.cordova.PluginResult
+import org.json.JSONArray
 import org.json.JSONObject
 import pan.alexander.cordova.torrunner.domain.addresschecker.AddressCheckerRepository
 import pan.alexander.cordova.torrunner.domain.addresschecker.DomainToPort
 import pan.alexander.cordova.torrunner.domain.configuration.ConfigurationRepository
 import pan.alexander.cordova.torrunner.domain.core.CoreState
 import pan.alexander.cordova.torrunner.domain.core.CoreStatus
+import pan.alexander.cordova.torrunner.domain.core.StartupMetrics
 import pan.alexander.cordova.torrunner.domain.core.TorMode
 import pan.alexander.cordova.torrunner.domain.installer.Installer
+import pan.alexander.cordova.torrunner.domain.logs.LogRepository
 import pan.alexander.cordova.torrunner.framework.ActionSender
 import pan.alexander.cordova.torrunner.framework.CoreServiceActions.ACTION_START_TOR
 import pan.alexander.cordova.torrunner.framework.CoreServiceActions.ACTION_STOP_TOR
 import pan.alexander.cordova.torrunner.utils.Constants.MAX_PORT_NUMBER
 import pan.alexander.cordova.torrunner.utils.logger.Logger.loge
 import pan.alexander.cordova.torrunner.utils.logger.Logger.logi
+import pan.alexander.cordova.torrunner.utils.proxy.FrontProxy
 import java.util.concurrent.locks.ReentrantLock
 import javax.inject.Inject
 import javax.inject.Singleton
 import kotlin.concurrent.withLock
 
+private const val MAX_PARALLEL_ADDRESS_CHECKS = 8
+
 @Singleton
 class TorPluginManager @Inject constructor(
+    dispatcherIo: CoroutineDispatcher,
     private val actionSender: ActionSender,
     private val installer: Installer,
     private val configuration: ConfigurationRepository,
     private val coreStatus: CoreStatus,
-    private val addressChecker: AddressCheckerRepository
+    private val addressChecker: AddressCheckerRepository,
+    private val startupMetrics: StartupMetrics,
+    private val logRepository: LogRepository,
+    private val frontProxy: FrontProxy
 ) {
 
     private val startTorLock by lazy { ReentrantLock() }
@@ -56,6 +76,17 @@ class TorPluginManager @Inject constructor(
 
     private val portRegex by lazy { Regex("\\d{2,5}") }
 
+    private val scope by lazy {
+        CoroutineScope(SupervisorJob() + dispatcherIo + CoroutineName("TorPluginManager"))
+    }
+
+    @Volatile
+    private var logsJob: Job? = null
+
+    private val addressCheckDispatcher by lazy {
+        dispatcherIo.limitedParallelism(MAX_PARALLEL_ADDRESS_CHECKS)
+    }
+
     private var settingsCallback: CallbackContext? = null
 
     fun startTor(
@@ -168,19 +199,7 @@ class TorPluginManager @Inject constructor(
         val domainToPort = address.takeIf {
             it.has("address")
         }?.getString("address")
-            ?.removePrefix("https://")
-            ?.substringBefore("/")
-            ?.let {
-                val port = it.substringAfter(":", "443")
-                    .takeIf { port ->
-                        port.matches(portRegex)
-                    }?.toLong()
-                    ?.takeIf { port -> port <= MAX_PORT_NUMBER }
-                    ?.toInt()
-                    ?: 443
-                val domain = it.substringBefore(":")
-                DomainToPort(domain, port)
-            }
+            ?.let { parseDomainToPort(it) }
         val redirect = domainToPort?.let {
             !addressChecker.isAddressReachable(domainToPort)
         } ?: false
@@ -208,6 +227,109 @@ class TorPluginManager @Inject constructor(
         throw it
     }
 
+    fun checkAddresses(
+        cordova: CordovaInterface?,
+        addresses: JSONArray?,
+        callbackContext: CallbackContext?
+    ) = runOnBackgroundThread(cordova, callbackContext) {
+        if (addresses == null) {
+            callbackContext?.error("Unable to check undefined addresses")
+            return@runOnBackgroundThread
+        }
+
+        val addressToDomain = (0 until addresses.length())
+            .mapNotNull { addresses.optString(it, null) }
+            .associateWith { parseDomainToPort(it) }
+
+        val domainToRedirect = runBlocking {
+            addressToDomain.values.distinct().map { domainToPort ->
+                async(addressCheckDispatcher) {
+                    domainToPort to !addressChecker.isAddressReachable(domainToPort)
+                }
+            }.awaitAll().toMap()
+        }
+
+        if (domainToRedirect.values.any { it } && coreStatus.torState == CoreState.STOPPED) {
+            val unreachable = domainToRedirect.filterValues { it }.keys
+                .joinToString { "${it.domain}:${it.port}" }
+            logi("Start Tor because $unreachable unreachable")
+            startTor()
+        }
+
+        val torReady = coreStatus.isTorReady
+        val redirects = JSONObject()
+        for ((address, domainToPort) in addressToDomain) {
+            redirects.put(address, torReady && domainToRedirect[domainToPort] == true)
+        }
+        val result = JSONObject().apply {
+            put("redirects", redirects)
+            put("port", if (torReady) configuration.getTorSocksPort() else 0)
+        }
+        callbackContext?.success(result)
+    }?.let {
+        loge("TorManager checkAddresses", it, true)
+        throw it
+    }
+
+    fun getStartupMetrics(
+        cordova: CordovaInterface?,
+        callbackContext: CallbackContext?
+    ) = runOnBackgroundThread(cordova, callbackContext) {
+        callbackContext?.success(startupMetrics.toJson())
+    }?.let {
+        loge("TorManager getStartupMetrics", it, true)
+        throw it
+    }
+
+    fun getProxyStats(
+        cordova: CordovaInterface?,
+        callbackContext: CallbackContext?
+    ) = runOnBackgroundThread(cordova, callbackContext) {
+        callbackContext?.success(frontProxy.toJson())
+    }?.let {
+        loge("TorManager getProxyStats", it, true)
+        throw it
+    }
+
+    //Sends the last Tor log lines, then each batch of appended lines, until the next call
+    fun getLogs(callbackContext: CallbackContext?) {
+        logsJob?.cancel()
+        logsJob = scope.launch {
+            logRepository.getTorLogUpdates()
+                .catch { loge("TorManager getLogs", it, true) }
+                .collect { update ->
+                    val logs = JSONObject().apply {
+                        put("lines", JSONArray(update.lines))
+                        put("reset", update.reset)
+                    }
+                    val result = PluginResult(PluginResult.Status.OK, logs).apply {
+                        keepCallback = true
+                    }
+                    callbackContext?.sendPluginResult(result)
+                }
+        }
+    }
+
+    fun stopLogs() {
+        logsJob?.cancel()
+        logsJob = null
+    }
+
+    private fun parseDomainToPort(address: String): DomainToPort =
+        address.removePrefix("https://")
+            .substringBefore("/")
+            .let {
+                val port = it.substringAfter(":", "443")
+                    .takeIf { port ->
+                        port.matches(portRegex)
+                    }?.toLong()
+                    ?.takeIf { port -> port <= MAX_PORT_NUMBER }
+                    ?.toInt()
+                    ?: 443
+                val domain = it.substringBefore(":")
+                DomainToPort(domain, port)
+            }
+
     private fun updatePluginConfiguration(callback: CallbackContext?, configuration: JSONObject) {
         settingsCallback = callback
         val result = PluginResult(PluginResult.Status.OK, configuration).apply {
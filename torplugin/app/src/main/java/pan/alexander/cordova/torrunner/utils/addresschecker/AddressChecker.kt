@@ -9,16 +9,29 @@ import java.net.InetSocketAddress
 import java.net.Proxy
 import java.net.Socket
 import java.net.SocketTimeoutException
+import java.security.SecureRandom
 import java.security.cert.X509Certificate
+import java.util.concurrent.atomic.AtomicLong
 import javax.inject.Inject
+import javax.inject.Singleton
 import javax.net.ssl.HttpsURLConnection
 import javax.net.ssl.SSLContext
 import javax.net.ssl.SSLSocket
 import javax.net.ssl.TrustManager
 import javax.net.ssl.X509TrustManager
 
+private const val TLS_SESSION_CACHE_SIZE = 256
+private const val TLS_SESSION_TIMEOUT_SEC = 60 * 60
+
+@Singleton
 class AddressChecker @Inject constructor() {
 
+    private val probesCount = AtomicLong()
+    private val probesTimeNs = AtomicLong()
+    private val handshakesCount = AtomicLong()
+    private val resumedHandshakesCount = AtomicLong()
+    private val handshakesTimeNs = AtomicLong()
+
     private val trustAllCerts by lazy {
         arrayOf<TrustManager>(
             @SuppressLint("CustomX509TrustManager")
@@ -43,9 +56,14 @@ class AddressChecker @Inject constructor() {
         )
     }
 
+    //Sessions are cached per host and port, so repeated probes resume TLS instead of a full handshake
     private val sslSocketFactory by lazy {
         val sslContext = SSLContext.getInstance("TLS")
-        sslContext.init(null, trustAllCerts, java.security.SecureRandom())
+        sslContext.init(null, trustAllCerts, SecureRandom())
+        sslContext.clientSessionContext.apply {
+            sessionCacheSize = TLS_SESSION_CACHE_SIZE
+            sessionTimeout = TLS_SESSION_TIMEOUT_SEC
+        }
         sslContext.socketFactory
     }
 
@@ -54,6 +72,30 @@ class AddressChecker @Inject constructor() {
         port: Int = 443,
         timeoutMs: Int = 3000,
         socksPort: Int = 0
+    ): Boolean {
+        val startTime = System.nanoTime()
+        val reachable = probeHttpsAddress(domain, port, timeoutMs, socksPort)
+        probesCount.incrementAndGet()
+        probesTimeNs.addAndGet(System.nanoTime() - startTime)
+        return reachable
+    }
+
+    fun getMetrics() = AddressCheckerMetrics(
+        probes = probesCount.get(),
+        averageProbeTimeMs = averageMs(probesTimeNs.get(), probesCount.get()),
+        handshakes = handshakesCount.get(),
+        resumedHandshakes = resumedHandshakesCount.get(),
+        averageHandshakeTimeMs = averageMs(handshakesTimeNs.get(), handshakesCount.get())
+    )
+
+    private fun averageMs(totalNs: Long, count: Long): Long =
+        if (count > 0) totalNs / count / 1_000_000 else 0
+
+    private fun probeHttpsAddress(
+        domain: String,
+        port: Int,
+        timeoutMs: Int,
+        socksPort: Int
     ): Boolean = try {
 
             val proxy = if (socksPort != 0) {
@@ -76,7 +118,14 @@ class AddressChecker @Inject constructor() {
                 sslSocket.enabledProtocols = sslSocket.supportedProtocols.filter {
                     it.startsWith("TLS")
                 }.toTypedArray()
+                val handshakeStartTime = System.nanoTime()
+                val handshakeStartTimeMs = System.currentTimeMillis()
                 sslSocket.startHandshake()
+                handshakesCount.incrementAndGet()
+                handshakesTimeNs.addAndGet(System.nanoTime() - handshakeStartTime)
+                if (sslSocket.session.creationTime < handshakeStartTimeMs) {
+                    resumedHandshakesCount.incrementAndGet()
+                }
 
                 if (!validateCertificateDomain(sslSocket, domain)) {
                     return false
@@ -86,7 +135,7 @@ class AddressChecker @Inject constructor() {
                 writeHttpRequestNoCache(
                     writer = writer,
                     domain = domain,
-                    method = "GET",
+                    method = "HEAD",
                     headers = mapOf("User-Agent" to CHROME_BROWSER_USER_AGENT)
                 )
 
@@ -136,6 +185,9 @@ class AddressChecker @Inject constructor() {
 
         write("$method $requestPath HTTP/1.1\r\n")
         write("Host: $domain\r\n")
+        //Every probe measures a new TCP connection, only TLS sessions are reused.
+        //An idle kept-alive socket would not prove the host is still reachable,
+        //and through Tor it would hold a stream open until the next probe minutes later.
         write("Connection: close\r\n")
         write("Cache-Control: no-cache, no-store, must-revalidate\r\n")
         write("Pragma: no-cache\r\n")
@@ -159,5 +211,4 @@ class AddressChecker @Inject constructor() {
         }
         return true
     }
-
 }
@@ -0,0 +1,9 @@
+package pan.alexander.cordova.torrunner.utils.addresschecker
+
+data class AddressCheckerMetrics(
+    val probes: Long,
+    val averageProbeTimeMs: Long,
+    val handshakes: Long,
+    val resumedHandshakes: Long,
+    val averageHandshakeTimeMs: Long
+)
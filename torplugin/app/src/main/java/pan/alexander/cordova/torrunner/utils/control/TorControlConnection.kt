@@ -0,0 +1,230 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.utils.control
+
+import pan.alexander.cordova.torrunner.utils.logger.Logger.loge
+import java.io.BufferedReader
+import java.io.BufferedWriter
+import java.io.Closeable
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.net.Socket
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+
+private const val CONNECT_TIMEOUT_MS = 3000
+private const val REPLY_TIMEOUT_MS = 10_000L
+private const val STATUS_OK = 250
+private const val STATUS_ASYNC_EVENT = 650
+
+/**
+ * Minimal Tor ControlPort client (control-spec.txt).
+ * Synchronous replies are handed to the command caller,
+ * asynchronous 650 events are parsed and pushed to [listener] from a reader thread.
+ * A command without a reply in time closes the connection, so a late reply
+ * cannot be taken for the reply to the next command.
+ */
+class TorControlConnection private constructor(
+    private val socket: Socket,
+    private val replyTimeoutMs: Long
+) : Closeable {
+
+    @Volatile
+    var listener: OnTorControlEventListener? = null
+
+    @Volatile
+    var isClosed = false
+        private set
+
+    private val reader: BufferedReader = socket.getInputStream().bufferedReader(Charsets.UTF_8)
+    private val writer: BufferedWriter = socket.getOutputStream().bufferedWriter(Charsets.UTF_8)
+    private val replies = LinkedBlockingQueue<List<ReplyLine>>()
+
+    private fun startReading() {
+        thread(name = "TorControlReader", isDaemon = true) {
+            try {
+                while (!isClosed) {
+                    val reply = readReply() ?: break
+                    if (reply.first().status == STATUS_ASYNC_EVENT) {
+                        dispatchEvent(reply)
+                    } else {
+                        replies.put(reply)
+                    }
+                }
+            } catch (e: IOException) {
+                if (!isClosed) {
+                    loge("TorControlConnection read", e)
+                }
+            } finally {
+                onConnectionLost()
+            }
+        }
+    }
+
+    fun authenticate(cookie: ByteArray) {
+        sendCommand("AUTHENTICATE ${cookie.toHex()}")
+    }
+
+    fun setEvents(vararg events: String) {
+        sendCommand("SETEVENTS ${events.joinToString(" ")}")
+    }
+
+    fun signal(signal: String) {
+        sendCommand("SIGNAL $signal")
+    }
+
+    fun getInfo(key: String): String? =
+        sendCommand("GETINFO $key").firstNotNullOfOrNull {
+            it.message.takeIf { message ->
+                message.startsWith("$key=")
+            }?.substringAfter("=")?.trim()
+        }
+
+    @Synchronized
+    fun sendCommand(command: String): List<ReplyLine> {
+        if (isClosed) {
+            throw IOException("Tor control connection is closed")
+        }
+
+        writer.write(command)
+        writer.write("\r\n")
+        writer.flush()
+
+        val reply = replies.poll(replyTimeoutMs, TimeUnit.MILLISECONDS)
+        if (reply == null) {
+            //The reader thread notices the closed socket and reports the lost connection
+            socket.close()
+            throw IOException("Tor control reply timeout for ${command.substringBefore(" ")}")
+        }
+        if (reply.isEmpty()) {
+            throw IOException("Tor control connection is closed")
+        }
+
+        val last = reply.last()
+        if (last.status != STATUS_OK) {
+            throw IOException("Tor control ${command.substringBefore(" ")} failed: ${last.status} ${last.message}")
+        }
+        return reply
+    }
+
+    private fun readReply(): List<ReplyLine>? {
+        val lines = mutableListOf<ReplyLine>()
+        while (true) {
+            val line = reader.readLine() ?: return null
+            if (line.length < 4) {
+                throw IOException("Malformed Tor control reply: $line")
+            }
+            val status = line.substring(0, 3).toIntOrNull()
+                ?: throw IOException("Malformed Tor control reply: $line")
+            val separator = line[3]
+            var message = line.substring(4)
+
+            if (separator == '+') {
+                val data = StringBuilder(message)
+                while (true) {
+                    val dataLine = reader.readLine() ?: return null
+                    if (dataLine == ".") {
+                        break
+                    }
+                    data.append('\n').append(
+                        if (dataLine.startsWith("..")) dataLine.substring(1) else dataLine
+                    )
+                }
+                message = data.toString()
+            }
+
+            lines.add(ReplyLine(status, message))
+
+            if (separator == ' ') {
+                return lines
+            }
+        }
+    }
+
+    private fun dispatchEvent(reply: List<ReplyLine>) {
+        val listener = listener ?: return
+        try {
+            TorControlEvent.parse(reply.first().message)?.let {
+                listener.onTorControlEvent(it)
+            }
+        } catch (e: Exception) {
+            loge("TorControlConnection dispatchEvent", e)
+        }
+    }
+
+    private fun onConnectionLost() {
+        val wasClosed = isClosed
+        close()
+        //Wake up a command waiting for the reply
+        replies.offer(emptyList())
+        if (!wasClosed) {
+            listener?.onTorControlConnectionLost(this)
+        }
+    }
+
+    override fun close() {
+        isClosed = true
+        try {
+            socket.close()
+        } catch (_: IOException) {
+        }
+    }
+
+    private fun ByteArray.toHex(): String {
+        val result = StringBuilder(size * 2)
+        for (byte in this) {
+            result.append(Character.forDigit((byte.toInt() shr 4) and 0xF, 16))
+            result.append(Character.forDigit(byte.toInt() and 0xF, 16))
+        }
+        return result.toString()
+    }
+
+    data class ReplyLine(
+        val status: Int,
+        val message: String
+    )
+
+    interface OnTorControlEventListener {
+        fun onTorControlEvent(event: TorControlEvent)
+        fun onTorControlConnectionLost(connection: TorControlConnection)
+    }
+
+    companion object {
+        @JvmStatic
+        @JvmOverloads
+        fun open(
+            address: InetSocketAddress,
+            replyTimeoutMs: Long = REPLY_TIMEOUT_MS
+        ): TorControlConnection {
+            val socket = Socket()
+            try {
+                socket.connect(address, CONNECT_TIMEOUT_MS)
+                socket.tcpNoDelay = true
+            } catch (e: IOException) {
+                socket.close()
+                throw e
+            }
+            return TorControlConnection(socket, replyTimeoutMs).also {
+                it.startReading()
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.utils.control
+
+sealed class TorControlEvent {
+
+    data class Bootstrap(
+        val progress: Int,
+        val tag: String,
+        val summary: String,
+        val warning: Boolean
+    ) : TorControlEvent()
+
+    data class ClientStatus(
+        val severity: String,
+        val action: String,
+        val arguments: Map<String, String>
+    ) : TorControlEvent()
+
+    data class CircuitStatus(
+        val circuitId: String,
+        val status: String,
+        val reason: String
+    ) : TorControlEvent()
+
+    data class StreamStatus(
+        val streamId: String,
+        val status: String,
+        val circuitId: String,
+        val target: String
+    ) : TorControlEvent()
+
+    data class Bandwidth(
+        val bytesRead: Long,
+        val bytesWritten: Long
+    ) : TorControlEvent()
+
+    companion object {
+
+        //Parses the body of an asynchronous 650 reply, e.g. "BW 1024 512"
+        fun parse(line: String): TorControlEvent? {
+            val tokens = tokenize(line)
+            if (tokens.isEmpty()) {
+                return null
+            }
+            return when (tokens[0]) {
+                "STATUS_CLIENT" -> parseClientStatus(tokens.drop(1))
+                "CIRC" -> parseCircuitStatus(tokens)
+                "STREAM" -> parseStreamStatus(tokens)
+                "BW" -> parseBandwidth(tokens)
+                else -> null
+            }
+        }
+
+        //Parses GETINFO status/bootstrap-phase value, e.g. "NOTICE BOOTSTRAP PROGRESS=100 ..."
+        fun parseBootstrapPhase(value: String): Bootstrap? =
+            parseClientStatus(tokenize(value)) as? Bootstrap
+
+        private fun parseClientStatus(tokens: List<String>): TorControlEvent? {
+            if (tokens.size < 2) {
+                return null
+            }
+            val severity = tokens[0]
+            val action = tokens[1]
+            val arguments = parseArguments(tokens.drop(2))
+            if (action == "BOOTSTRAP") {
+                val progress = arguments["PROGRESS"]?.toIntOrNull() ?: return null
+                return Bootstrap(
+                    progress = progress,
+                    tag = arguments["TAG"] ?: "",
+                    summary = arguments["SUMMARY"] ?: "",
+                    warning = severity == "WARN"
+                )
+            }
+            return ClientStatus(severity, action, arguments)
+        }
+
+        private fun parseCircuitStatus(tokens: List<String>): TorControlEvent? {
+            if (tokens.size < 3) {
+                return null
+            }
+            val arguments = parseArguments(tokens.drop(3))
+            return CircuitStatus(
+                circuitId = tokens[1],
+                status = tokens[2],
+                reason = arguments["REASON"] ?: ""
+            )
+        }
+
+        private fun parseStreamStatus(tokens: List<String>): TorControlEvent? {
+            if (tokens.size < 5) {
+                return null
+            }
+            return StreamStatus(
+                streamId = tokens[1],
+                status = tokens[2],
+                circuitId = tokens[3],
+                target = tokens[4]
+            )
+        }
+
+        private fun parseBandwidth(tokens: List<String>): TorControlEvent? {
+            if (tokens.size < 3) {
+                return null
+            }
+            return Bandwidth(
+                bytesRead = tokens[1].toLongOrNull() ?: return null,
+                bytesWritten = tokens[2].toLongOrNull() ?: return null
+            )
+        }
+
+        private fun parseArguments(tokens: List<String>): Map<String, String> {
+            val arguments = HashMap<String, String>()
+            for (token in tokens) {
+                val index = token.indexOf('=')
+                if (index > 0) {
+                    arguments[token.substring(0, index)] = token.substring(index + 1)
+                }
+            }
+            return arguments
+        }
+
+        //Splits by spaces, keeping quoted values such as SUMMARY="Loading relay descriptors" intact
+        private fun tokenize(line: String): List<String> {
+            val tokens = mutableListOf<String>()
+            val token = StringBuilder()
+            var quoted = false
+            var escaped = false
+            for (char in line) {
+                when {
+                    escaped -> {
+                        token.append(char)
+                        escaped = false
+                    }
+                    quoted && char == '\\' -> escaped = true
+                    char == '"' -> quoted = !quoted
+                    char == ' ' && !quoted -> {
+                        if (token.isNotEmpty()) {
+                            tokens.add(token.toString())
+                            token.setLength(0)
+                        }
+                    }
+                    else -> token.append(char)
+                }
+            }
+            if (token.isNotEmpty()) {
+                tokens.add(token.toString())
+            }
+            return tokens
+        }
+    }
+}
@@ -19,10 +19,18 @@
 
 package pan.alexander.cordova.torrunner.utils.file
 
+import android.os.Build
 import pan.alexander.cordova.torrunner.utils.logger.Logger.loge
+import pan.alexander.cordova.torrunner.utils.logger.Logger.logw
 import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
 import java.io.FileWriter
 import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import java.util.zip.GZIPOutputStream
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -163,6 +171,82 @@ class FileManager @Inject constructor() {
             false
         }
 
+    //Write to a temporary file, sync it and rename over the original, so a crash never leaves a partial file
+    fun rewriteFileAtomically(path: String, content: List<String>): Boolean {
+        val file = File(path)
+        val tempFile = File("$path.tmp")
+        return try {
+            file.parentFile?.mkdirs()
+            FileOutputStream(tempFile).use { stream ->
+                val writer = stream.bufferedWriter()
+                content.forEach { line ->
+                    writer.write(line)
+                    writer.newLine()
+                }
+                writer.flush()
+                stream.fd.sync()
+            }
+            if (!tempFile.renameTo(file)) {
+                throw IOException("Unable to rename ${tempFile.path}")
+            }
+            file.parentFile?.let { syncDirectory(it) }
+            true
+        } catch (e: Exception) {
+            loge("FileManager rewriteFileAtomically $path", e)
+            tempFile.delete()
+            false
+        }
+    }
+
+    //The rename is durable only after the directory entry is synced.
+    //Opening a directory needs java.nio.file, which is available from Android 8.0,
+    //and some filesystems refuse to sync a directory, so a failure here is not fatal.
+    private fun syncDirectory(directory: File) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return
+        }
+        try {
+            FileChannel.open(directory.toPath(), StandardOpenOption.READ).use { channel ->
+                channel.force(true)
+            }
+        } catch (e: Exception) {
+            logw("FileManager syncDirectory ${directory.path}", e)
+        }
+    }
+
+    //Truncates in place, so a process that appends to the file keeps writing to it
+    fun copyAndTruncateFile(source: File, destination: File): Boolean =
+        try {
+            source.copyTo(destination, overwrite = true)
+            RandomAccessFile(source, "rw").use { it.setLength(0) }
+            true
+        } catch (e: Exception) {
+            loge("FileManager copyAndTruncateFile ${source.path}", e)
+            destination.delete()
+            false
+        }
+
+    //Compresses to a temporary file and renames it, the source is removed on success
+    fun gzipFile(source: File, destination: File): Boolean {
+        val tempFile = File(destination.path + ".tmp")
+        return try {
+            FileInputStream(source).use { input ->
+                GZIPOutputStream(FileOutputStream(tempFile)).use { output ->
+                    input.copyTo(output)
+                }
+            }
+            if (!tempFile.renameTo(destination)) {
+                throw IOException("Unable to rename ${tempFile.path}")
+            }
+            source.delete()
+            true
+        } catch (e: Exception) {
+            loge("FileManager gzipFile ${source.path}", e)
+            tempFile.delete()
+            false
+        }
+    }
+
     fun appendToFile(file: File, content: String): Boolean =
         try {
             FileWriter(file, true).buffered().use { writer ->
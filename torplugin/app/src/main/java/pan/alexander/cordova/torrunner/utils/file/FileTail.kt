@@ -0,0 +1,168 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.utils.file
+
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import kotlin.math.min
+
+private const val NEW_LINE = '\n'.code.toByte()
+private const val READ_BUFFER_BYTES = 64 * 1024
+private const val FINGERPRINT_BYTES = 64
+private const val DEFAULT_INITIAL_BYTES = 64L * 1024
+
+/**
+ * Reads only the complete lines appended to a file since the previous call, through one reused buffer.
+ * A file that becomes shorter or starts with other bytes is treated as truncated and read from the beginning.
+ * Not thread safe, each consumer needs its own instance.
+ */
+class FileTail internal constructor(
+    private val file: File,
+    //How much of the existing content is returned by the first read
+    private val initialBytes: Long,
+    readBufferBytes: Int
+) {
+
+    constructor(
+        file: File,
+        initialBytes: Long = DEFAULT_INITIAL_BYTES
+    ) : this(file, initialBytes, READ_BUFFER_BYTES)
+
+    //Not mapped, a mapping of a file truncated by another process faults on access
+    private val buffer = ByteBuffer.allocateDirect(readBufferBytes)
+    private val bytes = ByteArray(readBufferBytes)
+
+    private var offset = -1L
+    private var fingerprint: ByteArray? = null
+
+    fun readAppendedLines(): Chunk {
+        if (!file.isFile) {
+            val truncated = offset > 0
+            reset()
+            return Chunk(emptyList(), truncated)
+        }
+
+        RandomAccessFile(file, "r").use { randomAccessFile ->
+            val channel = randomAccessFile.channel
+            val size = channel.size()
+            var truncated = false
+
+            if (offset < 0) {
+                offset = (size - initialBytes).coerceAtLeast(0)
+                if (offset > 0 && !isLineStart(channel, offset)) {
+                    offset = skipPartialLine(channel, offset, size)
+                }
+            } else if (size < offset || !hasSameFingerprint(channel, size)) {
+                reset()
+                truncated = true
+            }
+
+            val lines = ArrayList<String>()
+            while (offset < size) {
+                val length = read(channel, offset, size - offset)
+                if (length == 0) {
+                    //Truncated while reading, the next call starts over
+                    break
+                }
+                var end = lastNewLine(length)
+                if (end < 0) {
+                    if (length < buffer.capacity()) {
+                        //The last line is not written completely yet
+                        break
+                    }
+                    end = length - 1
+                }
+                buffer.get(bytes, 0, end + 1)
+                String(bytes, 0, end + 1, Charsets.UTF_8).lineSequence().forEach {
+                    lines.add(it.removeSuffix("\r"))
+                }
+                if (bytes[end] == NEW_LINE) {
+                    lines.removeAt(lines.lastIndex)
+                }
+                offset += end + 1
+            }
+
+            if (fingerprint == null && size > 0) {
+                fingerprint = readFingerprint(channel, size)
+            }
+
+            return Chunk(lines, truncated)
+        }
+    }
+
+    private fun reset() {
+        offset = 0
+        fingerprint = null
+    }
+
+    //Fills the buffer from the position, returns fewer bytes if the file ends earlier
+    private fun read(channel: FileChannel, position: Long, maxLength: Long): Int {
+        buffer.clear()
+        buffer.limit(min(maxLength, buffer.capacity().toLong()).toInt())
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) <= 0) {
+                break
+            }
+        }
+        buffer.flip()
+        return buffer.limit()
+    }
+
+    private fun isLineStart(channel: FileChannel, position: Long): Boolean =
+        read(channel, position - 1, 1) == 1 && buffer.get(0) == NEW_LINE
+
+    private fun skipPartialLine(channel: FileChannel, position: Long, size: Long): Long {
+        val length = read(channel, position, size - position)
+        for (i in 0 until length) {
+            if (buffer.get(i) == NEW_LINE) {
+                return position + i + 1
+            }
+        }
+        return position
+    }
+
+    private fun lastNewLine(length: Int): Int {
+        var index = length - 1
+        while (index >= 0 && buffer.get(index) != NEW_LINE) {
+            index--
+        }
+        return index
+    }
+
+    private fun readFingerprint(channel: FileChannel, size: Long): ByteArray {
+        val length = read(channel, 0, min(size, FINGERPRINT_BYTES.toLong()))
+        return ByteArray(length).also { buffer.get(it) }
+    }
+
+    private fun hasSameFingerprint(channel: FileChannel, size: Long): Boolean {
+        val expected = fingerprint ?: return true
+        if (size < expected.size) {
+            return false
+        }
+        return readFingerprint(channel, expected.size.toLong()).contentEquals(expected)
+    }
+
+    data class Chunk(
+        val lines: List<String>,
+        val truncated: Boolean
+    )
+}
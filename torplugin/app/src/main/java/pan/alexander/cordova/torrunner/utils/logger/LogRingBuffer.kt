@@ -0,0 +1,114 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.utils.logger
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Bounded lock-free queue for many writers and a single reader.
+ * Entries are preallocated and reused, so offering a message doesn't allocate.
+ * A full queue drops the new entry and counts it.
+ */
+internal class LogRingBuffer(capacity: Int) {
+
+    private val mask: Int
+    private val entries: Array<Entry>
+    private val sequences: AtomicLongArray
+    private val tail = AtomicLong()
+    private val dropped = AtomicLong()
+    private var head = 0L
+
+    init {
+        val size = Integer.highestOneBit((capacity - 1).coerceAtLeast(1)) shl 1
+        mask = size - 1
+        entries = Array(size) { Entry() }
+        sequences = AtomicLongArray(size)
+        for (i in 0 until size) {
+            sequences.set(i, i.toLong())
+        }
+    }
+
+    //Returns the position of the entry, or -1 if the buffer is full
+    fun offer(level: Logger.LogLevel, message: String?, throwable: Throwable?, printStackTrace: Boolean): Long {
+        var position = tail.get()
+        while (true) {
+            val index = (position and mask.toLong()).toInt()
+            val difference = sequences.get(index) - position
+            if (difference == 0L) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    entries[index].set(level, message, throwable, printStackTrace)
+                    sequences.lazySet(index, position + 1)
+                    return position
+                }
+                position = tail.get()
+            } else if (difference < 0) {
+                dropped.incrementAndGet()
+                return -1
+            } else {
+                position = tail.get()
+            }
+        }
+    }
+
+    //Must be called from the reader thread only
+    fun drain(consumer: (Entry) -> Unit): Int {
+        var count = 0
+        while (true) {
+            val index = (head and mask.toLong()).toInt()
+            if (sequences.get(index) != head + 1) {
+                return count
+            }
+            val entry = entries[index]
+            consumer(entry)
+            entry.clear()
+            sequences.lazySet(index, head + mask + 1)
+            head++
+            count++
+        }
+    }
+
+    fun isEmpty() = sequences.get((head and mask.toLong()).toInt()) != head + 1
+
+    fun takeDropped() = dropped.getAndSet(0)
+
+    class Entry {
+        var level = Logger.LogLevel.INFO
+            private set
+        var message: String? = null
+            private set
+        var throwable: Throwable? = null
+            private set
+        var printStackTrace = false
+            private set
+
+        fun set(level: Logger.LogLevel, message: String?, throwable: Throwable?, printStackTrace: Boolean) {
+            this.level = level
+            this.message = message
+            this.throwable = throwable
+            this.printStackTrace = printStackTrace
+        }
+
+        fun clear() {
+            message = null
+            throwable = null
+        }
+    }
+}
@@ -20,118 +20,182 @@
 package pan.alexander.cordova.torrunner.utils.logger
 
 import android.util.Log
-import kotlinx.coroutines.CoroutineExceptionHandler
-import kotlinx.coroutines.CoroutineName
-import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.SupervisorJob
-import kotlinx.coroutines.channels.BufferOverflow
-import kotlinx.coroutines.flow.MutableSharedFlow
-import kotlinx.coroutines.flow.launchIn
-import kotlinx.coroutines.flow.onEach
-
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * Messages are queued in a preallocated ring buffer and written to logcat in batches by a single daemon thread,
+ * at least every 100 ms, immediately for errors.
+ * Levels below [minLevel], set from the TorRunnerLogLevel preference, are dropped before any formatting.
+ * Exceptions are formatted by the writer thread,
+ * and consecutive short messages of the same level are written as one logcat entry.
+ */
 object Logger {
 
     const val LOG_TAG = "Bastyon"
     private const val MAX_LOG_LENGTH = 16000
     private const val MAX_LOG_ENTRY_LENGTH = 4000
+    private const val BUFFER_CAPACITY = 1024
+    private const val MAX_BATCH_DELAY_NS = 100_000_000L
+    //The writer is woken up early when this many messages are queued
+    private const val WAKE_UP_BATCH_SIZE = 256
+
+    @JvmStatic
+    @Volatile
+    var minLevel = LogLevel.INFO
 
+    private val buffer = LogRingBuffer(BUFFER_CAPACITY)
+    private val batch = StringBuilder(MAX_LOG_ENTRY_LENGTH)
+    private var batchLevel = LogLevel.INFO
 
-    private val coroutineScope by lazy {
-        CoroutineScope(
-            SupervisorJob() +
-                    Dispatchers.IO +
-                    CoroutineName("Logger") +
-                    CoroutineExceptionHandler { _, throwable ->
-                        Log.e(LOG_TAG, "Logger uncaught exception", throwable)
-                    }
-        )
-    }
-
-    private val logFlow by lazy {
-        MutableSharedFlow<LogEntry>(
-            replay = 10,
-            extraBufferCapacity = 100,
-            onBufferOverflow = BufferOverflow.DROP_OLDEST
-        ).also { flow ->
-            flow.onEach {
-                truncateLog(it.level, it.message)
-            }.launchIn(coroutineScope)
+    private val writer by lazy {
+        Thread(::writeLogs, "Logger").apply {
+            isDaemon = true
+            start()
         }
     }
 
-    private fun truncateLog(level: LogLevel, content: String?) {
-        content ?: return
-        if (content.length > MAX_LOG_LENGTH) {
-            truncateLog(level, content.substring(0, MAX_LOG_LENGTH))
-        } else if (content.length > MAX_LOG_ENTRY_LENGTH) {
-            printLog(level, content.substring(0, MAX_LOG_ENTRY_LENGTH))
-            truncateLog(level, content.substring(MAX_LOG_ENTRY_LENGTH))
-        } else {
-            printLog(level, content)
-        }
+    @JvmStatic
+    fun isLoggable(level: LogLevel) = level >= minLevel
+
+    @JvmStatic
+    fun logd(message: String?) {
+        log(LogLevel.DEBUG, message, null, false)
     }
 
-    private fun printLog(level: LogLevel, content: String) {
-        when (level) {
-            LogLevel.INFO -> Log.i(LOG_TAG, content)
-            LogLevel.WARN -> Log.w(LOG_TAG, content)
-            LogLevel.ERROR -> Log.e(LOG_TAG, content)
+    //The message is built only when the level is enabled
+    inline fun logd(message: () -> String) {
+        if (isLoggable(LogLevel.DEBUG)) {
+            logd(message())
         }
     }
 
     @JvmStatic
     fun logi(message: String?) {
-        logFlow.tryEmit(LogEntry(LogLevel.INFO, message ?: "null"))
+        log(LogLevel.INFO, message, null, false)
+    }
+
+    inline fun logi(message: () -> String) {
+        if (isLoggable(LogLevel.INFO)) {
+            logi(message())
+        }
     }
 
     @JvmStatic
     fun logw(message: String?) {
-        logFlow.tryEmit(LogEntry(LogLevel.WARN, message ?: "null"))
+        log(LogLevel.WARN, message, null, false)
+    }
+
+    inline fun logw(message: () -> String) {
+        if (isLoggable(LogLevel.WARN)) {
+            logw(message())
+        }
     }
 
     @JvmStatic
     fun logw(message: String?, e: Throwable?) {
-        logFlow.tryEmit(
-            LogEntry(
-                LogLevel.WARN,
-                "$message ${e?.javaClass?.canonicalName} ${e?.message} ${e?.cause ?: ""}"
-            )
-        )
+        log(LogLevel.WARN, message, e, false)
     }
 
     @JvmStatic
     fun loge(message: String?, e: Throwable?) {
-        logFlow.tryEmit(
-            LogEntry(
-                LogLevel.ERROR,
-                "$message ${e?.javaClass?.canonicalName} ${e?.message} ${e?.cause ?: ""}"
-            )
-        )
+        log(LogLevel.ERROR, message, e, false)
     }
 
     @JvmStatic
     fun loge(message: String?, e: Throwable?, printStackTrace: Boolean) {
-        logFlow.tryEmit(
-            LogEntry(
-                LogLevel.ERROR,
-                "$message ${e?.javaClass?.canonicalName} ${e?.message} ${e?.cause ?: ""}" +
-                        if (printStackTrace) "\n" + Log.getStackTraceString(e) else ""
-            )
-        )
+        log(LogLevel.ERROR, message, e, printStackTrace)
     }
 
     @JvmStatic
     fun loge(message: String?) {
-        logFlow.tryEmit(LogEntry(LogLevel.ERROR, message ?: "null"))
+        log(LogLevel.ERROR, message, null, false)
+    }
+
+    private fun log(level: LogLevel, message: String?, e: Throwable?, printStackTrace: Boolean) {
+        if (!isLoggable(level)) {
+            return
+        }
+        val thread = writer
+        val position = buffer.offer(level, message, e, printStackTrace)
+        if (position < 0 || position % WAKE_UP_BATCH_SIZE == 0L || level == LogLevel.ERROR) {
+            LockSupport.unpark(thread)
+        }
     }
 
-    private data class LogEntry(
-        val level: LogLevel,
-        val message: String
-    )
+    private fun writeLogs() {
+        while (true) {
+            try {
+                buffer.drain(::writeEntry)
+                flushBatch()
+
+                val dropped = buffer.takeDropped()
+                if (dropped > 0) {
+                    Log.w(LOG_TAG, "Logger dropped $dropped messages")
+                }
+
+                if (buffer.isEmpty()) {
+                    LockSupport.parkNanos(this, MAX_BATCH_DELAY_NS)
+                }
+            } catch (e: Exception) {
+                Log.e(LOG_TAG, "Logger uncaught exception", e)
+            }
+        }
+    }
+
+    private fun writeEntry(entry: LogRingBuffer.Entry) {
+        val e = entry.throwable
+        val content = if (e == null) {
+            entry.message ?: "null"
+        } else {
+            "${entry.message} ${e.javaClass.canonicalName} ${e.message} ${e.cause ?: ""}" +
+                    if (entry.printStackTrace) "\n" + Log.getStackTraceString(e) else ""
+        }
+
+        if (batch.isNotEmpty()
+            && (entry.level != batchLevel || batch.length + content.length + 1 > MAX_LOG_ENTRY_LENGTH)
+        ) {
+            flushBatch()
+        }
+
+        if (content.length > MAX_LOG_ENTRY_LENGTH) {
+            printLongLog(entry.level, content)
+        } else {
+            if (batch.isNotEmpty()) {
+                batch.append('\n')
+            }
+            batch.append(content)
+            batchLevel = entry.level
+        }
+    }
+
+    private fun flushBatch() {
+        if (batch.isNotEmpty()) {
+            printLog(batchLevel, batch.toString())
+            batch.setLength(0)
+        }
+    }
+
+    private fun printLongLog(level: LogLevel, content: String) {
+        val length = minOf(content.length, MAX_LOG_LENGTH)
+        var start = 0
+        while (start < length) {
+            val end = minOf(start + MAX_LOG_ENTRY_LENGTH, length)
+            printLog(level, content.substring(start, end))
+            start = end
+        }
+    }
+
+    private fun printLog(level: LogLevel, content: String) {
+        when (level) {
+            LogLevel.DEBUG -> Log.d(LOG_TAG, content)
+            LogLevel.INFO -> Log.i(LOG_TAG, content)
+            LogLevel.WARN -> Log.w(LOG_TAG, content)
+            LogLevel.ERROR -> Log.e(LOG_TAG, content)
+        }
+    }
 
-    private enum class LogLevel {
+    enum class LogLevel {
+        DEBUG,
         INFO,
         WARN,
         ERROR,
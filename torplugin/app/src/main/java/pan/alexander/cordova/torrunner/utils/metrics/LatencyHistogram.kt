@@ -0,0 +1,106 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.utils.metrics
+
+import org.json.JSONObject
+import kotlin.math.ceil
+
+//Each power of two range is split into 2^(SUB_BUCKET_BITS - 1) linear buckets, about 3% precision
+private const val SUB_BUCKET_BITS = 6
+private const val SUB_BUCKET_HALF_COUNT = 1 shl (SUB_BUCKET_BITS - 1)
+private const val DEFAULT_MAX_VALUE_MS = 60L * 60 * 1000
+
+/**
+ * Fixed size histogram of millisecond values with log-linear buckets, in the spirit of HdrHistogram.
+ * Recording is O(1) and the memory doesn't grow with the number of values.
+ */
+class LatencyHistogram(private val maxValueMs: Long = DEFAULT_MAX_VALUE_MS) {
+
+    private val counts = LongArray(indexOf(maxValueMs) + 1)
+    private var totalCount = 0L
+    private var sum = 0L
+    private var min = Long.MAX_VALUE
+    private var max = 0L
+
+    @Synchronized
+    fun record(valueMs: Long) {
+        val value = valueMs.coerceIn(0, maxValueMs)
+        counts[indexOf(value)]++
+        totalCount++
+        sum += value
+        if (value < min) {
+            min = value
+        }
+        if (value > max) {
+            max = value
+        }
+    }
+
+    @Synchronized
+    fun getCount() = totalCount
+
+    //Returns the highest value that is equivalent to the percentile within the bucket precision
+    @Synchronized
+    fun getValueAtPercentile(percentile: Double): Long {
+        if (totalCount == 0L) {
+            return 0
+        }
+        val countAtPercentile = ceil(percentile / 100 * totalCount).toLong().coerceIn(1, totalCount)
+        var cumulative = 0L
+        for (i in counts.indices) {
+            cumulative += counts[i]
+            if (cumulative >= countAtPercentile) {
+                return (valueOf(i + 1) - 1).coerceIn(min, max)
+            }
+        }
+        return max
+    }
+
+    @Synchronized
+    fun toJson(): JSONObject = JSONObject().apply {
+        put("count", totalCount)
+        if (totalCount > 0) {
+            put("min", min)
+            put("max", max)
+            put("mean", sum / totalCount)
+            put("p50", getValueAtPercentile(50.0))
+            put("p90", getValueAtPercentile(90.0))
+            put("p99", getValueAtPercentile(99.0))
+        }
+    }
+
+    private fun indexOf(value: Long): Int {
+        if (value < 2 * SUB_BUCKET_HALF_COUNT) {
+            return value.toInt()
+        }
+        val bucket = 63 - java.lang.Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1)
+        return SUB_BUCKET_HALF_COUNT * bucket + (value shr bucket).toInt()
+    }
+
+    //The lowest value of the bucket with the index
+    private fun valueOf(index: Int): Long {
+        if (index < 2 * SUB_BUCKET_HALF_COUNT) {
+            return index.toLong()
+        }
+        val bucket = index / SUB_BUCKET_HALF_COUNT - 1
+        val subBucket = index - SUB_BUCKET_HALF_COUNT * bucket
+        return subBucket.toLong() shl bucket
+    }
+}
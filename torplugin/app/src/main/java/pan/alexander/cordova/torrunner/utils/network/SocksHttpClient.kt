@@ -0,0 +1,202 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.utils.network
+
+import pan.alexander.cordova.torrunner.utils.Constants.LOOPBACK_ADDRESS
+import java.io.ByteArrayInputStream
+import java.io.InputStream
+import java.net.HttpURLConnection
+import java.net.InetSocketAddress
+import java.net.ProtocolException
+import java.net.Proxy
+import java.net.URL
+import javax.inject.Inject
+import javax.inject.Singleton
+
+private const val CONNECT_TIMEOUT_SEC = 30
+private const val READ_TIMEOUT_SEC = 60
+private const val MAX_REDIRECTS = 20
+
+/**
+ * Makes HTTP requests through a local SOCKS proxy and returns the response
+ * with its body as a stream that is read only when the caller consumes it.
+ *
+ * Redirects are followed here rather than by [HttpURLConnection], so that the cookies
+ * of every hop are stored against the URL of that hop and sent to the next one.
+ * With followRedirects false, a redirect response is returned as is.
+ */
+@Singleton
+class SocksHttpClient @Inject constructor() {
+
+    fun execute(
+        url: String,
+        method: String,
+        headers: Map<String, String>,
+        body: ByteArray?,
+        socksPort: Int,
+        cookieStore: CookieStore,
+        followRedirects: Boolean = true
+    ): Response {
+        val proxy = Proxy(Proxy.Type.SOCKS, InetSocketAddress(LOOPBACK_ADDRESS, socksPort))
+        var currentUrl = URL(url)
+        var currentMethod = method
+        var currentHeaders = headers
+        var currentBody = body
+        var redirects = 0
+        while (true) {
+            val connection = currentUrl.openConnection(proxy) as HttpURLConnection
+            try {
+                val statusCode = send(connection, currentMethod, currentHeaders, currentBody)
+                storeCookies(connection, cookieStore)
+
+                val location = connection.getHeaderField(LOCATION_HEADER)
+                if (!followRedirects || statusCode !in REDIRECT_CODES || location.isNullOrEmpty()) {
+                    return Response(
+                        statusCode = statusCode,
+                        reasonPhrase = connection.responseMessage.orEmpty(),
+                        headers = connection.headerFields.filterKeys { it != null },
+                        body = getBody(connection, statusCode)
+                    )
+                }
+
+                if (++redirects > MAX_REDIRECTS) {
+                    throw ProtocolException("Too many redirects: $redirects")
+                }
+                val nextUrl = URL(currentUrl, location)
+                if (nextUrl.protocol != "http" && nextUrl.protocol != "https") {
+                    throw ProtocolException("Unsupported redirect to ${nextUrl.protocol}")
+                }
+                getBody(connection, statusCode).close()
+
+                //As browsers do, only 307 and 308 repeat a POST with its body
+                val changeToGet = statusCode == HttpURLConnection.HTTP_SEE_OTHER
+                        && currentMethod != "HEAD"
+                        || statusCode in MOVED_CODES && currentMethod == "POST"
+                if (changeToGet) {
+                    currentMethod = "GET"
+                    currentBody = null
+                }
+                currentHeaders = getRedirectHeaders(
+                    currentHeaders,
+                    currentUrl,
+                    nextUrl,
+                    changeToGet,
+                    cookieStore
+                )
+                currentUrl = nextUrl
+            } catch (e: Exception) {
+                connection.disconnect()
+                throw e
+            }
+        }
+    }
+
+    private fun send(
+        connection: HttpURLConnection,
+        method: String,
+        headers: Map<String, String>,
+        body: ByteArray?
+    ): Int {
+        connection.connectTimeout = CONNECT_TIMEOUT_SEC * 1000
+        connection.readTimeout = READ_TIMEOUT_SEC * 1000
+        connection.instanceFollowRedirects = false
+        connection.useCaches = false
+        connection.requestMethod = method
+        for ((key, value) in headers) {
+            connection.setRequestProperty(key, value)
+        }
+        if (body != null) {
+            connection.doOutput = true
+            connection.setFixedLengthStreamingMode(body.size)
+            connection.outputStream.use { it.write(body) }
+        }
+        return connection.responseCode
+    }
+
+    private fun storeCookies(connection: HttpURLConnection, cookieStore: CookieStore) {
+        val url = connection.url.toString()
+        for ((name, values) in connection.headerFields) {
+            if (name.equals(SET_COOKIE_HEADER, ignoreCase = true)) {
+                values.forEach { cookieStore.setCookie(url, it) }
+            }
+        }
+    }
+
+    private fun getBody(connection: HttpURLConnection, statusCode: Int): InputStream {
+        val stream = if (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+            connection.errorStream
+        } else {
+            connection.inputStream
+        }
+        return stream ?: ByteArrayInputStream(ByteArray(0))
+    }
+
+    //The cookies and credentials of the previous URL must not follow the redirect
+    private fun getRedirectHeaders(
+        headers: Map<String, String>,
+        url: URL,
+        nextUrl: URL,
+        changeToGet: Boolean,
+        cookieStore: CookieStore
+    ): Map<String, String> {
+        val sameOrigin = url.protocol == nextUrl.protocol
+                && url.host.equals(nextUrl.host, ignoreCase = true)
+                && url.port == nextUrl.port
+        val redirectHeaders = headers.filterKeys { name ->
+            !name.equals(COOKIE_HEADER, ignoreCase = true)
+                    && (sameOrigin || !name.equals(AUTHORIZATION_HEADER, ignoreCase = true))
+                    && (!changeToGet || !name.equals(CONTENT_TYPE_HEADER, ignoreCase = true))
+        }.toMutableMap()
+        cookieStore.getCookie(nextUrl.toString())
+            ?.takeIf { it.isNotEmpty() }
+            ?.let { redirectHeaders[COOKIE_HEADER] = it }
+        return redirectHeaders
+    }
+
+    class Response(
+        val statusCode: Int,
+        val reasonPhrase: String,
+        val headers: Map<String, List<String>>,
+        val body: InputStream
+    )
+
+    interface CookieStore {
+        fun getCookie(url: String): String?
+        fun setCookie(url: String, cookie: String)
+    }
+
+    private companion object {
+        const val LOCATION_HEADER = "Location"
+        const val SET_COOKIE_HEADER = "Set-Cookie"
+        const val COOKIE_HEADER = "Cookie"
+        const val AUTHORIZATION_HEADER = "Authorization"
+        const val CONTENT_TYPE_HEADER = "Content-Type"
+
+        val MOVED_CODES = setOf(
+            HttpURLConnection.HTTP_MOVED_PERM,
+            HttpURLConnection.HTTP_MOVED_TEMP
+        )
+        val REDIRECT_CODES = MOVED_CODES + setOf(
+            HttpURLConnection.HTTP_SEE_OTHER,
+            307,
+            308
+        )
+    }
+}
@@ -28,6 +28,7 @@ import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -35,6 +36,8 @@ import javax.inject.Singleton;
 @Singleton
 public class PortChecker {
 
+    private static final long PORT_POLL_INTERVAL_MS = 50;
+
     @Inject
     public PortChecker() {
     }
@@ -56,6 +59,22 @@ public class PortChecker {
         return false;
     }
 
+    //Returns as soon as the port is released, false if it is still busy after the timeout
+    public boolean awaitPortAvailable(int port, long timeoutMs) {
+        for (long waited = 0; waited < timeoutMs; waited += PORT_POLL_INTERVAL_MS) {
+            if (isPortAvailable(port)) {
+                return true;
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(PORT_POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return isPortAvailable(port);
+    }
+
     public String getFreePort(String port) {
 
         if (!port.matches(NUMBER_REGEX) || port.length() > 5 || Long.parseLong(port) > MAX_PORT_NUMBER) {
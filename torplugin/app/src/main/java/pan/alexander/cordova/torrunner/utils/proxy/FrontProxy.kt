@@ -0,0 +1,686 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.utils.proxy
+
+import org.json.JSONObject
+import pan.alexander.cordova.torrunner.utils.Constants.LOOPBACK_ADDRESS
+import pan.alexander.cordova.torrunner.utils.logger.Logger.logd
+import pan.alexander.cordova.torrunner.utils.logger.Logger.loge
+import pan.alexander.cordova.torrunner.utils.logger.Logger.logi
+import pan.alexander.cordova.torrunner.utils.logger.Logger.logw
+import java.io.IOException
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.nio.ByteBuffer
+import java.nio.channels.CancelledKeyException
+import java.nio.channels.SelectionKey
+import java.nio.channels.Selector
+import java.nio.channels.ServerSocketChannel
+import java.nio.channels.SocketChannel
+import javax.inject.Inject
+import javax.inject.Singleton
+
+private const val RELAY_BUFFER_SIZE = 16 * 1024
+private const val MAX_REQUEST_HEADER_SIZE = 8 * 1024
+private const val MAX_CONNECTIONS = 512
+private const val MAX_WARMING_CONNECTIONS = 8
+private const val SELECT_TIMEOUT_MS = 1000L
+private const val CLIENT_HANDSHAKE_TIMEOUT_MS = 10_000L
+private const val UPSTREAM_HANDSHAKE_TIMEOUT_MS = 60_000L
+private const val POOL_MAX_IDLE_PER_DESTINATION = 1
+private const val POOL_MAX_IDLE_TOTAL = 16
+private const val POOL_MAX_IDLE_MS = 20_000L
+
+private const val SOCKS_VERSION = 5
+private const val SOCKS_NO_AUTHENTICATION = 0
+private const val SOCKS_NO_ACCEPTABLE_METHODS = 0xFF
+private const val SOCKS_COMMAND_CONNECT = 1
+private const val SOCKS_ADDRESS_IPV4 = 1
+private const val SOCKS_ADDRESS_DOMAIN = 3
+private const val SOCKS_ADDRESS_IPV6 = 4
+private const val SOCKS_REPLY_COMMAND_NOT_SUPPORTED = 7
+private const val SOCKS_REPLY_ADDRESS_NOT_SUPPORTED = 8
+
+/**
+ * In-process alternative to the native reverse proxy. Accepts SOCKS5 and HTTP CONNECT
+ * clients on the loopback interface and relays them through the Tor SOCKS port,
+ * using one thread and non-blocking channels for all connections.
+ *
+ * Destinations requested repeatedly get a prepared SOCKS connection from [ProxyConnectionPool],
+ * and per-connection byte and connect latency counters are available with [toJson].
+ */
+@Singleton
+class FrontProxy internal constructor(
+    private val clientHandshakeTimeoutMs: Long,
+    private val upstreamHandshakeTimeoutMs: Long
+) {
+
+    @Inject
+    constructor() : this(CLIENT_HANDSHAKE_TIMEOUT_MS, UPSTREAM_HANDSHAKE_TIMEOUT_MS)
+
+    @Volatile
+    private var running = false
+
+    @Volatile
+    private var selector: Selector? = null
+
+    @Volatile
+    private var listenPort = 0
+
+    private val stats = ProxyStats()
+
+    //Used by the proxy thread only
+    private val connections = HashSet<ProxyConnection>()
+    private val warmingUpstreams = HashSet<SocksUpstream>()
+    private val pool = ProxyConnectionPool(
+        POOL_MAX_IDLE_PER_DESTINATION,
+        POOL_MAX_IDLE_TOTAL,
+        POOL_MAX_IDLE_MS
+    )
+    private lateinit var socksAddress: InetSocketAddress
+
+    val isRunning: Boolean
+        get() = running
+
+    /**
+     * Serves clients on [port], or on a free port when it is 0,
+     * until [stop] is called or the thread is interrupted.
+     */
+    @Throws(IOException::class)
+    fun run(port: Int, socksPort: Int) {
+        val selector = Selector.open()
+        val server = ServerSocketChannel.open()
+        try {
+            server.configureBlocking(false)
+            server.socket().reuseAddress = true
+            server.bind(InetSocketAddress(LOOPBACK_ADDRESS, port))
+            server.register(selector, SelectionKey.OP_ACCEPT, SelectionHandler { accept(server) })
+
+            socksAddress = InetSocketAddress(LOOPBACK_ADDRESS, socksPort)
+            listenPort = server.socket().localPort
+            this.selector = selector
+            running = true
+            logi("In-process proxy is listening on port $listenPort")
+
+            loop(selector)
+        } finally {
+            running = false
+            this.selector = null
+            connections.toList().forEach { it.close(null) }
+            warmingUpstreams.forEach { it.close() }
+            warmingUpstreams.clear()
+            pool.closeAll()
+            server.close()
+            selector.close()
+            logi("In-process proxy stopped")
+        }
+    }
+
+    fun stop() {
+        running = false
+        selector?.wakeup()
+    }
+
+    fun toJson(): JSONObject = stats.toJson().apply {
+        put("running", running)
+        put("port", listenPort)
+        put("pooled", pool.size)
+    }
+
+    private fun loop(selector: Selector) {
+        var lastSweepNs = System.nanoTime()
+        while (running && !Thread.currentThread().isInterrupted) {
+            selector.select(SELECT_TIMEOUT_MS)
+            val keys = selector.selectedKeys().iterator()
+            while (keys.hasNext()) {
+                val key = keys.next()
+                keys.remove()
+                try {
+                    if (key.isValid) {
+                        (key.attachment() as SelectionHandler).handle(key)
+                    }
+                } catch (_: CancelledKeyException) {
+                } catch (e: Exception) {
+                    loge("FrontProxy", e)
+                    (key.attachment() as? ProxyConnection)?.close(e.message)
+                }
+            }
+
+            val nowNs = System.nanoTime()
+            if (nowNs - lastSweepNs >= SELECT_TIMEOUT_MS * 1_000_000) {
+                lastSweepNs = nowNs
+                sweep(nowNs)
+            }
+        }
+    }
+
+    private fun sweep(nowNs: Long) {
+        connections.toList().forEach { it.checkTimeout(nowNs) }
+        warmingUpstreams.toList().forEach {
+            if (nowNs - it.startedAtNs > upstreamHandshakeTimeoutMs * 1_000_000) {
+                it.failOnTimeout()
+            }
+        }
+        pool.evictExpired(System.currentTimeMillis())
+    }
+
+    private fun accept(server: ServerSocketChannel) {
+        while (true) {
+            val client = server.accept() ?: return
+            if (connections.size >= MAX_CONNECTIONS) {
+                logw("In-process proxy rejected a client, too many connections")
+                client.close()
+                continue
+            }
+            try {
+                client.configureBlocking(false)
+                client.socket().tcpNoDelay = true
+                val connection = ProxyConnection(client)
+                connection.clientKey = client.register(selector, SelectionKey.OP_READ, connection)
+                connections.add(connection)
+            } catch (e: IOException) {
+                client.close()
+            }
+        }
+    }
+
+    //Prepares a connection for the next client of a destination that is requested repeatedly
+    private fun warm(destination: ProxyDestination) {
+        if (warmingUpstreams.size >= MAX_WARMING_CONNECTIONS) {
+            return
+        }
+        try {
+            pool.onWarmingStarted(destination)
+            warmingUpstreams.add(SocksUpstream.open(selector!!, socksAddress, destination, warmer))
+        } catch (e: IOException) {
+            pool.onWarmingFinished(destination)
+            logw { "In-process proxy cannot prepare a connection to $destination ${e.message}" }
+        }
+    }
+
+    private val warmer = object : SocksUpstream.Listener {
+        override fun onUpstreamReady(upstream: SocksUpstream) {
+            warmingUpstreams.remove(upstream)
+            pool.onWarmingFinished(upstream.destination)
+            //The destination speaks first, so the connection cannot be handed to a new client
+            if (upstream.leftover != null) {
+                upstream.close()
+                return
+            }
+            stats.onWarmed()
+            pool.put(upstream, System.currentTimeMillis())
+            //An idle connection becomes readable only when it is closed or gets unexpected data
+            upstream.key.attach(SelectionHandler { pool.remove(upstream) })
+            upstream.key.interestOps(SelectionKey.OP_READ)
+        }
+
+        override fun onUpstreamFailed(upstream: SocksUpstream, reply: Int, cause: String) {
+            warmingUpstreams.remove(upstream)
+            pool.onWarmingFinished(upstream.destination)
+        }
+    }
+
+    private enum class ClientProtocol { SOCKS5, HTTP }
+
+    private enum class ConnectionState { HANDSHAKE, CONNECTING, RELAY, CLOSED }
+
+    private inner class ProxyConnection(
+        private val client: SocketChannel
+    ) : SelectionHandler, SocksUpstream.Listener {
+
+        lateinit var clientKey: SelectionKey
+
+        private val connectionStats = stats.onAccepted()
+        private val acceptedAtNs = System.nanoTime()
+        private var connectStartedAtNs = 0L
+
+        private var state = ConnectionState.HANDSHAKE
+        private var protocol: ClientProtocol? = null
+        private var socksGreetingReceived = false
+        private var upstream: SocksUpstream? = null
+
+        //Both buffers are in the write mode between events
+        private val clientToUpstream = ByteBuffer.allocate(RELAY_BUFFER_SIZE)
+        private val upstreamToClient = ByteBuffer.allocate(RELAY_BUFFER_SIZE)
+
+        private var clientInputClosed = false
+        private var upstreamInputClosed = false
+        private var clientOutputClosed = false
+        private var upstreamOutputClosed = false
+        private var closeAfterReply = false
+
+        override fun handle(key: SelectionKey) {
+            try {
+                if (key === clientKey) {
+                    onClientEvent(key)
+                } else {
+                    onUpstreamEvent(key)
+                }
+                updateInterestOps()
+            } catch (e: IOException) {
+                close(e.message ?: e.javaClass.simpleName)
+            }
+        }
+
+        private fun onClientEvent(key: SelectionKey) {
+            if (key.isWritable) {
+                writeToClient()
+            }
+            if (!key.isValid || !key.isReadable) {
+                return
+            }
+            val count = client.read(clientToUpstream)
+            if (count < 0) {
+                clientInputClosed = true
+                if (state != ConnectionState.RELAY) {
+                    close(null)
+                }
+            } else if (state == ConnectionState.HANDSHAKE) {
+                readHandshake()
+            } else if (state == ConnectionState.RELAY) {
+                writeToUpstream()
+            }
+        }
+
+        private fun onUpstreamEvent(key: SelectionKey) {
+            val channel = upstream?.channel ?: return
+            if (key.isWritable) {
+                writeToUpstream()
+            }
+            if (!key.isValid || !key.isReadable) {
+                return
+            }
+            val count = channel.read(upstreamToClient)
+            if (count < 0) {
+                upstreamInputClosed = true
+            } else if (count > 0) {
+                stats.onReceived(connectionStats, count)
+                writeToClient()
+            }
+        }
+
+        private fun writeToClient() {
+            if (upstreamToClient.position() == 0) {
+                return
+            }
+            upstreamToClient.flip()
+            client.write(upstreamToClient)
+            upstreamToClient.compact()
+        }
+
+        private fun writeToUpstream() {
+            val channel = upstream?.channel ?: return
+            if (clientToUpstream.position() == 0) {
+                return
+            }
+            clientToUpstream.flip()
+            val count = channel.write(clientToUpstream)
+            clientToUpstream.compact()
+            stats.onSent(connectionStats, count)
+        }
+
+        private fun updateInterestOps() {
+            if (state == ConnectionState.CLOSED) {
+                return
+            }
+
+            if (state == ConnectionState.RELAY) {
+                propagateHalfClose()
+                if (state == ConnectionState.CLOSED) {
+                    return
+                }
+            } else if (closeAfterReply && upstreamToClient.position() == 0) {
+                close(null)
+                return
+            }
+
+            var clientOps = 0
+            if (state != ConnectionState.CONNECTING && !closeAfterReply && !clientInputClosed
+                && clientToUpstream.hasRemaining()
+            ) {
+                clientOps = clientOps or SelectionKey.OP_READ
+            }
+            if (upstreamToClient.position() > 0) {
+                clientOps = clientOps or SelectionKey.OP_WRITE
+            }
+            clientKey.interestOps(clientOps)
+
+            if (state == ConnectionState.RELAY) {
+                var upstreamOps = 0
+                if (!upstreamInputClosed && upstreamToClient.hasRemaining()) {
+                    upstreamOps = upstreamOps or SelectionKey.OP_READ
+                }
+                if (clientToUpstream.position() > 0) {
+                    upstreamOps = upstreamOps or SelectionKey.OP_WRITE
+                }
+                upstream?.key?.interestOps(upstreamOps)
+            }
+        }
+
+        //Forwards the end of stream in each direction once the buffered data is delivered
+        private fun propagateHalfClose() {
+            if (clientInputClosed && !upstreamOutputClosed && clientToUpstream.position() == 0) {
+                upstreamOutputClosed = true
+                upstream?.channel?.shutdownOutput()
+            }
+            if (upstreamInputClosed && !clientOutputClosed && upstreamToClient.position() == 0) {
+                clientOutputClosed = true
+                client.shutdownOutput()
+            }
+            if (clientOutputClosed && upstreamOutputClosed) {
+                close(null)
+            }
+        }
+
+        private fun readHandshake() {
+            val data = clientToUpstream.duplicate()
+            data.flip()
+            if (!data.hasRemaining()) {
+                return
+            }
+            if (protocol == null) {
+                protocol = if (data.get(0).toInt() == SOCKS_VERSION) {
+                    ClientProtocol.SOCKS5
+                } else {
+                    ClientProtocol.HTTP
+                }
+                connectionStats.protocol = protocol!!.name
+            }
+            when (protocol) {
+                ClientProtocol.SOCKS5 -> readSocksHandshake(data)
+                else -> readHttpConnect(data)
+            }
+        }
+
+        private fun readSocksHandshake(data: ByteBuffer) {
+            if (!socksGreetingReceived) {
+                if (data.remaining() < 2) {
+                    return
+                }
+                val methodsCount = data.get(1).toInt() and 0xFF
+                if (data.remaining() < 2 + methodsCount) {
+                    return
+                }
+                val noAuthentication = (0 until methodsCount).any {
+                    data.get(2 + it).toInt() == SOCKS_NO_AUTHENTICATION
+                }
+                consume(2 + methodsCount)
+                if (!noAuthentication) {
+                    reply(byteArrayOf(SOCKS_VERSION.toByte(), SOCKS_NO_ACCEPTABLE_METHODS.toByte()))
+                    fail("Client requires unsupported authentication")
+                    return
+                }
+                reply(byteArrayOf(SOCKS_VERSION.toByte(), SOCKS_NO_AUTHENTICATION.toByte()))
+                socksGreetingReceived = true
+                //The request could be sent together with the greeting
+                readHandshake()
+                return
+            }
+
+            if (data.remaining() < 5) {
+                return
+            }
+            val command = data.get(1).toInt()
+            val addressType = data.get(3).toInt()
+            val addressLength = when (addressType) {
+                SOCKS_ADDRESS_IPV4 -> 4
+                SOCKS_ADDRESS_IPV6 -> 16
+                SOCKS_ADDRESS_DOMAIN -> 1 + (data.get(4).toInt() and 0xFF)
+                else -> {
+                    replySocksFailure(SOCKS_REPLY_ADDRESS_NOT_SUPPORTED, "Unsupported address type")
+                    return
+                }
+            }
+            val requestLength = 4 + addressLength + 2
+            if (data.remaining() < requestLength) {
+                return
+            }
+            val host = if (addressType == SOCKS_ADDRESS_DOMAIN) {
+                String(ByteArray(addressLength - 1).also { data.position(5); data.get(it) }, Charsets.US_ASCII)
+            } else {
+                val address = ByteArray(addressLength).also { data.position(4); data.get(it) }
+                InetAddress.getByAddress(address).hostAddress ?: ""
+            }
+            val port = data.getShort(4 + addressLength).toInt() and 0xFFFF
+            consume(requestLength)
+
+            when {
+                command != SOCKS_COMMAND_CONNECT ->
+                    replySocksFailure(SOCKS_REPLY_COMMAND_NOT_SUPPORTED, "Unsupported command $command")
+                host.isEmpty() || port == 0 ->
+                    replySocksFailure(SOCKS_REPLY_ADDRESS_NOT_SUPPORTED, "Invalid destination")
+                else -> connect(ProxyDestination(host, port))
+            }
+        }
+
+        private fun readHttpConnect(data: ByteBuffer) {
+            val headerEnd = indexOfHeaderEnd(data)
+            if (headerEnd < 0) {
+                if (data.remaining() >= MAX_REQUEST_HEADER_SIZE) {
+                    replyHttpFailure("431 Request Header Fields Too Large")
+                }
+                return
+            }
+            val header = ByteArray(headerEnd).also { data.get(it) }
+            consume(headerEnd + 4)
+
+            val requestLine = String(header, Charsets.ISO_8859_1).substringBefore("\r\n").split(' ')
+            if (requestLine.size != 3 || !requestLine[2].startsWith("HTTP/")) {
+                replyHttpFailure("400 Bad Request")
+                return
+            }
+            if (requestLine[0] != "CONNECT") {
+                replyHttpFailure("405 Method Not Allowed")
+                return
+            }
+            val destination = parseAuthority(requestLine[1])
+            if (destination == null) {
+                replyHttpFailure("400 Bad Request")
+                return
+            }
+            connect(destination)
+        }
+
+        private fun connect(destination: ProxyDestination) {
+            if (destination.host.length > 255) {
+                if (protocol == ClientProtocol.SOCKS5) {
+                    replySocksFailure(SOCKS_REPLY_ADDRESS_NOT_SUPPORTED, "Host name is too long")
+                } else {
+                    replyHttpFailure("400 Bad Request")
+                }
+                return
+            }
+
+            state = ConnectionState.CONNECTING
+            connectionStats.destination = destination.toString()
+            connectStartedAtNs = System.nanoTime()
+
+            val nowMs = System.currentTimeMillis()
+            val pooled = pool.take(destination, nowMs)
+            if (pool.onRequested(destination, nowMs)) {
+                warm(destination)
+            }
+
+            if (pooled != null) {
+                onUpstreamReady(pooled, true)
+                return
+            }
+
+            try {
+                upstream = SocksUpstream.open(selector!!, socksAddress, destination, this)
+            } catch (e: IOException) {
+                onUpstreamFailed(SOCKS_REPLY_GENERAL_FAILURE, e.message ?: "Tor is not available")
+            }
+        }
+
+        override fun onUpstreamReady(upstream: SocksUpstream) {
+            try {
+                onUpstreamReady(upstream, false)
+                updateInterestOps()
+            } catch (e: IOException) {
+                close(e.message ?: e.javaClass.simpleName)
+            }
+        }
+
+        private fun onUpstreamReady(upstream: SocksUpstream, fromPool: Boolean) {
+            this.upstream = upstream
+            upstream.key.attach(this)
+            state = ConnectionState.RELAY
+            val connectTimeMs = (System.nanoTime() - connectStartedAtNs) / 1_000_000
+            stats.onConnected(connectionStats, connectTimeMs, fromPool)
+            logd {
+                "In-process proxy $protocol connected to ${connectionStats.destination} " +
+                        "in $connectTimeMs ms${if (fromPool) " from pool" else ""}"
+            }
+
+            if (protocol == ClientProtocol.SOCKS5) {
+                reply(socksReply(SOCKS_REPLY_SUCCEEDED))
+            } else {
+                reply(HTTP_CONNECTION_ESTABLISHED)
+            }
+            upstream.leftover?.let {
+                stats.onReceived(connectionStats, it.remaining())
+                upstreamToClient.put(it)
+            }
+            writeToClient()
+            //Data sent by the client right after the request
+            writeToUpstream()
+        }
+
+        override fun onUpstreamFailed(upstream: SocksUpstream, reply: Int, cause: String) {
+            onUpstreamFailed(reply, cause)
+            if (state != ConnectionState.CLOSED) {
+                updateInterestOps()
+            }
+        }
+
+        private fun onUpstreamFailed(reply: Int, cause: String) {
+            upstream = null
+            if (protocol == ClientProtocol.SOCKS5) {
+                replySocksFailure(reply, cause)
+            } else {
+                val status = if (reply == SOCKS_REPLY_TTL_EXPIRED) {
+                    "504 Gateway Timeout"
+                } else {
+                    "502 Bad Gateway"
+                }
+                replyHttpFailure(status, cause)
+            }
+        }
+
+        fun checkTimeout(nowNs: Long) {
+            when (state) {
+                ConnectionState.HANDSHAKE ->
+                    if (nowNs - acceptedAtNs > clientHandshakeTimeoutMs * 1_000_000) {
+                        close("Client handshake timeout")
+                    }
+                ConnectionState.CONNECTING -> upstream?.let {
+                    if (nowNs - it.startedAtNs > upstreamHandshakeTimeoutMs * 1_000_000) {
+                        it.failOnTimeout()
+                    }
+                }
+                else -> Unit
+            }
+        }
+
+        private fun replySocksFailure(reply: Int, cause: String) {
+            reply(socksReply(reply))
+            fail(cause)
+        }
+
+        private fun replyHttpFailure(status: String, cause: String = status) {
+            reply("HTTP/1.1 $status\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".toByteArray())
+            fail(cause)
+        }
+
+        private fun reply(bytes: ByteArray) {
+            upstreamToClient.put(bytes)
+            writeToClient()
+        }
+
+        private fun fail(cause: String) {
+            stats.onFailed(connectionStats, cause)
+            closeAfterReply = true
+        }
+
+        private fun consume(count: Int) {
+            clientToUpstream.flip()
+            clientToUpstream.position(count)
+            clientToUpstream.compact()
+        }
+
+        fun close(failure: String?) {
+            if (state == ConnectionState.CLOSED) {
+                return
+            }
+            state = ConnectionState.CLOSED
+            failure?.let { stats.onFailed(connectionStats, it) }
+            logd {
+                "In-process proxy closed connection to ${connectionStats.destination}" +
+                        (failure?.let { ", $it" } ?: "")
+            }
+            clientKey.cancel()
+            try {
+                client.close()
+            } catch (_: IOException) {
+            }
+            upstream?.close()
+            upstream = null
+            connections.remove(this)
+            stats.onClosed(connectionStats)
+        }
+    }
+
+    private companion object {
+        val HTTP_CONNECTION_ESTABLISHED = "HTTP/1.1 200 Connection established\r\n\r\n".toByteArray()
+
+        fun socksReply(reply: Int) = byteArrayOf(
+            SOCKS_VERSION.toByte(), reply.toByte(), 0, SOCKS_ADDRESS_IPV4.toByte(), 0, 0, 0, 0, 0, 0
+        )
+
+        fun indexOfHeaderEnd(data: ByteBuffer): Int {
+            for (i in data.position() until data.limit() - 3) {
+                if (data.get(i) == CR && data.get(i + 1) == LF
+                    && data.get(i + 2) == CR && data.get(i + 3) == LF
+                ) {
+                    return i - data.position()
+                }
+            }
+            return -1
+        }
+
+        //host:port or [ipv6]:port
+        fun parseAuthority(authority: String): ProxyDestination? {
+            val separator = authority.lastIndexOf(':')
+            if (separator <= 0) {
+                return null
+            }
+            val host = authority.substring(0, separator).removeSurrounding("[", "]")
+            val port = authority.substring(separator + 1).toIntOrNull() ?: return null
+            if (host.isEmpty() || port !in 1..65535) {
+                return null
+            }
+            return ProxyDestination(host, port)
+        }
+
+        const val CR = '\r'.code.toByte()
+        const val LF = '\n'.code.toByte()
+    }
+}
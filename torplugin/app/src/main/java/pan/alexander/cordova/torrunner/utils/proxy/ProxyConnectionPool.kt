@@ -0,0 +1,149 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.utils.proxy
+
+import java.util.ArrayDeque
+
+private const val MAX_TRACKED_DESTINATIONS = 128
+
+/**
+ * Idle SOCKS connections that already completed CONNECT to a destination, so the next
+ * client for it skips the Tor stream setup. Connections are prepared only for destinations
+ * requested again within [maxIdleMs], to avoid speculative connections to one-off hosts.
+ * Only the proxy thread uses the pool.
+ */
+internal class ProxyConnectionPool(
+    private val maxIdlePerDestination: Int,
+    private val maxIdleTotal: Int,
+    private val maxIdleMs: Long
+) {
+
+    private class IdleUpstream(val upstream: SocksUpstream, val idleSinceMs: Long)
+
+    //Destinations in the order of their last use, so the least recently used one is evicted first
+    private val idle = LinkedHashMap<ProxyDestination, ArrayDeque<IdleUpstream>>(16, 0.75f, true)
+    private val warming = HashMap<ProxyDestination, Int>()
+    private val lastRequests = object : LinkedHashMap<ProxyDestination, Long>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<ProxyDestination, Long>?) =
+            size > MAX_TRACKED_DESTINATIONS
+    }
+
+    @Volatile
+    private var idleCount = 0
+
+    val size: Int
+        get() = idleCount
+
+    fun take(destination: ProxyDestination, nowMs: Long): SocksUpstream? {
+        val upstreams = idle[destination] ?: return null
+        while (upstreams.isNotEmpty()) {
+            val candidate = upstreams.pollLast()!!
+            idleCount--
+            if (nowMs - candidate.idleSinceMs <= maxIdleMs && candidate.upstream.channel.isOpen) {
+                removeIfEmpty(destination, upstreams)
+                return candidate.upstream
+            }
+            candidate.upstream.close()
+        }
+        removeIfEmpty(destination, upstreams)
+        return null
+    }
+
+    //Returns true if the destination is worth keeping a prepared connection for
+    fun onRequested(destination: ProxyDestination, nowMs: Long): Boolean {
+        val lastRequestMs = lastRequests.put(destination, nowMs) ?: return false
+        return nowMs - lastRequestMs <= maxIdleMs
+            && (idle[destination]?.size ?: 0) + (warming[destination] ?: 0) < maxIdlePerDestination
+    }
+
+    fun onWarmingStarted(destination: ProxyDestination) {
+        warming[destination] = (warming[destination] ?: 0) + 1
+    }
+
+    fun onWarmingFinished(destination: ProxyDestination) {
+        val count = (warming[destination] ?: 0) - 1
+        if (count > 0) {
+            warming[destination] = count
+        } else {
+            warming.remove(destination)
+        }
+    }
+
+    fun put(upstream: SocksUpstream, nowMs: Long) {
+        if (idleCount >= maxIdleTotal) {
+            evictEldest()
+        }
+        idle.getOrPut(upstream.destination) { ArrayDeque() }.addLast(IdleUpstream(upstream, nowMs))
+        idleCount++
+    }
+
+    //Called when an idle connection was closed by the destination or sent unexpected data
+    fun remove(upstream: SocksUpstream) {
+        val upstreams = idle[upstream.destination] ?: return
+        if (upstreams.removeIf { it.upstream === upstream }) {
+            idleCount--
+            removeIfEmpty(upstream.destination, upstreams)
+        }
+        upstream.close()
+    }
+
+    fun evictExpired(nowMs: Long) {
+        val iterator = idle.values.iterator()
+        while (iterator.hasNext()) {
+            val upstreams = iterator.next()
+            while (upstreams.isNotEmpty() && nowMs - upstreams.peekFirst()!!.idleSinceMs > maxIdleMs) {
+                upstreams.pollFirst()!!.upstream.close()
+                idleCount--
+            }
+            if (upstreams.isEmpty()) {
+                iterator.remove()
+            }
+        }
+    }
+
+    fun closeAll() {
+        idle.values.forEach { upstreams -> upstreams.forEach { it.upstream.close() } }
+        idle.clear()
+        warming.clear()
+        lastRequests.clear()
+        idleCount = 0
+    }
+
+    private fun evictEldest() {
+        val iterator = idle.entries.iterator()
+        if (!iterator.hasNext()) {
+            return
+        }
+        val upstreams = iterator.next().value
+        upstreams.pollFirst()?.let {
+            it.upstream.close()
+            idleCount--
+        }
+        if (upstreams.isEmpty()) {
+            iterator.remove()
+        }
+    }
+
+    private fun removeIfEmpty(destination: ProxyDestination, upstreams: ArrayDeque<IdleUpstream>) {
+        if (upstreams.isEmpty()) {
+            idle.remove(destination)
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.utils.proxy
+
+import org.json.JSONArray
+import org.json.JSONObject
+import pan.alexander.cordova.torrunner.utils.metrics.LatencyHistogram
+import java.util.ArrayDeque
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+private const val MAX_RECENT_CONNECTIONS = 64
+
+/**
+ * Counters of one proxied connection. They are written by the proxy thread only
+ * and can be read from any thread.
+ */
+class ProxyConnectionStats internal constructor(
+    val id: Long,
+    val startedAtMs: Long
+) {
+    @Volatile
+    var protocol: String = ""
+        internal set
+
+    @Volatile
+    var destination: String = ""
+        internal set
+
+    @Volatile
+    var connectLatencyMs: Long = -1
+        internal set
+
+    @Volatile
+    var isFromPool: Boolean = false
+        internal set
+
+    @Volatile
+    var bytesSent: Long = 0
+        internal set
+
+    @Volatile
+    var bytesReceived: Long = 0
+        internal set
+
+    @Volatile
+    var closedAtMs: Long = 0
+        internal set
+
+    @Volatile
+    var failure: String? = null
+        internal set
+
+    fun toJson(): JSONObject = JSONObject().apply {
+        put("id", id)
+        put("protocol", protocol)
+        put("destination", destination)
+        put("startedAt", startedAtMs)
+        put("connectLatencyMs", connectLatencyMs)
+        put("fromPool", isFromPool)
+        put("bytesSent", bytesSent)
+        put("bytesReceived", bytesReceived)
+        if (closedAtMs > 0) {
+            put("closedAt", closedAtMs)
+        }
+        failure?.let { put("failure", it) }
+    }
+}
+
+internal class ProxyStats {
+
+    private val connectionIds = AtomicLong()
+    private val activeConnections = ConcurrentHashMap<Long, ProxyConnectionStats>()
+    private val recentConnections = ArrayDeque<ProxyConnectionStats>(MAX_RECENT_CONNECTIONS)
+    private val connectLatency = LatencyHistogram()
+
+    private val acceptedCount = AtomicLong()
+    private val failedCount = AtomicLong()
+    private val pooledCount = AtomicLong()
+    private val warmedCount = AtomicLong()
+    private val bytesSent = AtomicLong()
+    private val bytesReceived = AtomicLong()
+
+    val activeCount: Int
+        get() = activeConnections.size
+
+    fun onAccepted(): ProxyConnectionStats {
+        acceptedCount.incrementAndGet()
+        val stats = ProxyConnectionStats(
+            connectionIds.incrementAndGet(),
+            System.currentTimeMillis()
+        )
+        activeConnections[stats.id] = stats
+        return stats
+    }
+
+    fun onConnected(stats: ProxyConnectionStats, latencyMs: Long, fromPool: Boolean) {
+        stats.connectLatencyMs = latencyMs
+        stats.isFromPool = fromPool
+        connectLatency.record(latencyMs)
+        if (fromPool) {
+            pooledCount.incrementAndGet()
+        }
+    }
+
+    fun onWarmed() {
+        warmedCount.incrementAndGet()
+    }
+
+    fun onSent(stats: ProxyConnectionStats, bytes: Int) {
+        stats.bytesSent += bytes
+        bytesSent.addAndGet(bytes.toLong())
+    }
+
+    fun onReceived(stats: ProxyConnectionStats, bytes: Int) {
+        stats.bytesReceived += bytes
+        bytesReceived.addAndGet(bytes.toLong())
+    }
+
+    fun onFailed(stats: ProxyConnectionStats, failure: String) {
+        if (stats.failure == null) {
+            stats.failure = failure
+            failedCount.incrementAndGet()
+        }
+    }
+
+    fun onClosed(stats: ProxyConnectionStats) {
+        if (activeConnections.remove(stats.id) == null) {
+            return
+        }
+        stats.closedAtMs = System.currentTimeMillis()
+        synchronized(recentConnections) {
+            if (recentConnections.size == MAX_RECENT_CONNECTIONS) {
+                recentConnections.pollFirst()
+            }
+            recentConnections.addLast(stats)
+        }
+    }
+
+    fun toJson(): JSONObject = JSONObject().apply {
+        put("accepted", acceptedCount.get())
+        put("failed", failedCount.get())
+        put("fromPool", pooledCount.get())
+        put("warmed", warmedCount.get())
+        put("bytesSent", bytesSent.get())
+        put("bytesReceived", bytesReceived.get())
+        put("connectLatency", connectLatency.toJson())
+        put("active", JSONArray(activeConnections.values.sortedBy { it.id }.map { it.toJson() }))
+        put("recent", JSONArray(synchronized(recentConnections) { recentConnections.map { it.toJson() } }))
+    }
+}
@@ -0,0 +1,234 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.utils.proxy
+
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.nio.ByteBuffer
+import java.nio.channels.SelectionKey
+import java.nio.channels.Selector
+import java.nio.channels.SocketChannel
+
+private const val SOCKS_VERSION = 5
+private const val SOCKS_NO_AUTHENTICATION = 0
+private const val SOCKS_COMMAND_CONNECT = 1
+private const val SOCKS_ADDRESS_IPV4 = 1
+private const val SOCKS_ADDRESS_DOMAIN = 3
+private const val SOCKS_ADDRESS_IPV6 = 4
+private const val SOCKS_HANDSHAKE_BUFFER_SIZE = 512
+
+internal const val SOCKS_REPLY_SUCCEEDED = 0
+internal const val SOCKS_REPLY_GENERAL_FAILURE = 1
+internal const val SOCKS_REPLY_TTL_EXPIRED = 6
+
+internal fun interface SelectionHandler {
+    fun handle(key: SelectionKey)
+}
+
+internal data class ProxyDestination(val host: String, val port: Int) {
+    override fun toString() = if (host.contains(':')) "[$host]:$port" else "$host:$port"
+}
+
+/**
+ * Non-blocking SOCKS5 CONNECT to the [destination] through the upstream proxy.
+ * Once [listener] is notified about success, the channel is a plain stream to the destination
+ * and the owner replaces the key attachment.
+ */
+internal class SocksUpstream private constructor(
+    val destination: ProxyDestination,
+    val channel: SocketChannel,
+    private val listener: Listener
+) : SelectionHandler {
+
+    interface Listener {
+        fun onUpstreamReady(upstream: SocksUpstream)
+        fun onUpstreamFailed(upstream: SocksUpstream, reply: Int, cause: String)
+    }
+
+    private enum class State { CONNECTING, GREETING, REQUEST, READY, FAILED }
+
+    private var state = State.CONNECTING
+    private val input = ByteBuffer.allocate(SOCKS_HANDSHAKE_BUFFER_SIZE)
+    private val output = ByteBuffer.allocate(SOCKS_HANDSHAKE_BUFFER_SIZE)
+
+    lateinit var key: SelectionKey
+        private set
+
+    val startedAtNs = System.nanoTime()
+
+    /** Destination bytes received together with the SOCKS reply */
+    var leftover: ByteBuffer? = null
+        private set
+
+    val isReady: Boolean
+        get() = state == State.READY
+
+    override fun handle(key: SelectionKey) {
+        try {
+            if (key.isConnectable) {
+                onConnectable()
+            }
+            if (key.isValid && key.isWritable) {
+                flush()
+            }
+            if (key.isValid && key.isReadable) {
+                onReadable()
+            }
+        } catch (e: IOException) {
+            fail(SOCKS_REPLY_GENERAL_FAILURE, e.message ?: e.javaClass.simpleName)
+        }
+    }
+
+    fun failOnTimeout() {
+        fail(SOCKS_REPLY_TTL_EXPIRED, "Upstream handshake timeout")
+    }
+
+    private fun onConnectable() {
+        if (!channel.finishConnect()) {
+            return
+        }
+        state = State.GREETING
+        output.put(SOCKS_VERSION.toByte()).put(1).put(SOCKS_NO_AUTHENTICATION.toByte())
+        flush()
+    }
+
+    private fun onReadable() {
+        if (channel.read(input) < 0) {
+            throw IOException("Upstream closed the connection during handshake")
+        }
+        input.flip()
+        try {
+            when (state) {
+                State.GREETING -> readGreetingReply()
+                State.REQUEST -> readConnectReply()
+                else -> Unit
+            }
+        } finally {
+            if (state != State.READY && state != State.FAILED) {
+                input.compact()
+            }
+        }
+    }
+
+    private fun readGreetingReply() {
+        if (input.remaining() < 2) {
+            return
+        }
+        val version = input.get().toInt()
+        val method = input.get().toInt()
+        if (version != SOCKS_VERSION || method != SOCKS_NO_AUTHENTICATION) {
+            throw IOException("Upstream requires unsupported authentication $method")
+        }
+        state = State.REQUEST
+        writeConnectRequest()
+        readConnectReply()
+    }
+
+    private fun writeConnectRequest() {
+        val host = destination.host.toByteArray()
+        output.put(SOCKS_VERSION.toByte())
+            .put(SOCKS_COMMAND_CONNECT.toByte())
+            .put(0)
+            .put(SOCKS_ADDRESS_DOMAIN.toByte())
+            .put(host.size.toByte())
+            .put(host)
+            .putShort(destination.port.toShort())
+        flush()
+    }
+
+    private fun readConnectReply() {
+        if (input.remaining() < 5) {
+            return
+        }
+        val start = input.position()
+        val reply = input.get(start + 1).toInt()
+        val addressLength = when (input.get(start + 3).toInt()) {
+            SOCKS_ADDRESS_IPV4 -> 4
+            SOCKS_ADDRESS_IPV6 -> 16
+            SOCKS_ADDRESS_DOMAIN -> 1 + (input.get(start + 4).toInt() and 0xFF)
+            else -> throw IOException("Upstream replied with unknown address type")
+        }
+        val replyLength = 4 + addressLength + 2
+        if (input.remaining() < replyLength) {
+            return
+        }
+        if (reply != SOCKS_REPLY_SUCCEEDED) {
+            fail(reply, "Upstream replied $reply")
+            return
+        }
+        input.position(start + replyLength)
+        if (input.hasRemaining()) {
+            leftover = ByteBuffer.allocate(input.remaining()).put(input).apply { flip() }
+        }
+        state = State.READY
+        key.interestOps(0)
+        listener.onUpstreamReady(this)
+    }
+
+    private fun flush() {
+        output.flip()
+        channel.write(output)
+        output.compact()
+        key.interestOps(if (output.position() > 0) SelectionKey.OP_WRITE else SelectionKey.OP_READ)
+    }
+
+    private fun fail(reply: Int, cause: String) {
+        if (state == State.READY || state == State.FAILED) {
+            return
+        }
+        state = State.FAILED
+        close()
+        listener.onUpstreamFailed(this, reply, cause)
+    }
+
+    fun close() {
+        key.cancel()
+        try {
+            channel.close()
+        } catch (_: IOException) {
+        }
+    }
+
+    companion object {
+        fun open(
+            selector: Selector,
+            socksAddress: InetSocketAddress,
+            destination: ProxyDestination,
+            listener: Listener
+        ): SocksUpstream {
+            val channel = SocketChannel.open()
+            try {
+                channel.configureBlocking(false)
+                channel.socket().tcpNoDelay = true
+                val upstream = SocksUpstream(destination, channel, listener)
+                val connected = channel.connect(socksAddress)
+                upstream.key = channel.register(selector, SelectionKey.OP_CONNECT, upstream)
+                if (connected) {
+                    upstream.key.interestOps(0)
+                    upstream.onConnectable()
+                }
+                return upstream
+            } catch (e: IOException) {
+                channel.close()
+                throw e
+            }
+        }
+    }
+}
@@ -1,65 +0,0 @@
-/*
-    This file is part of Cordova Plugin Tor Runner.
-
-    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
-    it under the terms of the GNU General Public License as published by
-    the Free Software Foundation, either version 3 of the License, or
-    (at your option) any later version.
-
-    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
-    but WITHOUT ANY WARRANTY; without even the implied warranty of
-    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
-    GNU General Public License for more details.
-
-    You should have received a copy of the GNU General Public License
-    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
-
-    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
- */
-
-package pan.alexander.cordova.torrunner.utils.thread;
-
-import static pan.alexander.cordova.torrunner.utils.logger.Logger.logi;
-
-import javax.inject.Inject;
-
-public class ThreadFinder {
-
-    @Inject
-    public ThreadFinder() {
-    }
-
-    public Thread findThreadByName(String threadName) {
-        Thread currentThread = Thread.currentThread();
-        ThreadGroup threadGroup = getRootThreadGroup(currentThread);
-        int allActiveThreads = threadGroup.activeCount();
-        Thread[] allThreads = new Thread[allActiveThreads];
-        threadGroup.enumerate(allThreads);
-
-        for (Thread thread : allThreads) {
-            String name = "";
-            if (thread != null) {
-                name = thread.getName();
-            }
-            //logi("Current threads " + name);
-            if (name.equals(threadName)) {
-                logi("Found old module thread " + name);
-                return thread;
-            }
-        }
-
-        return null;
-    }
-
-    private ThreadGroup getRootThreadGroup(Thread thread) {
-        ThreadGroup rootGroup = thread.getThreadGroup();
-        while (rootGroup != null) {
-            ThreadGroup parentGroup = rootGroup.getParent();
-            if (parentGroup == null) {
-                break;
-            }
-            rootGroup = parentGroup;
-        }
-        return rootGroup;
-    }
-}
@@ -4,25 +4,25 @@ import androidx.compose.runtime.mutableStateOf
 import androidx.compose.runtime.State
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
-import kotlinx.coroutines.delay
-import kotlinx.coroutines.isActive
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.flow.catch
 import kotlinx.coroutines.launch
 import pan.alexander.cordova.torrunner.domain.AppManager
 import pan.alexander.cordova.torrunner.domain.core.CoreState
 import pan.alexander.cordova.torrunner.domain.core.CoreStatus
+import pan.alexander.cordova.torrunner.domain.logs.LogRepository
 import pan.alexander.cordova.torrunner.framework.ActionSender
-import pan.alexander.cordova.torrunner.framework.ConfigurationManager
 import pan.alexander.cordova.torrunner.framework.CoreServiceActions.ACTION_RELOAD_TOR_CONFIGURATION
 import pan.alexander.cordova.torrunner.framework.CoreServiceActions.ACTION_RESTART_TOR
 import pan.alexander.cordova.torrunner.framework.CoreServiceActions.ACTION_START_TOR
 import pan.alexander.cordova.torrunner.framework.CoreServiceActions.ACTION_STOP_TOR
-import pan.alexander.cordova.torrunner.utils.file.FileManager
 import pan.alexander.cordova.torrunner.utils.logger.Logger.loge
 import javax.inject.Inject
 
+private const val MAX_DISPLAYED_LINES = 1000
+
 class MainActivityViewModel @Inject constructor(
-    private val fileManager: FileManager,
-    private val configuration: ConfigurationManager,
+    private val logRepository: LogRepository,
     private val coreStatus: CoreStatus,
     private val actionSender: ActionSender,
     private val appManager: AppManager
@@ -31,6 +31,9 @@ class MainActivityViewModel @Inject constructor(
     private val _text = mutableStateOf("")
     val text: State<String> = _text
 
+    private val logLines = ArrayDeque<String>()
+    private var logJob: Job? = null
+
     fun startTor() {
         actionSender.sendIntent(ACTION_START_TOR)
     }
@@ -49,17 +52,20 @@ class MainActivityViewModel @Inject constructor(
 
     fun updateText() {
         appManager.onActivityResumed()
-        viewModelScope.launch {
-            try {
-                while (isActive) {
-                    fileManager.readFile(configuration.torLogPath).let {
-                        _text.value = it.joinToString("\n")
+        logJob?.cancel()
+        logJob = viewModelScope.launch {
+            logRepository.getTorLogUpdates()
+                .catch { loge("MainActivityViewModel updateText", it) }
+                .collect { update ->
+                    if (update.reset) {
+                        logLines.clear()
+                    }
+                    logLines.addAll(update.lines)
+                    while (logLines.size > MAX_DISPLAYED_LINES) {
+                        logLines.removeFirst()
                     }
-                    delay(1000)
+                    _text.value = logLines.joinToString("\n")
                 }
-            } catch (e: Exception) {
-                loge("MainActivityViewModel updateText", e)
-            }
         }
     }
 
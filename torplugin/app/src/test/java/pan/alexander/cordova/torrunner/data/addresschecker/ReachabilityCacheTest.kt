@@ -0,0 +1,154 @@
+package pan.alexander.cordova.torrunner.data.addresschecker
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import pan.alexander.cordova.torrunner.domain.addresschecker.DomainToPort
+import pan.alexander.cordova.torrunner.domain.addresschecker.TimeToReachable
+
+private const val TTL_MS = 5 * 60 * 1000L
+private const val UNREACHABLE_WINDOW_MS = 5 * 60 * 1000L
+
+class ReachabilityCacheTest {
+
+    private val first = DomainToPort("first.example", 443)
+    private val second = DomainToPort("second.example", 443)
+    private val third = DomainToPort("third.example", 443)
+
+    @Test
+    fun eldestEntryIsEvictedWhenFull() {
+        val cache = newCache(maxSize = 2)
+        val now = System.currentTimeMillis()
+
+        cache[first] = TimeToReachable(now, true)
+        cache[second] = TimeToReachable(now, true)
+        cache[third] = TimeToReachable(now, true)
+
+        assertNull(cache[first])
+        assertNotNull(cache[second])
+        assertNotNull(cache[third])
+    }
+
+    @Test
+    fun readEntryIsNotEvicted() {
+        val cache = newCache(maxSize = 2)
+        val now = System.currentTimeMillis()
+
+        cache[first] = TimeToReachable(now, true)
+        cache[second] = TimeToReachable(now, true)
+        cache[first]
+        cache[third] = TimeToReachable(now, true)
+
+        assertNotNull(cache[first])
+        assertNull(cache[second])
+        assertNotNull(cache[third])
+    }
+
+    @Test
+    fun expiredEntryIsDropped() {
+        val cache = newCache()
+        val now = System.currentTimeMillis()
+
+        cache[first] = TimeToReachable(now - TTL_MS - 1000, true)
+        cache[second] = TimeToReachable(now - TTL_MS + 60_000, true)
+
+        assertNull(cache[first])
+        assertNotNull(cache[second])
+        assertEquals(setOf(second), cache.snapshot(now).keys)
+    }
+
+    @Test
+    fun expiredEntriesAreNotSnapshotted() {
+        val cache = newCache()
+        val now = System.currentTimeMillis()
+
+        cache[first] = TimeToReachable(now, true)
+        cache[second] = TimeToReachable(now - TTL_MS - 1000, false)
+
+        assertEquals(setOf(first), cache.snapshot(now).keys)
+    }
+
+    @Test
+    fun freshUnreachableIsCounted() {
+        val cache = newCache()
+        val now = System.currentTimeMillis()
+
+        cache[first] = TimeToReachable(now, true)
+        assertFalse(cache.hasFreshUnreachable(now))
+
+        cache[second] = TimeToReachable(now, false)
+        assertTrue(cache.hasFreshUnreachable(now))
+    }
+
+    @Test
+    fun unreachableLeavesCounterAfterWindow() {
+        val cache = newCache()
+        val now = System.currentTimeMillis()
+
+        cache[first] = TimeToReachable(now, false)
+
+        assertTrue(cache.hasFreshUnreachable(now + UNREACHABLE_WINDOW_MS - 1))
+        assertFalse(cache.hasFreshUnreachable(now + UNREACHABLE_WINDOW_MS))
+    }
+
+    @Test
+    fun overwrittenUnreachableIsUncounted() {
+        val cache = newCache()
+        val now = System.currentTimeMillis()
+
+        cache[first] = TimeToReachable(now, false)
+        cache[first] = TimeToReachable(now + 1000, false)
+        cache[first] = TimeToReachable(now + 2000, true)
+
+        assertFalse(cache.hasFreshUnreachable(now + 2000))
+    }
+
+    @Test
+    fun evictedUnreachableIsUncounted() {
+        val cache = newCache(maxSize = 1)
+        val now = System.currentTimeMillis()
+
+        cache[first] = TimeToReachable(now, false)
+        cache[second] = TimeToReachable(now, true)
+
+        assertFalse(cache.hasFreshUnreachable(now))
+    }
+
+    @Test
+    fun expiredUnreachableIsUncounted() {
+        val cache = newCache(unreachableWindowMs = Long.MAX_VALUE)
+        val now = System.currentTimeMillis()
+
+        cache[first] = TimeToReachable(now - TTL_MS - 1000, false)
+
+        assertTrue(cache.hasFreshUnreachable(now))
+        assertNull(cache[first])
+        assertFalse(cache.hasFreshUnreachable(now))
+    }
+
+    @Test
+    fun clearDropsEntriesAndCounter() {
+        val cache = newCache()
+        val now = System.currentTimeMillis()
+
+        cache[first] = TimeToReachable(now, false)
+        cache[second] = TimeToReachable(now, true)
+        cache.clear()
+
+        assertTrue(cache.isEmpty())
+        assertFalse(cache.hasFreshUnreachable(now))
+        assertTrue(cache.snapshot(now).isEmpty())
+    }
+
+    private fun newCache(
+        maxSize: Int = 16,
+        unreachableWindowMs: Long = UNREACHABLE_WINDOW_MS
+    ) = ReachabilityCache(
+        maxSize = maxSize,
+        entryTtlMs = TTL_MS,
+        unreachableWindowMs = unreachableWindowMs
+    )
+}
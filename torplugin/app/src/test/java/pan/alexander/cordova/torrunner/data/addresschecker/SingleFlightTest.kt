@@ -0,0 +1,120 @@
+package pan.alexander.cordova.torrunner.data.addresschecker
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import pan.alexander.cordova.torrunner.domain.addresschecker.DomainToPort
+import java.io.IOException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+private const val CALLERS = 32
+
+class SingleFlightTest {
+
+    private val singleFlight = SingleFlight<DomainToPort, Boolean>()
+    private val address = DomainToPort("example.com", 443)
+
+    @Test
+    fun concurrentCallersCauseExactlyOneProbe() {
+        val probes = AtomicInteger()
+        val probeStarted = CountDownLatch(1)
+        val releaseProbe = CountDownLatch(1)
+
+        val results = runConcurrently(CALLERS) { index ->
+            if (index == 0) {
+                singleFlight.execute(address, false) {
+                    probes.incrementAndGet()
+                    probeStarted.countDown()
+                    releaseProbe.await()
+                    true
+                }
+            } else {
+                probeStarted.await()
+                val result = singleFlight.execute(address, false) {
+                    probes.incrementAndGet()
+                    false
+                }
+                result
+            }
+        }.also {
+            //Let the waiters reach the in-flight probe before it completes
+            Thread.sleep(200)
+            releaseProbe.countDown()
+        }.map { it.get(5, TimeUnit.SECONDS) }
+
+        assertEquals(1, probes.get())
+        assertTrue(results.all { it })
+    }
+
+    @Test
+    fun differentAddressesAreProbedIndependently() {
+        val probes = AtomicInteger()
+        val barrier = CyclicBarrier(CALLERS)
+
+        runConcurrently(CALLERS) { index ->
+            singleFlight.execute(DomainToPort("host$index.com", 443), false) {
+                probes.incrementAndGet()
+                //Every probe runs at the same time, otherwise the barrier times out
+                barrier.await(5, TimeUnit.SECONDS)
+                true
+            }
+        }.forEach { it.get(10, TimeUnit.SECONDS) }
+
+        assertEquals(CALLERS, probes.get())
+    }
+
+    @Test
+    fun nextCallAfterCompletionProbesAgain() {
+        val probes = AtomicInteger()
+
+        repeat(3) {
+            singleFlight.execute(address, false) { probes.incrementAndGet() > 0 }
+        }
+
+        assertEquals(3, probes.get())
+    }
+
+    @Test
+    fun waitersGetFallbackWhenProbeFails() {
+        val probeStarted = CountDownLatch(1)
+        val releaseProbe = CountDownLatch(1)
+        val executor = Executors.newFixedThreadPool(2)
+        try {
+            val failing = executor.submit<Boolean> {
+                singleFlight.execute(address, true) {
+                    probeStarted.countDown()
+                    releaseProbe.await()
+                    throw IOException("Probe failed")
+                }
+            }
+            probeStarted.await()
+            val waiter = executor.submit<Boolean> {
+                singleFlight.execute(address, false) { fail("Waiter should not probe"); false }
+            }
+            Thread.sleep(200)
+            releaseProbe.countDown()
+
+            assertEquals(true, waiter.get(5, TimeUnit.SECONDS))
+            try {
+                failing.get(5, TimeUnit.SECONDS)
+                fail("The caller that ran the probe should get the exception")
+            } catch (e: Exception) {
+                assertTrue(e.cause is IOException)
+            }
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    private fun <T> runConcurrently(count: Int, task: (Int) -> T) =
+        Executors.newFixedThreadPool(count).let { executor ->
+            (0 until count).map { index -> executor.submit<T> { task(index) } }.also {
+                executor.shutdown()
+            }
+        }
+}
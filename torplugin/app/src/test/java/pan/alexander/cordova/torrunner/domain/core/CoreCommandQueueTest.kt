@@ -0,0 +1,198 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.domain.core
+
+import kotlinx.coroutines.Dispatchers
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import pan.alexander.cordova.torrunner.domain.configuration.ConfigurationRepository
+import pan.alexander.cordova.torrunner.domain.installer.Installer
+import pan.alexander.cordova.torrunner.utils.file.FileManager
+import java.lang.reflect.Proxy
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.LockSupport
+import kotlin.random.Random
+
+private const val COMMANDS = 5_000
+private const val QUIET_PERIOD_MS = 300L
+private const val SETTLE_TIMEOUT_MS = 30_000L
+
+class CoreCommandQueueTest {
+
+    private val log = CopyOnWriteArrayList<String>()
+    private val active = AtomicInteger()
+    private val maxActive = AtomicInteger()
+    private val random = Random(15)
+
+    private val configuration = fakeConfiguration()
+    private val coreStatus = CoreStatus(CoreStatusPublisher(Dispatchers.Default, configuration), StartupMetrics())
+    private val torManager = FakeTorManager()
+    private val reverseProxyManager = FakeReverseProxyManager()
+    private val queue = CoreCommandQueue(
+        ModuleSupervisor(),
+        torManager,
+        reverseProxyManager,
+        coreStatus,
+        Installer(configuration, coreStatus, FileManager()) { throw UnsupportedOperationException() }
+    )
+
+    @Test
+    fun randomCommandsEndInTheLastRequestedState() {
+        val commands = listOf(CoreCommand.START, CoreCommand.STOP, CoreCommand.RESTART)
+        var lastTarget: CoreCommand? = null
+
+        repeat(COMMANDS) {
+            val command = commands[random.nextInt(commands.size)]
+            if (command != CoreCommand.RESTART) {
+                lastTarget = command
+            }
+            queue.submit(command)
+            if (random.nextInt(4) == 0) {
+                LockSupport.parkNanos(random.nextLong(300_000))
+            }
+        }
+        awaitQuiet()
+
+        if (lastTarget == CoreCommand.START) {
+            assertEquals(CoreState.RUNNING, coreStatus.torState)
+            assertTrue(reverseProxyManager.running)
+        } else {
+            assertEquals(CoreState.STOPPED, coreStatus.torState)
+            assertFalse(reverseProxyManager.running)
+        }
+        assertOrder()
+        //Commands that arrive while another one runs are merged
+        assertTrue(log.size < COMMANDS * 2)
+    }
+
+    @Test
+    fun stopAfterBurstWins() {
+        repeat(COMMANDS) {
+            queue.submit(if (random.nextBoolean()) CoreCommand.START else CoreCommand.RESTART)
+        }
+        queue.submit(CoreCommand.STOP)
+        awaitQuiet()
+
+        assertEquals(CoreState.STOPPED, coreStatus.torState)
+        assertFalse(reverseProxyManager.running)
+        assertEquals(listOf("torStop", "proxyStop"), log.takeLast(2))
+        assertOrder()
+    }
+
+    @Test
+    fun startAfterBurstWins() {
+        repeat(COMMANDS) {
+            queue.submit(if (random.nextBoolean()) CoreCommand.STOP else CoreCommand.RESTART)
+        }
+        queue.submit(CoreCommand.START)
+        awaitQuiet()
+
+        assertEquals(CoreState.RUNNING, coreStatus.torState)
+        assertTrue(reverseProxyManager.running)
+        assertEquals(listOf("torStart", "proxyStart"), log.takeLast(2))
+        assertOrder()
+    }
+
+    private fun assertOrder() {
+        assertEquals("Commands overlapped", 1, maxActive.get())
+        log.forEachIndexed { index, entry ->
+            when (entry) {
+                //The proxy is started right after Tor, and stopped right after it
+                "proxyStart" -> assertEquals("$index", "torStart", log[index - 1])
+                "torStop" -> assertEquals("$index", "proxyStop", log.getOrNull(index + 1))
+            }
+        }
+    }
+
+    //The queue has no idle callback, so wait until the fakes stop receiving calls
+    private fun awaitQuiet() {
+        val deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SETTLE_TIMEOUT_MS)
+        var size = -1
+        while (size != log.size || active.get() > 0) {
+            assertTrue("Queue did not settle", System.nanoTime() < deadline)
+            size = log.size
+            Thread.sleep(QUIET_PERIOD_MS)
+        }
+    }
+
+    private fun record(entry: String, action: () -> Unit) {
+        val running = active.incrementAndGet()
+        maxActive.accumulateAndGet(running, ::maxOf)
+        try {
+            LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(200_000))
+            action()
+            log += entry
+        } finally {
+            active.decrementAndGet()
+        }
+    }
+
+    private fun fakeConfiguration(): ConfigurationRepository =
+        Proxy.newProxyInstance(
+            ConfigurationRepository::class.java.classLoader,
+            arrayOf(ConfigurationRepository::class.java)
+        ) { proxy, method, args ->
+            when (method.name) {
+                "isTorConfigurationAvailable" -> true
+                "updateCordovaConfiguration" -> null
+                "hashCode" -> System.identityHashCode(proxy)
+                "equals" -> proxy === args[0]
+                "toString" -> "FakeConfiguration"
+                else -> throw UnsupportedOperationException(method.name)
+            }
+        } as ConfigurationRepository
+
+    //Managers only keep their dependencies in the constructor, so the fakes pass none
+    private inner class FakeTorManager : TorManager(
+        null, null, null, null, null, null, null, null, null, null, null, null, null, null, null
+    ) {
+        override fun startTor() = record("torStart") {
+            coreStatus.torState = CoreState.RUNNING
+        }
+
+        override fun stopTor() = record("torStop") {
+            coreStatus.torState = CoreState.STOPPED
+        }
+
+        override fun restartTor() = record("torRestart") {}
+
+        override fun reloadTorConfiguration() = record("torReload") {}
+    }
+
+    private inner class FakeReverseProxyManager : ReverseProxyManager(
+        null, null, null, null, null, null, null, null, null
+    ) {
+        @Volatile
+        var running = false
+
+        override fun startProxy() = record("proxyStart") {
+            running = true
+        }
+
+        override fun stopProxy() = record("proxyStop") {
+            running = false
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.domain.core
+
+import kotlinx.coroutines.Dispatchers
+import org.json.JSONObject
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import pan.alexander.cordova.torrunner.domain.configuration.ConfigurationRepository
+import java.lang.reflect.Proxy
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CyclicBarrier
+import kotlin.concurrent.thread
+import kotlin.random.Random
+
+//Longer than the publisher coalesce window, so every phase is published on its own
+private const val SETTLE_MS = 400L
+private const val WRITERS = 8
+private const val UPDATES_PER_WRITER = 5_000
+
+class CoreStatusTest {
+
+    private val published = CopyOnWriteArrayList<TorStatusSnapshot>()
+    private val publisher = CoreStatusPublisher(Dispatchers.Default, recordingConfiguration())
+    private val coreStatus = CoreStatus(publisher, StartupMetrics())
+
+    @Test
+    fun restartCycleIsPublishedOncePerTransition() {
+        var setterCalls = 0
+
+        //Start
+        coreStatus.torState = CoreState.STARTING
+        coreStatus.torState = CoreState.RUNNING
+        for (progress in 0..100 step 5) {
+            coreStatus.torBootstrapProgress = progress
+            setterCalls++
+        }
+        setterCalls += 2
+        settle()
+        coreStatus.isTorReady = true
+        coreStatus.isTorConnectionAvailable = true
+        setterCalls += 2
+        settle()
+
+        //Restart
+        coreStatus.torState = CoreState.RESTARTING
+        coreStatus.isTorReady = false
+        coreStatus.torState = CoreState.RUNNING
+        for (progress in 0..100 step 5) {
+            coreStatus.torBootstrapProgress = progress
+            setterCalls++
+        }
+        setterCalls += 3
+        settle()
+        coreStatus.isTorReady = true
+        coreStatus.isTorConnectionAvailable = true
+        setterCalls += 2
+        settle()
+
+        //Stop, then repeat the same state
+        coreStatus.torState = CoreState.STOPPING
+        coreStatus.isTorReady = false
+        coreStatus.torState = CoreState.STOPPED
+        setterCalls += 3
+        settle()
+        coreStatus.torState = CoreState.STOPPED
+        coreStatus.isTorReady = false
+        setterCalls += 2
+        settle()
+
+        assertEquals(
+            listOf(
+                TorStatusSnapshot(CoreState.STARTING, 100, false),
+                TorStatusSnapshot(CoreState.RUNNING, 100, true),
+                TorStatusSnapshot(CoreState.STARTING, 100, false),
+                TorStatusSnapshot(CoreState.RUNNING, 100, true),
+                TorStatusSnapshot(CoreState.STOPPED, 0, false)
+            ),
+            published
+        )
+        assertTrue(published.size < setterCalls)
+    }
+
+    @Test
+    fun concurrentSettersPublishTheLastState() {
+        val barrier = CyclicBarrier(WRITERS)
+        val states = CoreState.values()
+        val writers = (0 until WRITERS).map { index ->
+            thread {
+                val random = Random(index)
+                barrier.await()
+                repeat(UPDATES_PER_WRITER) {
+                    when (random.nextInt(4)) {
+                        0 -> coreStatus.torState = states[random.nextInt(states.size)]
+                        1 -> coreStatus.isTorReady = random.nextBoolean()
+                        2 -> coreStatus.isTorConnectionAvailable = random.nextBoolean()
+                        else -> coreStatus.torBootstrapProgress = random.nextInt(101)
+                    }
+                }
+            }
+        }
+        writers.forEach { it.join() }
+        settle()
+
+        val expected = expectedSnapshot()
+        assertEquals(expected, publisher.status.value)
+        assertEquals(expected, published.last())
+    }
+
+    private fun expectedSnapshot(): TorStatusSnapshot {
+        val torState = coreStatus.torState
+        val state = when {
+            torState == CoreState.STOPPED || torState == CoreState.STARTING -> torState
+            torState == CoreState.RUNNING && coreStatus.isTorReady && coreStatus.isTorConnectionAvailable ->
+                CoreState.RUNNING
+            torState == CoreState.RUNNING || torState == CoreState.RESTARTING -> CoreState.STARTING
+            else -> CoreState.STOPPED
+        }
+        return TorStatusSnapshot(state, coreStatus.torBootstrapProgress, coreStatus.isTorConnectionAvailable)
+    }
+
+    private fun settle() = Thread.sleep(SETTLE_MS)
+
+    private fun recordingConfiguration(): ConfigurationRepository =
+        Proxy.newProxyInstance(
+            ConfigurationRepository::class.java.classLoader,
+            arrayOf(ConfigurationRepository::class.java)
+        ) { proxy, method, args ->
+            when (method.name) {
+                "updateCordovaConfiguration" -> {
+                    val json = args[0] as JSONObject
+                    published += TorStatusSnapshot(
+                        CoreState.valueOf(json.getString("torState")),
+                        json.getInt("torBootstrapProgress"),
+                        json.getBoolean("torConnectionAvailable")
+                    )
+                    null
+                }
+                "hashCode" -> System.identityHashCode(proxy)
+                "equals" -> proxy === args[0]
+                "toString" -> "RecordingConfiguration"
+                else -> throw UnsupportedOperationException(method.name)
+            }
+        } as ConfigurationRepository
+}
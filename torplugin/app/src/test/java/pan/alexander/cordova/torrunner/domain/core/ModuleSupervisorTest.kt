@@ -0,0 +1,141 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.domain.core
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+private const val MODULE = "TestModule"
+private const val TIMEOUT_MS = 5000L
+
+class ModuleSupervisorTest {
+
+    private val clock = AtomicLong(1_000_000L)
+    private val supervisor = ModuleSupervisor { clock.get() }
+    private val releases = mutableListOf<CountDownLatch>()
+
+    @After
+    fun tearDown() {
+        releases.forEach { it.countDown() }
+    }
+
+    @Test
+    fun uptimeFollowsTheClock() {
+        val module = supervisor.startModule(MODULE, blockingModule())
+
+        assertEquals(1_000_000L, module.startTime)
+        assertEquals(0L, module.uptimeMs)
+
+        clock.addAndGet(90_000L)
+
+        assertEquals(90_000L, module.uptimeMs)
+    }
+
+    @Test
+    fun restartedModuleReplacesTheOldHandle() {
+        val firstRelease = CountDownLatch(1).also { releases += it }
+        val first = supervisor.startModule(MODULE) { firstRelease.await() }
+
+        clock.addAndGet(30_000L)
+        val second = supervisor.startModule(MODULE, blockingModule())
+
+        assertNotSame(first, second)
+        assertSame(second, supervisor.getModule(MODULE))
+        assertEquals(30_000L, first.uptimeMs)
+        assertEquals(0L, second.uptimeMs)
+
+        //The old module exiting late does not unregister its replacement
+        firstRelease.countDown()
+        assertTrue(first.awaitExit(TIMEOUT_MS))
+        assertSame(second, supervisor.getModule(MODULE))
+        assertTrue(second.isAlive)
+    }
+
+    @Test
+    fun exitedModuleIsUnregistered() {
+        val release = CountDownLatch(1)
+        val module = supervisor.startModule(MODULE) { release.await() }
+
+        assertFalse(module.awaitExit(50))
+        release.countDown()
+
+        assertTrue(module.awaitExit(TIMEOUT_MS))
+        assertFalse(module.isAlive)
+        assertNull(supervisor.getModule(MODULE))
+    }
+
+    @Test
+    fun awaitReadyReturnsWhenConditionIsMet() {
+        val ready = AtomicBoolean()
+        val module = supervisor.startModule(MODULE) {
+            try {
+                Thread.sleep(100)
+                ready.set(true)
+                Thread.sleep(TIMEOUT_MS)
+            } catch (_: InterruptedException) {
+            }
+        }
+
+        assertTrue(module.awaitReady({ ready.get() }, TIMEOUT_MS))
+        module.interrupt()
+        assertTrue(module.awaitExit(TIMEOUT_MS))
+    }
+
+    @Test
+    fun awaitReadyFailsWhenModuleExits() {
+        val module = supervisor.startModule(MODULE) { Thread.sleep(100) }
+
+        val startTime = System.nanoTime()
+        assertFalse(module.awaitReady({ false }, TIMEOUT_MS))
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) < TIMEOUT_MS)
+    }
+
+    @Test
+    fun interruptStopsModule() {
+        val started = CountDownLatch(1)
+        val module = supervisor.startModule(MODULE) {
+            started.countDown()
+            try {
+                Thread.sleep(TIMEOUT_MS * 10)
+            } catch (_: InterruptedException) {
+            }
+        }
+        assertTrue(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS))
+
+        module.interrupt()
+
+        assertTrue(module.awaitExit(TIMEOUT_MS))
+    }
+
+    private fun blockingModule(): Runnable {
+        val release = CountDownLatch(1).also { releases += it }
+        return Runnable { release.await() }
+    }
+}
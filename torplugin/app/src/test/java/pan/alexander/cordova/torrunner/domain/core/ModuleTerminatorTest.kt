@@ -0,0 +1,163 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.domain.core
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.InputStream
+import java.io.OutputStream
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+private const val MODULE_PATH = "/data/app/lib/libtor.so"
+private const val FAKE_PID = 4242
+private const val TERMINATE_GRACE_PERIOD_MS = 300L
+private const val KILL_GRACE_PERIOD_MS = 300L
+private const val INTERRUPT_GRACE_PERIOD_MS = 1000L
+
+class ModuleTerminatorTest {
+
+    private val signals = CopyOnWriteArrayList<Int>()
+    private val process = FakeProcess()
+    private var exitOnSignals = emptySet<Int>()
+
+    private val processController = ProcessController { pid, signal ->
+        assertEquals(FAKE_PID, pid)
+        signals += signal
+        if (signal in exitOnSignals) {
+            process.exit(128 + signal)
+        }
+    }
+    private val terminator = ModuleTerminator(
+        processController,
+        TERMINATE_GRACE_PERIOD_MS,
+        KILL_GRACE_PERIOD_MS,
+        INTERRUPT_GRACE_PERIOD_MS
+    )
+    private val supervisor = ModuleSupervisor()
+    private val module = supervisor.startModule("FakeModule") {
+        try {
+            process.waitFor()
+        } catch (_: InterruptedException) {
+        }
+    }.also {
+        processController.register(MODULE_PATH, process)
+    }
+
+    @After
+    fun tearDown() {
+        process.exit(0)
+        module.awaitExit(INTERRUPT_GRACE_PERIOD_MS)
+    }
+
+    @Test
+    fun terminateStopsCooperativeModule() {
+        exitOnSignals = setOf(ProcessController.SIGTERM)
+
+        val startTime = System.nanoTime()
+        assertTrue(terminator.stopModule(MODULE_PATH, "", module))
+
+        assertEquals(listOf(ProcessController.SIGTERM), signals)
+        assertTrue(elapsedMs(startTime) < TERMINATE_GRACE_PERIOD_MS)
+        assertFalse(module.isAlive)
+    }
+
+    @Test
+    fun killFollowsIgnoredTerminate() {
+        exitOnSignals = setOf(ProcessController.SIGKILL)
+
+        val startTime = System.nanoTime()
+        assertTrue(terminator.stopModule(MODULE_PATH, "", module))
+
+        assertEquals(listOf(ProcessController.SIGTERM, ProcessController.SIGKILL), signals)
+        assertTrue(elapsedMs(startTime) >= TERMINATE_GRACE_PERIOD_MS)
+        assertTrue(elapsedMs(startTime) < TERMINATE_GRACE_PERIOD_MS + KILL_GRACE_PERIOD_MS)
+        assertFalse(module.isAlive)
+    }
+
+    @Test
+    fun interruptIsTheLastResort() {
+        val startTime = System.nanoTime()
+        assertFalse(terminator.stopModule(MODULE_PATH, "", module))
+
+        assertEquals(listOf(ProcessController.SIGTERM, ProcessController.SIGKILL), signals)
+        assertTrue(elapsedMs(startTime) >= TERMINATE_GRACE_PERIOD_MS + KILL_GRACE_PERIOD_MS)
+        assertTrue(module.isAlive)
+
+        assertTrue(terminator.stopModuleWithInterrupt(module))
+        assertFalse(module.isAlive)
+    }
+
+    @Test
+    fun pidIsTakenFromProcessWithoutPidField() {
+        exitOnSignals = setOf(ProcessController.SIGTERM)
+
+        terminator.stopModule(MODULE_PATH, "", module)
+
+        val lastSignal = processController.getLastSignal(MODULE_PATH)!!
+        assertEquals(FAKE_PID, lastSignal.pid)
+        assertEquals(ProcessController.PidSource.PROCESS, lastSignal.source)
+    }
+
+    private fun elapsedMs(startTime: Long) = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)
+
+    //Has no pid field, so the pid is parsed from toString() as on platforms that refuse reflection
+    private class FakeProcess : Process() {
+        private val exited = CountDownLatch(1)
+
+        @Volatile
+        private var exitCode = -1
+
+        fun exit(code: Int) {
+            if (exited.count > 0) {
+                exitCode = code
+                exited.countDown()
+            }
+        }
+
+        override fun getOutputStream(): OutputStream = ByteArrayOutputStream()
+
+        override fun getInputStream(): InputStream = ByteArrayInputStream(ByteArray(0))
+
+        override fun getErrorStream(): InputStream = ByteArrayInputStream(ByteArray(0))
+
+        override fun waitFor(): Int {
+            exited.await()
+            return exitCode
+        }
+
+        override fun exitValue(): Int {
+            if (exited.count > 0) {
+                throw IllegalThreadStateException("Process has not exited")
+            }
+            return exitCode
+        }
+
+        override fun destroy() = exit(143)
+
+        override fun toString() = "Process[pid=$FAKE_PID, hasExited=${exited.count == 0L}]"
+    }
+}
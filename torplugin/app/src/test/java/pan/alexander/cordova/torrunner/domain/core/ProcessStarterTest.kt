@@ -0,0 +1,121 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.domain.core
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+private const val LINES_PER_STREAM = 2_000_000
+
+class ProcessStarterTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun drainsBothStreamsConcurrentlyAndKeepsOnlyTheLastLines() {
+        //Each stream alone overflows the pipe buffer many times,
+        //so the script stalls if either of them is not drained
+        val script = script(
+            """
+            seq 1 $LINES_PER_STREAM | sed 's/^/err /' >&2 &
+            seq 1 $LINES_PER_STREAM | sed 's/^/out /'
+            wait
+            exit 3
+            """
+        )
+        val listener = CountingListener()
+        val starter = ProcessStarter(folder.root.absolutePath).apply {
+            stdOutputListener = listener
+        }
+
+        val result = starter.startProcess("sh ${script.absolutePath}")
+
+        assertEquals(3, result.exitCode)
+        assertEquals(1, listener.started)
+        assertEquals(LINES_PER_STREAM, listener.lines)
+        assertEquals("out $LINES_PER_STREAM", listener.lastLine)
+        assertEquals(100, result.stdout.size)
+        assertEquals("out ${LINES_PER_STREAM - 99}", result.stdout.first())
+        assertEquals("out $LINES_PER_STREAM", result.stdout.last())
+        assertEquals(100, result.stderr.size)
+        assertEquals("err $LINES_PER_STREAM", result.stderr.last())
+    }
+
+    @Test
+    fun keepsShortOutputInOrder() {
+        val script = script(
+            """
+            echo first
+            echo problem >&2
+            echo second
+            """
+        )
+
+        val result = ProcessStarter(folder.root.absolutePath).startProcess("sh ${script.absolutePath}")
+
+        assertEquals(0, result.exitCode)
+        assertEquals(listOf("first", "second"), result.stdout)
+        assertEquals(listOf("problem"), result.stderr)
+    }
+
+    @Test
+    fun doesNotWaitForStderrHeldOpenByChildProcess() {
+        //The background child inherits stderr and keeps it open after the script exits
+        val script = script(
+            """
+            sleep 10 > /dev/null &
+            echo done
+            """
+        )
+        val starter = ProcessStarter(folder.root.absolutePath, 200)
+
+        val startTime = System.currentTimeMillis()
+        val result = starter.startProcess("sh ${script.absolutePath}")
+
+        assertEquals(0, result.exitCode)
+        assertEquals(listOf("done"), result.stdout)
+        assertTrue(System.currentTimeMillis() - startTime < 5000)
+    }
+
+    private fun script(content: String): File =
+        folder.newFile("script.sh").apply {
+            writeText(content.trimIndent() + "\n")
+        }
+
+    private class CountingListener : ProcessStarter.OnStdOutputListener {
+        var started = 0
+        var lines = 0
+        var lastLine = ""
+
+        override fun onProcessStarted() {
+            started++
+        }
+
+        override fun onStdOutput(stdout: String) {
+            lines++
+            lastLine = stdout
+        }
+    }
+}
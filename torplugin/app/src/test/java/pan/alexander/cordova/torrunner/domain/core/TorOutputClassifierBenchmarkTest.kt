@@ -0,0 +1,73 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.domain.core
+
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import pan.alexander.cordova.torrunner.assumeBenchmarksEnabled
+
+private const val LINES = 10_000
+private const val ROUNDS = 200
+private const val MAX_SLOWDOWN = 3
+
+/**
+ * Compares [TorOutputClassifier] with the endsWith chain it replaced on a mix of Tor output.
+ * The classifier also recognizes every bootstrap step, so it is only expected to stay close to the chain.
+ */
+class TorOutputClassifierBenchmarkTest {
+
+    private val lines = torOutputSample(LINES)
+
+    @Before
+    fun setUp() = assumeBenchmarksEnabled()
+
+    @Test
+    fun classifierKeepsUpWithEndsWithChain() {
+        var legacyNs = Long.MAX_VALUE
+        var classifierNs = Long.MAX_VALUE
+        //Rounds alternate, so a slow phase of the machine affects both sides
+        repeat(ROUNDS) {
+            legacyNs = minOf(legacyNs, measure { line ->
+                if (LegacyTorOutputMatcher.isReady(line) || LegacyTorOutputMatcher.isProblem(line)) 1 else 0
+            })
+            classifierNs = minOf(classifierNs, measure { line ->
+                if (TorOutputClassifier.classify(line) != TorOutputEvent.NONE) 1 else 0
+            })
+        }
+
+        assertTrue(
+            "TorOutputClassifier $classifierNs ns/line, endsWith chain $legacyNs ns/line",
+            classifierNs <= legacyNs * MAX_SLOWDOWN
+        )
+    }
+
+    //Average time of one pass over the lines
+    private inline fun measure(classify: (String) -> Int): Long {
+        var matches = 0
+        val start = System.nanoTime()
+        for (line in lines) {
+            matches += classify(line)
+        }
+        val timeNs = (System.nanoTime() - start) / LINES
+        check(matches > 0)
+        return timeNs
+    }
+}
@@ -0,0 +1,145 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.domain.core
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+private const val PREFIX = "Oct 17 23:00:00.000 [notice] "
+private const val SAMPLE_LINES = 2_000
+
+class TorOutputClassifierTest {
+
+    @Test
+    fun parsesBootstrapProgress() {
+        assertEquals(0, progress("Bootstrapped 0% (starting): Starting"))
+        assertEquals(45, progress("Bootstrapped 45% (loading_descriptors): Loading relay descriptors"))
+        assertEquals(100, progress("Bootstrapped 100% (done): Done"))
+    }
+
+    @Test
+    fun classifiesEveryBootstrapStep() {
+        for (percent in 0..100) {
+            val line = "${PREFIX}Bootstrapped $percent% (step): Step"
+            assertEquals(TorOutputEvent.BOOTSTRAP, TorOutputClassifier.classify(line))
+            assertEquals(percent, TorOutputClassifier.getBootstrapProgress(line))
+        }
+    }
+
+    @Test
+    fun rejectsMalformedBootstrapLines() {
+        assertEquals(-1, progress("Bootstrapped x% (done): Done"))
+        assertEquals(-1, progress("Bootstrapped 45 (done): Done"))
+        assertEquals(-1, progress("Bootstrapped 45"))
+        assertEquals(-1, progress("Bootstrapped "))
+        assertEquals(-1, TorOutputClassifier.getBootstrapProgress(""))
+        //Only the message right after the log prefix is a bootstrap report
+        assertEquals(-1, progress("Relay said: Bootstrapped 100% (done): Done"))
+        assertEquals(TorOutputEvent.NONE, TorOutputClassifier.classify("${PREFIX}Relay said: Bootstrapped 100%"))
+    }
+
+    @Test
+    fun parsesBootstrapLineWithoutLogPrefix() {
+        assertEquals(100, TorOutputClassifier.getBootstrapProgress("Bootstrapped 100% (done): Done"))
+    }
+
+    @Test
+    fun matchesEveryConnectionProblemSuffix() {
+        val lines = mapOf(
+            "Ignoring directory request, since no bridge nodes are available yet." to TorOutputEvent.NO_BRIDGES,
+            "Our directory information is no longer up-to-date. We will try to fetch missing descriptors soon." to
+                    TorOutputEvent.MISSING_DESCRIPTORS,
+            "Failed to find node for hop #2 of our path. Discarding this circuit." to TorOutputEvent.CIRCUIT_DISCARDED,
+            "Possible compression bomb; abandoning stream." to TorOutputEvent.COMPRESSION_BOMB,
+            "Tried for 120 seconds to get a connection to [scrubbed]:443. Retrying on a new circuit." to
+                    TorOutputEvent.CIRCUIT_RETRY
+        )
+        for ((message, event) in lines) {
+            assertEquals(message, event, TorOutputClassifier.classify(PREFIX + message))
+            assertTrue(event.isConnectionProblem)
+        }
+    }
+
+    @Test
+    fun matchesSuffixesOnlyAtTheEndOfTheLine() {
+        assertEquals(
+            TorOutputEvent.NONE,
+            TorOutputClassifier.classify("${PREFIX}Discarding this circuit. Will retry later")
+        )
+        assertEquals(
+            TorOutputEvent.NONE,
+            TorOutputClassifier.classify("${PREFIX}Retrying on a new circuit")
+        )
+        //A longer pattern that shares the tail of a shorter one is not confused with it
+        assertEquals(
+            TorOutputEvent.NONE,
+            TorOutputClassifier.classify("${PREFIX}not abandoning stream.")
+        )
+    }
+
+    @Test
+    fun ignoresOtherLines() {
+        assertEquals(TorOutputEvent.NONE, TorOutputClassifier.classify(""))
+        assertEquals(TorOutputEvent.NONE, TorOutputClassifier.classify("${PREFIX}Opening Socks listener on 127.0.0.1:9050"))
+        assertEquals(TorOutputEvent.NONE, TorOutputClassifier.classify("${PREFIX}Ошибка соединения."))
+        assertFalse(TorOutputEvent.NONE.isConnectionProblem)
+        assertFalse(TorOutputEvent.BOOTSTRAP.isConnectionProblem)
+    }
+
+    @Test
+    fun matchesEndsWithChain() {
+        for (line in torOutputSample(SAMPLE_LINES)) {
+            assertEquals(line, LegacyTorOutputMatcher.isReady(line), TorOutputClassifier.getBootstrapProgress(line) == 100)
+            assertEquals(line, LegacyTorOutputMatcher.isProblem(line), TorOutputClassifier.classify(line).isConnectionProblem)
+        }
+    }
+
+    private fun progress(message: String) = TorOutputClassifier.getBootstrapProgress(PREFIX + message)
+}
+
+//A mix of bootstrap reports, connection problems and other Tor output
+internal fun torOutputSample(count: Int) = List(count) { i ->
+    val prefix = "Oct 17 23:${i % 60}:00.000 [notice] "
+    when (i % 20) {
+        0 -> prefix + if (i % 100 == 0) {
+            "Bootstrapped 100% (done): Done"
+        } else {
+            "Bootstrapped ${i % 100}% (loading_descriptors): Loading relay descriptors"
+        }
+        1 -> prefix + "Failed to find node for hop #2 of our path. Discarding this circuit."
+        2 -> prefix + "Tried for 120 seconds to get a connection. Retrying on a new circuit."
+        else -> prefix + "Heartbeat: Tor's uptime is $i hours, with $i circuits open. I've sent $i kB."
+    }
+}
+
+//The endsWith chain replaced by TorOutputClassifier
+internal object LegacyTorOutputMatcher {
+
+    fun isReady(line: String) = line.endsWith("Bootstrapped 100% (done): Done")
+
+    fun isProblem(line: String) =
+        line.endsWith("Ignoring directory request, since no bridge nodes are available yet.")
+                || line.endsWith("We will try to fetch missing descriptors soon.")
+                || line.endsWith("Discarding this circuit.")
+                || line.endsWith("Possible compression bomb; abandoning stream.")
+                || line.endsWith("Retrying on a new circuit.")
+}
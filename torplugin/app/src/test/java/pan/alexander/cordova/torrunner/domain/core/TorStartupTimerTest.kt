@@ -0,0 +1,72 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.domain.core
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.concurrent.atomic.AtomicLong
+import java.util.function.LongSupplier
+
+class TorStartupTimerTest {
+
+    private val clock = AtomicLong(1_000L)
+    private val startupMetrics = StartupMetrics(LongSupplier { clock.get() })
+    private val timer = TorStartupTimer({ clock.get() }, startupMetrics)
+
+    @Test
+    fun lastStagesAreReportedInStartupMetrics() {
+        timer.begin()
+        val portsStart = timer.now()
+        clock.addAndGet(40)
+        timer.record(TorStartupTimer.STAGE_PORTS, portsStart)
+        val socksStart = timer.now()
+        clock.addAndGet(900)
+        timer.record(TorStartupTimer.STAGE_SOCKS, socksStart)
+        timer.finish()
+
+        val lastStages = startupMetrics.toJson().getJSONObject("lastStages")
+        assertEquals(3, lastStages.length())
+        assertEquals(40L, lastStages.getLong(TorStartupTimer.STAGE_PORTS))
+        assertEquals(900L, lastStages.getLong(TorStartupTimer.STAGE_SOCKS))
+        assertEquals(940L, lastStages.getLong(TorStartupTimer.STAGE_TOTAL))
+    }
+
+    @Test
+    fun nextStartReplacesLastStages() {
+        timer.begin()
+        clock.addAndGet(500)
+        timer.record(TorStartupTimer.STAGE_INSTALL, clock.get() - 500)
+        timer.finish()
+
+        timer.begin()
+        clock.addAndGet(200)
+        timer.finish()
+
+        val metrics = startupMetrics.toJson()
+        val lastStages = metrics.getJSONObject("lastStages")
+        assertEquals(setOf(TorStartupTimer.STAGE_TOTAL), lastStages.keySet())
+        assertEquals(200L, lastStages.getLong(TorStartupTimer.STAGE_TOTAL))
+        //Histograms keep every start
+        assertEquals(
+            setOf(TorStartupTimer.STAGE_INSTALL, TorStartupTimer.STAGE_TOTAL),
+            metrics.getJSONObject("stages").keySet()
+        )
+    }
+}
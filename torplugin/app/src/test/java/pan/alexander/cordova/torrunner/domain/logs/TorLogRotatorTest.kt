@@ -0,0 +1,225 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.domain.logs
+
+import kotlinx.coroutines.Dispatchers
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import pan.alexander.cordova.torrunner.data.logs.LogRepositoryImpl
+import pan.alexander.cordova.torrunner.domain.configuration.ConfigurationRepository
+import pan.alexander.cordova.torrunner.utils.file.FileManager
+import java.io.File
+import java.io.FileOutputStream
+import java.lang.reflect.Proxy
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import java.util.function.LongSupplier
+import java.util.zip.GZIPInputStream
+import kotlin.concurrent.thread
+import kotlin.random.Random
+
+private const val MAX_LOG_SIZE_BYTES = 1024 * 1024
+private const val MAX_ARCHIVES = 5
+private const val MAX_ARCHIVES_SIZE_BYTES = 2L * 1024 * 1024
+private const val ROTATION_INTERVAL_MS = 61_000L
+
+class TorLogRotatorTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val log by lazy { File(folder.root, "Tor.log") }
+    private val clock = AtomicLong(1_700_000_000_000L)
+
+    //Unconfined runs the archiving inside rotateIfRequired, so its result can be checked right away
+    private val rotator by lazy {
+        TorLogRotator(
+            Dispatchers.Unconfined,
+            LogRepositoryImpl(Dispatchers.Unconfined, fakeConfiguration(), FileManager()),
+            LongSupplier { clock.getAndAdd(ROTATION_INTERVAL_MS) }
+        )
+    }
+
+    @Test
+    fun smallLogIsNotRotated() {
+        log.writeBytes(ByteArray(MAX_LOG_SIZE_BYTES - 1) { 'a'.code.toByte() })
+
+        assertFalse(rotator.rotateIfRequired())
+
+        assertEquals(MAX_LOG_SIZE_BYTES - 1L, log.length())
+        assertTrue(archives().isEmpty())
+    }
+
+    @Test
+    fun largeLogIsArchivedAndTruncated() {
+        val content = (1..100_000).joinToString("\n", postfix = "\n") { "line $it" }
+        log.writeText(content)
+
+        assertTrue(rotator.rotateIfRequired())
+
+        assertEquals(0L, log.length())
+        val archives = archives()
+        assertEquals(1, archives.size)
+        assertEquals(content, unzip(archives.single()))
+        //The uncompressed segment is removed after archiving
+        assertEquals(setOf(log.name, archives.single().name), folder.root.list()!!.toSet())
+        assertFalse(rotator.rotateIfRequired())
+    }
+
+    @Test
+    fun oldestGenerationsAreRemoved() {
+        val names = (1..MAX_ARCHIVES + 3).map {
+            log.writeText("x".repeat(MAX_LOG_SIZE_BYTES))
+            assertTrue(rotator.rotateIfRequired())
+            archives().first().name
+        }
+
+        assertEquals(names.takeLast(MAX_ARCHIVES).reversed(), archives().map { it.name })
+    }
+
+    @Test
+    fun archivesAreLimitedBySize() {
+        val random = Random(19)
+        repeat(MAX_ARCHIVES) {
+            //Random bytes do not compress, each archive is a little larger than the log
+            log.writeBytes(random.nextBytes(MAX_LOG_SIZE_BYTES))
+            assertTrue(rotator.rotateIfRequired())
+        }
+
+        val archives = archives()
+        assertTrue(archives.size < MAX_ARCHIVES)
+        assertTrue(archives.sumOf { it.length() } <= MAX_ARCHIVES_SIZE_BYTES)
+    }
+
+    @Test
+    fun failedCompressionIsRetriedOnNextCheck() {
+        val content = "x".repeat(MAX_LOG_SIZE_BYTES)
+        log.writeText(content)
+        val segment = File(folder.root, "Tor.log.${timestamp(clock.get())}")
+        //A directory in place of the temporary archive makes the compression fail
+        val blocker = File(segment.path + ".gz.tmp").apply { mkdir() }
+        val blockerContent = File(blocker, "blocker").apply { createNewFile() }
+
+        assertTrue(rotator.rotateIfRequired())
+
+        assertTrue(segment.isFile)
+        assertTrue(archives().isEmpty())
+
+        blockerContent.delete()
+        blocker.delete()
+        assertFalse(rotator.rotateIfRequired())
+
+        assertFalse(segment.exists())
+        assertEquals(content, unzip(archives().single()))
+    }
+
+    @Test
+    fun uncompressedSegmentsAreLimited() {
+        repeat(MAX_ARCHIVES + 2) {
+            //A directory that is not empty is not removed by the failed compression, so it fails again
+            File(folder.root, "Tor.log.${timestamp(clock.get())}.gz.tmp").apply {
+                mkdir()
+                File(this, "blocker").createNewFile()
+            }
+            log.writeText("x".repeat(MAX_LOG_SIZE_BYTES))
+            assertTrue(rotator.rotateIfRequired())
+        }
+
+        val segments = folder.root.listFiles { file ->
+            file.isFile && file.name.startsWith("Tor.log.")
+        }!!
+        assertTrue(archives().isEmpty())
+        assertTrue(segments.size < MAX_ARCHIVES)
+        assertTrue(segments.sumOf { it.length() } <= MAX_ARCHIVES_SIZE_BYTES)
+    }
+
+    @Test
+    fun appendDuringRotationContinuesAtLogStart() {
+        val writing = AtomicBoolean(true)
+        val written = AtomicLong()
+        //Tor keeps the log open in append mode and writes every line at once
+        val writer = thread {
+            FileOutputStream(log, true).use { output ->
+                var line = 0L
+                while (writing.get()) {
+                    output.write("line ${++line}\n".toByteArray())
+                    written.set(line)
+                }
+            }
+        }
+
+        try {
+            repeat(3) {
+                while (log.length() < MAX_LOG_SIZE_BYTES) {
+                    Thread.sleep(10)
+                }
+                assertTrue(rotator.rotateIfRequired())
+            }
+            //Let Tor write to the truncated log
+            Thread.sleep(50)
+        } finally {
+            writing.set(false)
+            writer.join()
+        }
+
+        val segments = archives().reversed().map { unzip(it) } + log.readText()
+        var previous = 0L
+        segments.forEach { segment ->
+            assertFalse("Truncation left a gap", segment.contains('\u0000'))
+            segment.lineSequence().filter { it.isNotEmpty() }.forEach { line ->
+                val number = line.removePrefix("line ").toLong()
+                //Lines appended between the copy and the truncation are lost, nothing is repeated
+                assertTrue("$line after $previous", number > previous)
+                previous = number
+            }
+        }
+        assertEquals(written.get(), previous)
+    }
+
+    private fun timestamp(timeMs: Long) =
+        SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(Date(timeMs))
+
+    private fun archives(): List<File> =
+        folder.root.listFiles { file -> file.name.endsWith(".gz") }!!.sortedByDescending { it.name }
+
+    private fun unzip(archive: File): String =
+        GZIPInputStream(archive.inputStream()).use { it.readBytes().toString(Charsets.UTF_8) }
+
+    private fun fakeConfiguration(): ConfigurationRepository =
+        Proxy.newProxyInstance(
+            ConfigurationRepository::class.java.classLoader,
+            arrayOf(ConfigurationRepository::class.java)
+        ) { proxy, method, args ->
+            when (method.name) {
+                "getTorLogPath" -> log.path
+                "hashCode" -> System.identityHashCode(proxy)
+                "equals" -> proxy === args[0]
+                "toString" -> "FakeConfiguration"
+                else -> throw UnsupportedOperationException(method.name)
+            }
+        } as ConfigurationRepository
+}
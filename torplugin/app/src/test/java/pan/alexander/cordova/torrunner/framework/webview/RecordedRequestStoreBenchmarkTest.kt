@@ -0,0 +1,60 @@
+package pan.alexander.cordova.torrunner.framework.webview
+
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import pan.alexander.cordova.torrunner.assumeBenchmarksEnabled
+
+private const val RECORDED_REQUESTS = 100_000
+private const val LOOKUPS = 1_000
+private const val ROUNDS = 5
+
+/**
+ * Compares [RecordedRequestStore] with the list it replaced, with 100k recorded requests.
+ */
+class RecordedRequestStoreBenchmarkTest {
+
+    private val requests = List(RECORDED_REQUESTS) { i ->
+        request("https://example.com/api/$i/items")
+    }
+
+    //Half of the lookups match exactly, half need the prefix fallback
+    private val lookupUrls = List(LOOKUPS) { i ->
+        val url = requests[(i * 7919) % RECORDED_REQUESTS].url
+        if (i % 2 == 0) url else "$url?page=$i"
+    }
+
+    @Before
+    fun setUp() = assumeBenchmarksEnabled()
+
+    @Test
+    fun storeLookupIsFasterThanListScan() {
+        val store = RecordedRequestStore(
+            capacity = RECORDED_REQUESTS,
+            maxAgeMs = Long.MAX_VALUE,
+            clock = { 0L }
+        )
+        val legacyStore = LegacyRecordedRequestList()
+        requests.forEach(store::add)
+        requests.forEach(legacyStore::add)
+
+        val storeFindNs = measure { lookupUrls.forEach(store::find) }
+        val legacyFindNs = measure { lookupUrls.forEach(legacyStore::find) }
+
+        assertTrue(
+            "Store ${storeFindNs / LOOKUPS} ns/lookup, list ${legacyFindNs / LOOKUPS} ns/lookup",
+            storeFindNs < legacyFindNs
+        )
+    }
+
+    //Best of several rounds, the first one is a warm-up
+    private inline fun measure(block: () -> Unit): Long {
+        var bestNs = Long.MAX_VALUE
+        repeat(ROUNDS) {
+            val startNs = System.nanoTime()
+            block()
+            bestNs = minOf(bestNs, System.nanoTime() - startNs)
+        }
+        return bestNs
+    }
+}
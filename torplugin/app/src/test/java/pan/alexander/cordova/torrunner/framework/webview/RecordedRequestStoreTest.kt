@@ -0,0 +1,176 @@
+package pan.alexander.cordova.torrunner.framework.webview
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+import pan.alexander.cordova.torrunner.framework.webview.RequestInspectorJavaScriptInterface.RecordedRequest
+
+private const val MAX_AGE_MS = 60_000L
+private const val LIST_SCAN_REQUESTS = 2_000
+private const val LIST_SCAN_LOOKUPS = 500
+
+class RecordedRequestStoreTest {
+
+    private var now = 1_000_000L
+
+    @Test
+    fun oldestRequestIsEvictedWhenFull() {
+        val store = newStore(capacity = 2)
+        val first = request("https://first.example/")
+        val second = request("https://second.example/")
+        val third = request("https://third.example/")
+
+        store.add(first)
+        store.add(second)
+        store.add(third)
+
+        assertEquals(2, store.size)
+        assertNull(store.find(first.url))
+        assertSame(second, store.find(second.url))
+        assertSame(third, store.find(third.url))
+    }
+
+    @Test
+    fun evictionKeepsNewerRequestForSameUrl() {
+        val store = newStore(capacity = 2)
+        val older = request("https://example.com/form", "older")
+        val newer = request("https://example.com/form", "newer")
+        val other = request("https://other.example/")
+
+        store.add(older)
+        store.add(newer)
+        store.add(other)
+
+        assertSame(newer, store.find(older.url))
+        store.add(request("https://third.example/"))
+        assertNull(store.find(older.url))
+    }
+
+    @Test
+    fun expiredRequestsAreEvicted() {
+        val store = newStore()
+        val old = request("https://old.example/")
+        store.add(old)
+
+        now += MAX_AGE_MS / 2
+        val fresh = request("https://fresh.example/")
+        store.add(fresh)
+
+        now += MAX_AGE_MS / 2 + 1
+        assertNull(store.find(old.url))
+        assertSame(fresh, store.find(fresh.url))
+        assertEquals(1, store.size)
+    }
+
+    @Test
+    fun exactMatchWinsOverNewerPrefix() {
+        val store = newStore()
+        val exact = request("https://example.com/search?q=tor")
+        val prefix = request("https://example.com/search")
+
+        store.add(exact)
+        store.add(prefix)
+
+        assertSame(exact, store.find(exact.url))
+    }
+
+    @Test
+    fun latestPrefixMatchIsReturned() {
+        val store = newStore()
+        val shortPrefix = request("https://example.com/")
+        val longPrefix = request("https://example.com/search")
+        val unrelated = request("https://example.com/search/other")
+
+        store.add(longPrefix)
+        store.add(shortPrefix)
+        store.add(unrelated)
+
+        assertSame(shortPrefix, store.find("https://example.com/search?q=tor"))
+
+        val newerLongPrefix = request(longPrefix.url, "newer")
+        store.add(newerLongPrefix)
+
+        assertSame(newerLongPrefix, store.find("https://example.com/search?q=tor"))
+    }
+
+    @Test
+    fun prefixLookupSkipsUrlsSortedBetweenPrefixes() {
+        val store = newStore()
+        val prefix = request("https://example.com/a")
+        store.add(prefix)
+        store.add(request("https://example.com/a/b"))
+        store.add(request("https://example.com/a/c"))
+        store.add(request("https://example.com/a="))
+
+        assertSame(prefix, store.find("https://example.com/a?x=1"))
+        assertNull(store.find("https://example.com/b"))
+    }
+
+    @Test
+    fun findMatchesListScan() {
+        val store = newStore(capacity = LIST_SCAN_REQUESTS)
+        val legacyList = LegacyRecordedRequestList()
+        repeat(LIST_SCAN_REQUESTS) { i ->
+            //Repeated URLs, so the latest of several requests must be found
+            val request = request("https://example.com/api/${i % (LIST_SCAN_REQUESTS / 2)}/items", "$i")
+            store.add(request)
+            legacyList.add(request)
+        }
+
+        repeat(LIST_SCAN_LOOKUPS) { i ->
+            val url = "https://example.com/api/${(i * 7919) % LIST_SCAN_REQUESTS}/items"
+            //Half of the lookups need the prefix fallback
+            val lookupUrl = if (i % 2 == 0) url else "$url?page=$i"
+            assertSame(lookupUrl, legacyList.find(lookupUrl), store.find(lookupUrl))
+        }
+    }
+
+    @Test
+    fun clearDropsAllRequests() {
+        val store = newStore()
+        val first = request("https://first.example/")
+        store.add(first)
+        store.clear()
+
+        assertEquals(0, store.size)
+        assertNull(store.find(first.url))
+        assertNull(store.find(first.url + "path"))
+    }
+
+    private fun newStore(capacity: Int = 16) = RecordedRequestStore(
+        capacity = capacity,
+        maxAgeMs = MAX_AGE_MS,
+        clock = { now }
+    )
+}
+
+internal fun request(url: String, body: String = "") = RecordedRequest(
+    type = WebViewRequestType.FETCH,
+    url = url,
+    method = "POST",
+    body = body,
+    formParameters = emptyMap(),
+    headers = emptyMap(),
+    trace = "",
+    enctype = null
+)
+
+//The list before the store: grows forever, two linear scans per lookup
+internal class LegacyRecordedRequestList {
+
+    private val recordedRequests = ArrayList<RecordedRequest>()
+
+    fun add(request: RecordedRequest) {
+        synchronized(recordedRequests) {
+            recordedRequests.add(request)
+        }
+    }
+
+    fun find(url: String): RecordedRequest? {
+        return synchronized(recordedRequests) {
+            recordedRequests.findLast { url == it.url }
+                ?: recordedRequests.findLast { url.contains(it.url) }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package pan.alexander.cordova.torrunner.framework.webview
+
+import android.net.Uri
+import android.webkit.WebResourceRequest
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Base64
+
+private const val FORM_URL = "https://example.com/form"
+private const val FETCH_URL = "https://example.com/api"
+private const val MAX_LENGTH = 8
+
+//Bodies of forms are built here, XHR and fetch bodies arrive as JavaScript captured them for the mode
+class RequestInspectorJavaScriptInterfaceTest {
+
+    private val formParameters = """[
+        {"name": "name", "value": "value", "type": "text", "checked": false},
+        {"name": "agree", "value": "yes", "type": "checkbox", "checked": true}
+    ]"""
+    private val formBody = "name=value&agree=yes"
+
+    @Test
+    fun metadataModeRecordsFormWithoutBody() {
+        val request = recordForm(BodyCaptureMode.METADATA)
+
+        assertEquals("", request.body)
+        assertEquals(-1L, request.bodyLength)
+        assertFalse(request.isBodyComplete)
+    }
+
+    @Test
+    fun truncatedModeCutsLongFormBody() {
+        val request = recordForm(BodyCaptureMode.TRUNCATED)
+
+        assertEquals(formBody.substring(0, MAX_LENGTH), request.body)
+        assertEquals(formBody.length.toLong(), request.bodyLength)
+        assertFalse(request.isBodyComplete)
+    }
+
+    @Test
+    fun truncatedModeKeepsShortFormBody() {
+        val request = recordForm(BodyCaptureMode.TRUNCATED, maxLength = formBody.length)
+
+        assertEquals(formBody, request.body)
+        assertEquals(formBody.length.toLong(), request.bodyLength)
+        assertTrue(request.isBodyComplete)
+    }
+
+    @Test
+    fun fullModeRecordsWholeFormBody() {
+        val request = recordForm(BodyCaptureMode.FULL)
+
+        assertEquals(formBody, request.body)
+        assertEquals(formBody.length.toLong(), request.bodyLength)
+        assertTrue(request.isBodyComplete)
+    }
+
+    @Test
+    fun formWithUnknownEncodingHasUnknownBody() {
+        val request = recordForm(BodyCaptureMode.FULL, enctype = "application/json")
+
+        assertEquals("", request.body)
+        assertEquals(-1L, request.bodyLength)
+        assertFalse(request.isBodyComplete)
+    }
+
+    @Test
+    fun metadataModeRecordsFetchLengthOnly() {
+        val jsInterface = newInterface(BodyCaptureMode.METADATA)
+        jsInterface.recordFetch(FETCH_URL, "POST", "", "{}", "", 0, 100, false)
+
+        val request = webViewRequest(jsInterface, FETCH_URL)
+        assertEquals(WebViewRequestType.FETCH, request.type)
+        assertEquals("", request.body)
+        assertNull(request.binaryBody)
+        assertEquals(100L, request.bodyLength)
+        assertFalse(request.isBodyComplete)
+    }
+
+    @Test
+    fun truncatedModeRecordsBinaryChunksOfFetch() {
+        val jsInterface = newInterface(BodyCaptureMode.TRUNCATED)
+        val captured = ByteArray(MAX_LENGTH) { it.toByte() }
+        jsInterface.recordBodyChunk(1, encode(captured.copyOfRange(0, 5)))
+        jsInterface.recordBodyChunk(1, encode(captured.copyOfRange(5, MAX_LENGTH)))
+        jsInterface.recordFetch(FETCH_URL, "PUT", "", "{}", "", 1, 1000, false)
+
+        val request = webViewRequest(jsInterface, FETCH_URL)
+        assertArrayEquals(captured, request.binaryBody)
+        assertEquals(1000L, request.bodyLength)
+        assertFalse(request.isBodyComplete)
+    }
+
+    @Test
+    fun fullModeRecordsWholeXhrBody() {
+        val jsInterface = newInterface(BodyCaptureMode.FULL)
+        val body = """{"key": "value"}"""
+        jsInterface.recordXhr(
+            FETCH_URL,
+            "POST",
+            body,
+            """{"Content-Type": "application/json"}""",
+            "",
+            0,
+            body.length.toLong(),
+            true
+        )
+
+        val request = webViewRequest(jsInterface, FETCH_URL)
+        assertEquals(WebViewRequestType.XML_HTTP, request.type)
+        assertEquals(body, request.body)
+        assertEquals(body.length.toLong(), request.bodyLength)
+        assertTrue(request.isBodyComplete)
+        assertEquals(
+            "application/json",
+            jsInterface.findRecordedRequestForUrl(FETCH_URL)?.headers?.get("content-type")
+        )
+    }
+
+    @Test
+    fun fullModeRecordsEmptyBinaryBody() {
+        val jsInterface = newInterface(BodyCaptureMode.FULL)
+        jsInterface.recordFetch(FETCH_URL, "POST", "", "{}", "", 2, 0, true)
+
+        val request = webViewRequest(jsInterface, FETCH_URL)
+        assertArrayEquals(ByteArray(0), request.binaryBody)
+        assertEquals(0L, request.bodyLength)
+        assertTrue(request.isBodyComplete)
+    }
+
+    @Test
+    fun unrecordedRequestHasUnknownBodyLength() {
+        val request = webViewRequest(newInterface(BodyCaptureMode.FULL), "https://example.com/page")
+
+        assertEquals(WebViewRequestType.HTML, request.type)
+        assertEquals("", request.body)
+        assertEquals(-1L, request.bodyLength)
+    }
+
+    private fun recordForm(
+        mode: BodyCaptureMode,
+        maxLength: Int = MAX_LENGTH,
+        enctype: String = "application/x-www-form-urlencoded"
+    ): WebViewRequest {
+        val jsInterface = newInterface(mode, maxLength)
+        jsInterface.recordFormSubmission(FORM_URL, "POST", formParameters, "{}", "", enctype)
+        return webViewRequest(jsInterface, FORM_URL).also {
+            assertEquals(WebViewRequestType.FORM, it.type)
+            assertEquals(mapOf("name" to "value", "agree" to "yes"), it.formParameters)
+        }
+    }
+
+    private fun newInterface(mode: BodyCaptureMode, maxLength: Int = MAX_LENGTH) =
+        RequestInspectorJavaScriptInterface(
+            RequestInspectorOptions(bodyCaptureMode = mode, maxCapturedBodyLength = maxLength)
+        )
+
+    private fun webViewRequest(
+        jsInterface: RequestInspectorJavaScriptInterface,
+        url: String
+    ) = WebViewRequest.create(url, FakeWebResourceRequest, jsInterface.findRecordedRequestForUrl(url))
+
+    private fun encode(bytes: ByteArray) = Base64.getEncoder().encodeToString(bytes)
+
+    private object FakeWebResourceRequest : WebResourceRequest {
+        override fun getUrl(): Uri = throw UnsupportedOperationException()
+        override fun isForMainFrame() = false
+        override fun isRedirect() = false
+        override fun hasGesture() = false
+        override fun getMethod() = "POST"
+        override fun getRequestHeaders(): Map<String, String> = emptyMap()
+    }
+}
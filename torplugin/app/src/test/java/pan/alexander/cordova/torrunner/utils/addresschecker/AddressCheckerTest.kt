@@ -0,0 +1,206 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.utils.addresschecker
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.IOException
+import java.net.InetAddress
+import java.security.KeyStore
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.atomic.AtomicInteger
+import javax.net.ssl.HostnameVerifier
+import javax.net.ssl.HttpsURLConnection
+import javax.net.ssl.KeyManagerFactory
+import javax.net.ssl.SSLContext
+import javax.net.ssl.SSLServerSocket
+import javax.net.ssl.SSLSocket
+import kotlin.concurrent.thread
+
+private const val KEYSTORE_PASSWORD = "password"
+
+class AddressCheckerTest {
+
+    private lateinit var server: FakeTlsServer
+    private lateinit var defaultHostnameVerifier: HostnameVerifier
+    private val checker = AddressChecker()
+
+    @Before
+    fun setUp() {
+        server = FakeTlsServer()
+        //The desktop JVM default verifier rejects every host,
+        //the certificate of the test server is issued for localhost
+        defaultHostnameVerifier = HttpsURLConnection.getDefaultHostnameVerifier()
+        HttpsURLConnection.setDefaultHostnameVerifier { host, _ -> host == "localhost" }
+    }
+
+    @After
+    fun tearDown() {
+        HttpsURLConnection.setDefaultHostnameVerifier(defaultHostnameVerifier)
+        server.close()
+    }
+
+    @Test
+    fun reachableAddressSendsNoCacheHeadRequest() {
+        assertTrue(checker.isHttpsAddressReachable("localhost", server.port))
+
+        val request = server.requests.take()
+        assertTrue(request[0], request[0].matches(Regex("HEAD /\\?nocache=\\d+ HTTP/1.1")))
+        assertTrue("Host: localhost" in request)
+        assertTrue("Connection: close" in request)
+        assertTrue(request.any { it.startsWith("User-Agent: ") })
+
+        val metrics = checker.getMetrics()
+        assertEquals(1, metrics.probes)
+        assertEquals(1, metrics.handshakes)
+        assertEquals(0, metrics.resumedHandshakes)
+    }
+
+    @Test
+    fun repeatedProbesResumeTlsSession() {
+        repeat(4) {
+            assertTrue(checker.isHttpsAddressReachable("localhost", server.port))
+        }
+
+        val metrics = checker.getMetrics()
+        assertEquals(4, metrics.probes)
+        assertEquals(4, metrics.handshakes)
+        assertEquals(3, metrics.resumedHandshakes)
+        assertEquals(4, server.handshakes.get())
+    }
+
+    @Test
+    fun serverErrorIsUnreachable() {
+        server.statusLine = "HTTP/1.1 503 Service Unavailable"
+
+        assertFalse(checker.isHttpsAddressReachable("localhost", server.port))
+        assertEquals(1, checker.getMetrics().probes)
+    }
+
+    @Test
+    fun clientErrorUpToNotFoundIsReachable() {
+        server.statusLine = "HTTP/1.1 404 Not Found"
+
+        assertTrue(checker.isHttpsAddressReachable("localhost", server.port))
+    }
+
+    @Test
+    fun nonHttpResponseIsUnreachable() {
+        server.statusLine = "SSH-2.0-OpenSSH_9.6"
+
+        assertFalse(checker.isHttpsAddressReachable("localhost", server.port))
+    }
+
+    @Test
+    fun certificateForOtherHostIsUnreachable() {
+        HttpsURLConnection.setDefaultHostnameVerifier { _, _ -> false }
+
+        assertFalse(checker.isHttpsAddressReachable("localhost", server.port))
+        assertTrue(server.requests.isEmpty())
+    }
+
+    @Test
+    fun silentServerTimesOut() {
+        server.responseDelayMs = 2000
+
+        val startTime = System.currentTimeMillis()
+        assertFalse(checker.isHttpsAddressReachable("localhost", server.port, timeoutMs = 300))
+        assertTrue(System.currentTimeMillis() - startTime < 2000)
+    }
+
+    @Test
+    fun closedPortIsUnreachable() {
+        val port = server.port
+        server.close()
+
+        assertFalse(checker.isHttpsAddressReachable("localhost", port, timeoutMs = 1000))
+    }
+
+    //Answers each request with the status line and closes the connection
+    private class FakeTlsServer {
+        private val serverSocket: SSLServerSocket
+        val port: Int
+        val requests = LinkedBlockingQueue<List<String>>()
+
+        @Volatile
+        var statusLine = "HTTP/1.1 200 OK"
+
+        @Volatile
+        var responseDelayMs = 0L
+
+        val handshakes = AtomicInteger()
+
+        init {
+            val keyStore = KeyStore.getInstance("PKCS12")
+            javaClass.classLoader!!.getResourceAsStream("localhost.p12").use {
+                keyStore.load(it, KEYSTORE_PASSWORD.toCharArray())
+            }
+            val keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm())
+            keyManagerFactory.init(keyStore, KEYSTORE_PASSWORD.toCharArray())
+            val sslContext = SSLContext.getInstance("TLS")
+            sslContext.init(keyManagerFactory.keyManagers, null, null)
+            serverSocket = sslContext.serverSocketFactory.createServerSocket(
+                0,
+                50,
+                InetAddress.getByName("localhost")
+            ) as SSLServerSocket
+            port = serverSocket.localPort
+
+            thread(isDaemon = true) {
+                try {
+                    while (true) {
+                        val client = serverSocket.accept() as SSLSocket
+                        thread(isDaemon = true) { serve(client) }
+                    }
+                } catch (_: IOException) {
+                }
+            }
+        }
+
+        private fun serve(client: SSLSocket) {
+            try {
+                client.use {
+                    client.startHandshake()
+                    handshakes.incrementAndGet()
+                    val reader = client.inputStream.bufferedReader()
+                    val request = generateSequence { reader.readLine() }
+                        .takeWhile { it.isNotEmpty() }
+                        .toList()
+                    if (request.isEmpty()) {
+                        return
+                    }
+                    requests.add(request)
+                    Thread.sleep(responseDelayMs)
+                    client.outputStream.write("$statusLine\r\nContent-Length: 0\r\n\r\n".toByteArray())
+                    client.outputStream.flush()
+                }
+            } catch (_: Exception) {
+            }
+        }
+
+        fun close() {
+            serverSocket.close()
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.utils.control
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import java.io.BufferedReader
+import java.io.IOException
+import java.io.Writer
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+
+class TorControlConnectionTest {
+
+    private lateinit var server: FakeControlPort
+    private lateinit var connection: TorControlConnection
+    private val listener = RecordingListener()
+
+    @Before
+    fun setUp() {
+        server = FakeControlPort()
+    }
+
+    @After
+    fun tearDown() {
+        if (::connection.isInitialized) {
+            connection.close()
+        }
+        server.close()
+    }
+
+    @Test
+    fun authenticatesWithHexCookie() {
+        connect()
+
+        connection.authenticate(byteArrayOf(0x01, 0xAB.toByte(), 0x7F))
+
+        assertEquals("AUTHENTICATE 01ab7f", server.commands.take())
+    }
+
+    @Test
+    fun failedAuthenticationThrows() {
+        server.handler = { _, writer -> writer.reply("515 Authentication failed: Wrong length") }
+        connect()
+
+        try {
+            connection.authenticate(byteArrayOf(1))
+            fail("Authentication should fail")
+        } catch (e: IOException) {
+            assertTrue(e.message!!.contains("515"))
+        }
+    }
+
+    @Test
+    fun setEventsDeliversAsyncEventsToListener() {
+        server.handler = { command, writer ->
+            writer.reply("250 OK")
+            if (command.startsWith("SETEVENTS")) {
+                writer.reply(
+                    "650 STATUS_CLIENT NOTICE BOOTSTRAP PROGRESS=50 TAG=loading_descriptors " +
+                            "SUMMARY=\"Loading relay descriptors\""
+                )
+                writer.reply("650 CIRC 7 FAILED REASON=TIMEOUT")
+                writer.reply("650 BW 1024 512")
+            }
+        }
+        connect()
+
+        connection.setEvents("STATUS_CLIENT", "CIRC", "STREAM", "BW")
+
+        assertEquals("SETEVENTS STATUS_CLIENT CIRC STREAM BW", server.commands.take())
+        assertEquals(
+            TorControlEvent.Bootstrap(50, "loading_descriptors", "Loading relay descriptors", false),
+            listener.events.poll(5, TimeUnit.SECONDS)
+        )
+        assertEquals(
+            TorControlEvent.CircuitStatus("7", "FAILED", "TIMEOUT"),
+            listener.events.poll(5, TimeUnit.SECONDS)
+        )
+        assertEquals(
+            TorControlEvent.Bandwidth(1024, 512),
+            listener.events.poll(5, TimeUnit.SECONDS)
+        )
+    }
+
+    @Test
+    fun getInfoSkipsEventsSentBeforeTheReply() {
+        server.handler = { _, writer ->
+            writer.reply("650 BW 1 2")
+            writer.reply("250-status/bootstrap-phase=NOTICE BOOTSTRAP PROGRESS=100 TAG=done SUMMARY=\"Done\"")
+            writer.reply("250 OK")
+        }
+        connect()
+
+        val value = connection.getInfo("status/bootstrap-phase")
+
+        assertEquals("NOTICE BOOTSTRAP PROGRESS=100 TAG=done SUMMARY=\"Done\"", value)
+        assertEquals(100, TorControlEvent.parseBootstrapPhase(value!!)?.progress)
+        assertEquals(TorControlEvent.Bandwidth(1, 2), listener.events.poll(5, TimeUnit.SECONDS))
+    }
+
+    @Test
+    fun getInfoReadsMultilineData() {
+        server.handler = { _, writer ->
+            writer.reply("250+config-text=")
+            writer.reply("SocksPort 9050")
+            writer.reply("..hidden")
+            writer.reply(".")
+            writer.reply("250 OK")
+        }
+        connect()
+
+        assertEquals("SocksPort 9050\n.hidden", connection.getInfo("config-text"))
+    }
+
+    @Test
+    fun replyTimeoutClosesConnectionAndReportsItLost() {
+        server.handler = { command, writer ->
+            //The reply to the first command comes too late
+            if (command == "SIGNAL NEWNYM") {
+                Thread.sleep(300)
+            }
+            writer.reply("250 OK")
+        }
+        connect(replyTimeoutMs = 100)
+
+        try {
+            connection.signal("NEWNYM")
+            fail("Command should time out")
+        } catch (e: IOException) {
+            assertTrue(e.message!!.contains("timeout"))
+        }
+
+        assertTrue(listener.lost.await(5, TimeUnit.SECONDS))
+        assertSame(connection, listener.lostConnection)
+        assertTrue(connection.isClosed)
+        try {
+            connection.signal("RELOAD")
+            fail("Closed connection should not send commands")
+        } catch (_: IOException) {
+        }
+    }
+
+    @Test
+    fun closedByServerReportsLostConnection() {
+        connect()
+
+        server.closeClients()
+
+        assertTrue(listener.lost.await(5, TimeUnit.SECONDS))
+        assertTrue(connection.isClosed)
+    }
+
+    @Test
+    fun unknownEventsAreIgnored() {
+        server.handler = { _, writer ->
+            writer.reply("650 NEWCONSENSUS")
+            writer.reply("250 OK")
+        }
+        connect()
+
+        connection.signal("RELOAD")
+
+        assertNull(listener.events.poll(200, TimeUnit.MILLISECONDS))
+        assertFalse(connection.isClosed)
+    }
+
+    private fun connect(replyTimeoutMs: Long = 5000) {
+        connection = TorControlConnection.open(
+            InetSocketAddress(InetAddress.getLoopbackAddress(), server.port),
+            replyTimeoutMs
+        )
+        connection.listener = listener
+    }
+
+    private fun Writer.reply(line: String) {
+        write(line)
+        write("\r\n")
+        flush()
+    }
+
+    private class RecordingListener : TorControlConnection.OnTorControlEventListener {
+        val events = LinkedBlockingQueue<TorControlEvent>()
+        val lost = CountDownLatch(1)
+
+        @Volatile
+        var lostConnection: TorControlConnection? = null
+
+        override fun onTorControlEvent(event: TorControlEvent) {
+            events.add(event)
+        }
+
+        override fun onTorControlConnectionLost(connection: TorControlConnection) {
+            lostConnection = connection
+            lost.countDown()
+        }
+    }
+
+    //Answers each command with the handler, 250 OK by default
+    private class FakeControlPort {
+        private val serverSocket = ServerSocket(0, 1, InetAddress.getLoopbackAddress())
+        private val clients = mutableListOf<Socket>()
+        val port: Int = serverSocket.localPort
+        val commands = LinkedBlockingQueue<String>()
+
+        @Volatile
+        var handler: (String, Writer) -> Unit = { _, writer ->
+            writer.write("250 OK\r\n")
+            writer.flush()
+        }
+
+        init {
+            thread(isDaemon = true) {
+                try {
+                    while (true) {
+                        val client = serverSocket.accept()
+                        synchronized(clients) { clients.add(client) }
+                        thread(isDaemon = true) { serve(client) }
+                    }
+                } catch (_: IOException) {
+                }
+            }
+        }
+
+        private fun serve(client: Socket) {
+            try {
+                val reader: BufferedReader = client.getInputStream().bufferedReader()
+                val writer = client.getOutputStream().bufferedWriter()
+                while (true) {
+                    val command = reader.readLine() ?: break
+                    commands.add(command)
+                    handler(command, writer)
+                }
+            } catch (_: IOException) {
+            }
+        }
+
+        fun closeClients() {
+            synchronized(clients) { clients.forEach { it.close() } }
+        }
+
+        fun close() {
+            closeClients()
+            serverSocket.close()
+        }
+    }
+}
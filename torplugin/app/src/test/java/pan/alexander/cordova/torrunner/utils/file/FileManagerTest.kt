@@ -0,0 +1,117 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.utils.file
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.util.concurrent.TimeUnit
+import kotlin.system.exitProcess
+
+private const val WRITER_START_TIMEOUT_MS = 30_000L
+private const val LINES_BEFORE_KILL = 10_000
+
+class FileManagerTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val fileManager = FileManager()
+
+    @Test
+    fun atomicRewriteReplacesContent() {
+        val file = folder.newFile("tor.conf")
+        file.writeText("SOCKSPort 9050\n")
+
+        assertTrue(fileManager.rewriteFileAtomically(file.path, listOf("SOCKSPort 9051", "UseBridges 1")))
+
+        assertEquals(listOf("SOCKSPort 9051", "UseBridges 1"), file.readLines())
+        assertFalse(File("${file.path}.tmp").exists())
+    }
+
+    @Test
+    fun atomicRewriteCreatesMissingFile() {
+        val file = File(folder.root, "conf/tor.conf")
+
+        assertTrue(fileManager.rewriteFileAtomically(file.path, listOf("SOCKSPort 9050")))
+
+        assertEquals(listOf("SOCKSPort 9050"), file.readLines())
+    }
+
+    @Test
+    fun killedWriterLeavesOldFile() {
+        val file = folder.newFile("tor.conf")
+        val oldContent = listOf("SOCKSPort 9050", "UseBridges 0")
+        file.writeText(oldContent.joinToString("\n", postfix = "\n"))
+        val marker = File(folder.root, "writing")
+
+        val writer = ProcessBuilder(
+            File(System.getProperty("java.home"), "bin/java").path,
+            "-cp", System.getProperty("java.class.path"),
+            FileManagerTest::class.java.name,
+            file.path,
+            marker.path
+        ).inheritIO().start()
+
+        try {
+            val deadline = System.currentTimeMillis() + WRITER_START_TIMEOUT_MS
+            while (!marker.exists()) {
+                assertTrue("Writer exited early", writer.isAlive)
+                assertTrue("Writer did not start", System.currentTimeMillis() < deadline)
+                Thread.sleep(10)
+            }
+            assertTrue(File("${file.path}.tmp").length() > 0)
+        } finally {
+            writer.destroyForcibly()
+            writer.waitFor(10, TimeUnit.SECONDS)
+        }
+
+        assertEquals(oldContent, file.readLines())
+
+        //The leftover temporary file does not prevent the next write
+        assertTrue(fileManager.rewriteFileAtomically(file.path, listOf("SOCKSPort 9051")))
+        assertEquals(listOf("SOCKSPort 9051"), file.readLines())
+    }
+
+    companion object {
+        //Entry point of the writer process killed by killedWriterLeavesOldFile
+        @JvmStatic
+        fun main(args: Array<String>) {
+            val marker = File(args[1])
+            val content = object : AbstractList<String>() {
+                override val size = Int.MAX_VALUE
+
+                override fun get(index: Int): String {
+                    if (index == LINES_BEFORE_KILL) {
+                        marker.createNewFile()
+                        Thread.sleep(Long.MAX_VALUE)
+                    }
+                    return "Bridge obfs4 192.0.2.$index:443 ${"0".repeat(40)}"
+                }
+            }
+            FileManager().rewriteFileAtomically(args[0], content)
+            exitProcess(1)
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.utils.file
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.RandomAccessFile
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicReference
+import kotlin.concurrent.thread
+
+//Small enough that every read takes many passes over the buffer
+private const val SMALL_BUFFER_BYTES = 64
+private const val TRUNCATIONS = 2_000
+
+class FileTailTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val file by lazy { folder.newFile("tor.log") }
+
+    @Test
+    fun returnsOnlyAppendedLines() {
+        file.writeText("first\nsecond\n")
+        val tail = FileTail(file)
+
+        assertEquals(listOf("first", "second"), tail.readAppendedLines().lines)
+        assertEquals(emptyList<String>(), tail.readAppendedLines().lines)
+
+        file.appendText("third\r\nfourth\n")
+
+        assertEquals(listOf("third", "fourth"), tail.readAppendedLines().lines)
+    }
+
+    @Test
+    fun firstReadStartsAtLineBoundary() {
+        file.writeText("0123456789\nabcdef\nlast\n")
+        val tail = FileTail(file, 8L, SMALL_BUFFER_BYTES)
+
+        assertEquals(listOf("last"), tail.readAppendedLines().lines)
+    }
+
+    @Test
+    fun partialLineWaitsForNewLine() {
+        file.writeText("complete\npart")
+        val tail = FileTail(file)
+
+        assertEquals(listOf("complete"), tail.readAppendedLines().lines)
+
+        file.appendText("ial")
+        assertEquals(emptyList<String>(), tail.readAppendedLines().lines)
+
+        file.appendText(" line\n")
+        assertEquals(listOf("partial line"), tail.readAppendedLines().lines)
+    }
+
+    @Test
+    fun linesLongerThanBufferAreRead() {
+        val tail = FileTail(file, Long.MAX_VALUE, SMALL_BUFFER_BYTES)
+        val lines = (1..50).map { index -> "line $index ".repeat(index) }
+        file.writeText(lines.joinToString("\n", postfix = "\n"))
+
+        assertEquals(lines, tail.readAppendedLines().lines.joinLongLines(lines))
+    }
+
+    @Test
+    fun shorterFileIsTruncation() {
+        file.writeText("first line\nsecond line\n")
+        val tail = FileTail(file)
+        tail.readAppendedLines()
+
+        file.writeText("new\n")
+
+        val chunk = tail.readAppendedLines()
+        assertTrue(chunk.truncated)
+        assertEquals(listOf("new"), chunk.lines)
+    }
+
+    @Test
+    fun rewrittenFileIsTruncation() {
+        file.writeText("first\n")
+        val tail = FileTail(file)
+        tail.readAppendedLines()
+
+        file.writeText("other\nlonger content\n")
+
+        val chunk = tail.readAppendedLines()
+        assertTrue(chunk.truncated)
+        assertEquals(listOf("other", "longer content"), chunk.lines)
+    }
+
+    @Test
+    fun deletedFileIsTruncation() {
+        file.writeText("first\n")
+        val tail = FileTail(file)
+        tail.readAppendedLines()
+
+        file.delete()
+        assertTrue(tail.readAppendedLines().truncated)
+
+        file.writeText("second\n")
+        assertEquals(listOf("second"), tail.readAppendedLines().lines)
+    }
+
+    @Test
+    fun truncationDuringReadIsSafe() {
+        val tail = FileTail(file, Long.MAX_VALUE, SMALL_BUFFER_BYTES)
+        val content = (1..200).joinToString("\n", postfix = "\n") { "old line $it" }.toByteArray()
+        file.writeBytes(content)
+
+        val running = AtomicBoolean(true)
+        val error = AtomicReference<Throwable>()
+        val truncator = thread {
+            try {
+                RandomAccessFile(file, "rw").use { randomAccessFile ->
+                    repeat(TRUNCATIONS) {
+                        randomAccessFile.setLength(0)
+                        randomAccessFile.seek(0)
+                        randomAccessFile.write(content)
+                    }
+                }
+            } catch (e: Throwable) {
+                error.set(e)
+            } finally {
+                running.set(false)
+            }
+        }
+
+        var reads = 0
+        while (running.get()) {
+            tail.readAppendedLines()
+            reads++
+        }
+        truncator.join()
+        error.get()?.let { throw it }
+        assertTrue(reads > 0)
+
+        file.writeText("final 1\nfinal 2\n")
+
+        //Whether the last read saw an empty file or old content, no new line is lost
+        assertEquals(listOf("final 1", "final 2"), tail.readAppendedLines().lines)
+        assertFalse(tail.readAppendedLines().truncated)
+    }
+
+    //Lines longer than the buffer are returned in pieces
+    private fun List<String>.joinLongLines(expected: List<String>): List<String> {
+        val result = ArrayList<String>()
+        var current = StringBuilder()
+        for (piece in this) {
+            current.append(piece)
+            if (current.length >= expected[result.size].length) {
+                result += current.toString()
+                current = StringBuilder()
+            }
+        }
+        return result
+    }
+}
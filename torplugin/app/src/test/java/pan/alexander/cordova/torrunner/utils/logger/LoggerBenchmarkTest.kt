@@ -0,0 +1,80 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.utils.logger
+
+import org.junit.After
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import pan.alexander.cordova.torrunner.assumeBenchmarksEnabled
+import pan.alexander.cordova.torrunner.utils.logger.Logger.LogLevel
+
+private const val CALLS = 100_000
+private const val ROUNDS = 20
+
+/**
+ * Compares [Logger] with the SharedFlow logger it replaced, per call on the logging thread.
+ */
+class LoggerBenchmarkTest {
+
+    private val legacyLogger = LegacyLogger()
+    private val initialLevel = Logger.minLevel
+
+    @Before
+    fun setUp() = assumeBenchmarksEnabled()
+
+    @After
+    fun tearDown() {
+        Logger.minLevel = initialLevel
+        legacyLogger.close()
+    }
+
+    @Test
+    fun disabledLevelIsCheaperWithLazyMessage() {
+        Logger.minLevel = LogLevel.INFO
+
+        val legacyNs = measure { i -> legacyLogger.logi("Tor output line $i") }
+        val ringBufferNs = measure { i -> Logger.logi("Tor output line $i") }
+        val disabledLazyNs = measure { i -> Logger.logd { "Tor control event $i" } }
+        val disabledEagerNs = measure { i -> Logger.logd("Tor control event $i") }
+
+        assertTrue(
+            "SharedFlow logger %.1f ns/call, ring buffer logger %.1f ns/call, ".format(legacyNs, ringBufferNs) +
+                    "disabled level with lazy message %.1f ns/call, with eager message %.1f ns/call"
+                        .format(disabledLazyNs, disabledEagerNs),
+            disabledLazyNs < disabledEagerNs
+        )
+    }
+
+    //Best of several rounds after a warm-up
+    private inline fun measure(log: (Int) -> Unit): Double {
+        var bestNs = Long.MAX_VALUE
+        repeat(ROUNDS) {
+            val startNs = System.nanoTime()
+            for (i in 0 until CALLS) {
+                log(i)
+            }
+            bestNs = minOf(bestNs, System.nanoTime() - startNs)
+            //Let the writers catch up, so every round starts with empty queues
+            Thread.sleep(50)
+        }
+        return bestNs.toDouble() / CALLS
+    }
+}
@@ -0,0 +1,113 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+package pan.alexander.cordova.torrunner.utils.logger
+
+import android.util.Log
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.flow.launchIn
+import kotlinx.coroutines.flow.onEach
+import org.junit.After
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import pan.alexander.cordova.torrunner.utils.logger.Logger.LogLevel
+import java.lang.management.ManagementFactory
+
+private const val CALLS = 10_000
+private const val ROUNDS = 3
+
+class LoggerTest {
+
+    private val threadBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+    private val legacyLogger = LegacyLogger()
+    private val initialLevel = Logger.minLevel
+
+    @After
+    fun tearDown() {
+        Logger.minLevel = initialLevel
+        legacyLogger.close()
+    }
+
+    @Test
+    fun loggerAllocatesLessThanSharedFlowLogger() {
+        Logger.minLevel = LogLevel.INFO
+
+        val legacy = bytesPerCall { i -> legacyLogger.logi("Tor output line $i") }
+        val ringBuffer = bytesPerCall { i -> Logger.logi("Tor output line $i") }
+
+        assertTrue("Ring buffer $ringBuffer bytes/call, SharedFlow $legacy bytes/call", ringBuffer < legacy)
+    }
+
+    @Test
+    fun disabledLevelBuildsNoMessage() {
+        Logger.minLevel = LogLevel.INFO
+
+        val disabledLazy = bytesPerCall { i -> Logger.logd { "Tor control event $i" } }
+        val disabledEager = bytesPerCall { i -> Logger.logd("Tor control event $i") }
+
+        assertTrue("Lazy message $disabledLazy bytes/call", disabledLazy < 1)
+        assertTrue("Eager message $disabledEager bytes/call", disabledLazy < disabledEager)
+    }
+
+    //Fewest bytes allocated by the calling thread in several rounds
+    private inline fun bytesPerCall(log: (Int) -> Unit): Double {
+        val threadId = Thread.currentThread().id
+        var bestBytes = Long.MAX_VALUE
+        repeat(ROUNDS) {
+            val startBytes = threadBean.getThreadAllocatedBytes(threadId)
+            for (i in 0 until CALLS) {
+                log(i)
+            }
+            bestBytes = minOf(bestBytes, threadBean.getThreadAllocatedBytes(threadId) - startBytes)
+        }
+        return bestBytes.toDouble() / CALLS
+    }
+}
+
+//The logger before the ring buffer: an entry per call, emitted to a SharedFlow with replay
+internal class LegacyLogger {
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    private val logFlow = MutableSharedFlow<LogEntry>(
+        replay = 10,
+        extraBufferCapacity = 100,
+        onBufferOverflow = BufferOverflow.DROP_OLDEST
+    ).also { flow ->
+        flow.onEach {
+            Log.i(Logger.LOG_TAG, it.message)
+        }.launchIn(scope)
+    }
+
+    fun logi(message: String?) {
+        logFlow.tryEmit(LogEntry(LogLevel.INFO, message ?: "null"))
+    }
+
+    fun close() = scope.cancel()
+
+    private data class LogEntry(
+        val level: LogLevel,
+        val message: String
+    )
+}
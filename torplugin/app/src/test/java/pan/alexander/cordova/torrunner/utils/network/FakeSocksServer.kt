@@ -0,0 +1,140 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+
+package pan.alexander.cordova.torrunner.utils.network
+
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.util.concurrent.CopyOnWriteArrayList
+
+private const val SOCKS_VERSION = 5
+private const val SOCKS_ADDRESS_IPV4 = 1
+private const val SOCKS_ADDRESS_DOMAIN = 3
+private const val SOCKS_ADDRESS_IPV6 = 4
+private const val SOCKS_REPLY_SUCCEEDED = 0
+const val SOCKS_REPLY_HOST_UNREACHABLE = 4
+
+/**
+ * Minimal SOCKS5 server without authentication that connects the requested destination
+ * to the address returned by [resolve], or replies with [failureReply] when it returns null.
+ */
+class FakeSocksServer(
+    private val failureReply: Int = SOCKS_REPLY_HOST_UNREACHABLE,
+    private val resolve: (host: String, port: Int) -> InetSocketAddress?
+) : Closeable {
+
+    private val server = ServerSocket(0, 50, InetAddress.getLoopbackAddress())
+    private val sockets = CopyOnWriteArrayList<Socket>()
+
+    /** Destinations requested by clients as host:port */
+    val requests = CopyOnWriteArrayList<String>()
+
+    val port: Int
+        get() = server.localPort
+
+    init {
+        thread {
+            while (!server.isClosed) {
+                val client = try {
+                    server.accept()
+                } catch (e: IOException) {
+                    break
+                }
+                sockets += client
+                thread { handle(client) }
+            }
+        }
+    }
+
+    private fun handle(client: Socket) {
+        try {
+            val input = DataInputStream(client.getInputStream())
+            val output = client.getOutputStream()
+
+            check(input.readUnsignedByte() == SOCKS_VERSION)
+            input.skipNBytes(input.readUnsignedByte().toLong())
+            output.write(byteArrayOf(SOCKS_VERSION.toByte(), 0))
+
+            check(input.readUnsignedByte() == SOCKS_VERSION)
+            input.readUnsignedByte()
+            input.readUnsignedByte()
+            val host = when (input.readUnsignedByte()) {
+                SOCKS_ADDRESS_IPV4 -> InetAddress.getByAddress(input.readNBytes(4)).hostAddress
+                SOCKS_ADDRESS_IPV6 -> InetAddress.getByAddress(input.readNBytes(16)).hostAddress
+                SOCKS_ADDRESS_DOMAIN -> String(input.readNBytes(input.readUnsignedByte()))
+                else -> throw IOException("Unknown address type")
+            }
+            val port = input.readUnsignedShort()
+            requests += "$host:$port"
+
+            val target = resolve(host, port)?.let { address ->
+                try {
+                    Socket(address.address, address.port)
+                } catch (e: IOException) {
+                    null
+                }
+            }
+            if (target == null) {
+                output.write(reply(failureReply))
+                client.close()
+                return
+            }
+            sockets += target
+            output.write(reply(SOCKS_REPLY_SUCCEEDED))
+            output.flush()
+
+            thread { relay(target.getInputStream(), output, client) }
+            relay(input, target.getOutputStream(), target)
+        } catch (e: Exception) {
+            client.close()
+        }
+    }
+
+    private fun reply(code: Int) = byteArrayOf(
+        SOCKS_VERSION.toByte(), code.toByte(), 0, SOCKS_ADDRESS_IPV4.toByte(),
+        0, 0, 0, 0, 0, 0
+    )
+
+    private fun relay(input: InputStream, output: OutputStream, outputSocket: Socket) {
+        try {
+            input.copyTo(output)
+            outputSocket.shutdownOutput()
+        } catch (e: IOException) {
+            outputSocket.close()
+        }
+    }
+
+    private fun thread(block: () -> Unit) = Thread(block).apply {
+        isDaemon = true
+        start()
+    }
+
+    override fun close() {
+        server.close()
+        sockets.forEach { it.close() }
+    }
+}
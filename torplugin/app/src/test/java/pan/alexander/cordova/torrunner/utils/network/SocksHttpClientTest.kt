@@ -0,0 +1,264 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+
+package pan.alexander.cordova.torrunner.utils.network
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import java.io.IOException
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.ProtocolException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+
+//IP literals keep DNS out of the test, the SOCKS server sends every host to the HTTP server
+private const val FIRST_HOST = "127.0.0.2"
+private const val SECOND_HOST = "127.0.0.3"
+
+class SocksHttpClientTest {
+
+    private val httpServer = HttpServer.create(
+        InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+        0
+    ).apply { start() }
+    private val httpPort = httpServer.address.port
+    private val socksServer = FakeSocksServer { _, _ ->
+        InetSocketAddress(InetAddress.getLoopbackAddress(), httpPort)
+    }
+    private val cookieStore = FakeCookieStore()
+    private val exchanges = ConcurrentHashMap<String, RecordedExchange>()
+
+    private val client = SocksHttpClient()
+
+    @After
+    fun tearDown() {
+        socksServer.close()
+        httpServer.stop(0)
+    }
+
+    @Test
+    fun requestIsMadeThroughSocksProxy() {
+        handle("/page") { respond(it, 200, "page") }
+
+        val response = execute(url(FIRST_HOST, "/page"))
+
+        assertEquals(200, response.statusCode)
+        assertEquals("page", response.body.use { String(it.readBytes()) })
+        assertEquals(listOf("$FIRST_HOST:$httpPort"), socksServer.requests)
+    }
+
+    @Test
+    fun cookiesOfEveryHopAreStoredAgainstItsUrl() {
+        handle("/start") {
+            it.responseHeaders.add("Set-Cookie", "first=1")
+            redirect(it, 302, url(SECOND_HOST, "/end"))
+        }
+        handle("/end") {
+            it.responseHeaders.add("Set-Cookie", "second=2")
+            respond(it, 200, "end")
+        }
+
+        val response = execute(url(FIRST_HOST, "/start"))
+
+        assertEquals(200, response.statusCode)
+        assertEquals("end", response.body.use { String(it.readBytes()) })
+        assertEquals(
+            listOf(
+                url(FIRST_HOST, "/start") to "first=1",
+                url(SECOND_HOST, "/end") to "second=2"
+            ),
+            cookieStore.storedCookies
+        )
+        assertEquals(
+            listOf("$FIRST_HOST:$httpPort", "$SECOND_HOST:$httpPort"),
+            socksServer.requests
+        )
+    }
+
+    @Test
+    fun redirectIsReturnedWhenNotFollowed() {
+        handle("/start") {
+            it.responseHeaders.add("Set-Cookie", "first=1")
+            redirect(it, 302, url(SECOND_HOST, "/end"))
+        }
+
+        val response = client.execute(
+            url(FIRST_HOST, "/start"),
+            "GET",
+            emptyMap(),
+            null,
+            socksServer.port,
+            cookieStore,
+            followRedirects = false
+        )
+        response.body.close()
+
+        assertEquals(302, response.statusCode)
+        assertEquals(listOf(url(SECOND_HOST, "/end")), response.headers["Location"])
+        assertEquals(listOf(url(FIRST_HOST, "/start") to "first=1"), cookieStore.storedCookies)
+        assertEquals(listOf("$FIRST_HOST:$httpPort"), socksServer.requests)
+    }
+
+    @Test
+    fun redirectSendsCookiesOfNextUrlOnly() {
+        cookieStore.cookies[url(SECOND_HOST, "/end")] = "next=2"
+        handle("/start") { redirect(it, 302, url(SECOND_HOST, "/end")) }
+        handle("/end") { respond(it, 200, "") }
+
+        execute(
+            url(FIRST_HOST, "/start"),
+            headers = mapOf("cookie" to "previous=1", "authorization" to "Basic secret")
+        ).body.close()
+
+        assertEquals("previous=1", exchanges.getValue("/start").cookie)
+        assertEquals("next=2", exchanges.getValue("/end").cookie)
+        assertNull(exchanges.getValue("/end").authorization)
+    }
+
+    @Test
+    fun sameOriginRedirectKeepsAuthorization() {
+        handle("/start") { redirect(it, 302, "/end") }
+        handle("/end") { respond(it, 200, "") }
+
+        execute(
+            url(FIRST_HOST, "/start"),
+            headers = mapOf("authorization" to "Basic secret")
+        ).body.close()
+
+        assertEquals("Basic secret", exchanges.getValue("/end").authorization)
+    }
+
+    @Test
+    fun seeOtherChangesPostToGet() {
+        handle("/form") { redirect(it, 303, "/result") }
+        handle("/result") { respond(it, 200, "") }
+
+        execute(url(FIRST_HOST, "/form"), "POST", body = "a=1".toByteArray()).body.close()
+
+        assertEquals("POST", exchanges.getValue("/form").method)
+        assertEquals("a=1", exchanges.getValue("/form").body)
+        assertEquals("GET", exchanges.getValue("/result").method)
+        assertEquals("", exchanges.getValue("/result").body)
+    }
+
+    @Test
+    fun temporaryRedirectRepeatsPostWithBody() {
+        handle("/form") { redirect(it, 307, "/moved") }
+        handle("/moved") { respond(it, 200, "") }
+
+        execute(url(FIRST_HOST, "/form"), "POST", body = "a=1".toByteArray()).body.close()
+
+        assertEquals("POST", exchanges.getValue("/moved").method)
+        assertEquals("a=1", exchanges.getValue("/moved").body)
+    }
+
+    @Test
+    fun errorResponseBodyIsReturned() {
+        handle("/missing") { respond(it, 404, "not found") }
+
+        val response = execute(url(FIRST_HOST, "/missing"))
+
+        assertEquals(404, response.statusCode)
+        assertEquals("not found", response.body.use { String(it.readBytes()) })
+    }
+
+    @Test
+    fun redirectLoopFails() {
+        handle("/loop") { redirect(it, 302, "/loop") }
+
+        try {
+            execute(url(FIRST_HOST, "/loop"))
+            fail("Redirect loop was followed")
+        } catch (e: ProtocolException) {
+            assertTrue(e.message.orEmpty().startsWith("Too many redirects"))
+        }
+    }
+
+    @Test
+    fun unreachableDestinationFails() {
+        FakeSocksServer { _, _ -> null }.use { unreachable ->
+            try {
+                client.execute(url(FIRST_HOST, "/"), "GET", emptyMap(), null, unreachable.port, cookieStore)
+                fail("Unreachable destination was loaded")
+            } catch (e: IOException) {
+                assertEquals(listOf("$FIRST_HOST:$httpPort"), unreachable.requests)
+            }
+        }
+    }
+
+    private fun execute(
+        url: String,
+        method: String = "GET",
+        headers: Map<String, String> = emptyMap(),
+        body: ByteArray? = null
+    ) = client.execute(url, method, headers, body, socksServer.port, cookieStore)
+
+    private fun url(host: String, path: String) = "http://$host:$httpPort$path"
+
+    private fun handle(path: String, respond: (HttpExchange) -> Unit) {
+        httpServer.createContext(path) { exchange ->
+            exchanges[exchange.requestURI.path] = RecordedExchange(
+                method = exchange.requestMethod,
+                cookie = exchange.requestHeaders.getFirst("Cookie"),
+                authorization = exchange.requestHeaders.getFirst("Authorization"),
+                body = String(exchange.requestBody.readBytes())
+            )
+            respond(exchange)
+        }
+    }
+
+    private fun redirect(exchange: HttpExchange, statusCode: Int, location: String) {
+        exchange.responseHeaders.add("Location", location)
+        exchange.sendResponseHeaders(statusCode, -1)
+        exchange.close()
+    }
+
+    private fun respond(exchange: HttpExchange, statusCode: Int, body: String) {
+        val bytes = body.toByteArray()
+        exchange.sendResponseHeaders(statusCode, if (bytes.isEmpty()) -1 else bytes.size.toLong())
+        exchange.responseBody.use { it.write(bytes) }
+    }
+
+    private class RecordedExchange(
+        val method: String,
+        val cookie: String?,
+        val authorization: String?,
+        val body: String
+    )
+
+    private class FakeCookieStore : SocksHttpClient.CookieStore {
+
+        val cookies = ConcurrentHashMap<String, String>()
+        val storedCookies = CopyOnWriteArrayList<Pair<String, String>>()
+
+        override fun getCookie(url: String): String? = cookies[url]
+
+        override fun setCookie(url: String, cookie: String) {
+            storedCookies += url to cookie
+        }
+    }
+}
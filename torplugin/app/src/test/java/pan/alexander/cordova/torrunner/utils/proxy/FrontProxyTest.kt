@@ -0,0 +1,247 @@
+/*
+    This file is part of Cordova Plugin Tor Runner.
+
+    Cordova Plugin Tor Runner is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Cordova Plugin Tor Runner is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Cordova Plugin Tor Runner.  If not, see <http://www.gnu.org/licenses/>.
+
+    Copyright 2025 by Garmatin Oleksandr invizible.soft@gmail.com
+ */
+
+
+package pan.alexander.cordova.torrunner.utils.proxy
+
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import pan.alexander.cordova.torrunner.utils.network.FakeSocksServer
+import pan.alexander.cordova.torrunner.utils.network.SOCKS_REPLY_HOST_UNREACHABLE
+import java.io.DataInputStream
+import java.io.IOException
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.util.concurrent.CopyOnWriteArrayList
+
+private const val ECHO_HOST = "echo.test"
+private const val UNREACHABLE_HOST = "unreachable.test"
+private const val ECHO_PORT = 7
+private const val TEST_TIMEOUT_MS = 200L
+private const val READ_TIMEOUT_MS = 5000
+
+class FrontProxyTest {
+
+    private val echoServer = EchoServer()
+    private val socksServer = FakeSocksServer { host, _ ->
+        if (host == ECHO_HOST) echoServer.address else null
+    }
+    private val proxies = CopyOnWriteArrayList<FrontProxy>()
+
+    @After
+    fun tearDown() {
+        proxies.forEach { it.stop() }
+        socksServer.close()
+        echoServer.close()
+    }
+
+    @Test
+    fun socksConnectIsRelayed() {
+        val port = startProxy(socksServer.port)
+
+        connect(port).use { socket ->
+            val input = DataInputStream(socket.getInputStream())
+            val output = socket.getOutputStream()
+
+            output.write(byteArrayOf(5, 1, 0))
+            assertArrayEquals(byteArrayOf(5, 0), input.readNBytes(2))
+
+            output.write(socksConnectRequest(ECHO_HOST, ECHO_PORT))
+            val reply = input.readNBytes(10)
+            assertEquals(5, reply[0].toInt())
+            assertEquals(SOCKS_REPLY_SUCCEEDED, reply[1].toInt())
+
+            assertEcho(socket)
+        }
+        assertEquals(listOf("$ECHO_HOST:$ECHO_PORT"), socksServer.requests)
+    }
+
+    @Test
+    fun httpConnectIsRelayed() {
+        val port = startProxy(socksServer.port)
+
+        connect(port).use { socket ->
+            socket.getOutputStream().write(
+                "CONNECT $ECHO_HOST:$ECHO_PORT HTTP/1.1\r\nHost: $ECHO_HOST:$ECHO_PORT\r\n\r\n".toByteArray()
+            )
+            assertEquals("HTTP/1.1 200 Connection established", readHttpResponseHeader(socket))
+
+            assertEcho(socket)
+        }
+        assertEquals(listOf("$ECHO_HOST:$ECHO_PORT"), socksServer.requests)
+    }
+
+    @Test
+    fun socksClientGetsUpstreamFailureReply() {
+        val port = startProxy(socksServer.port)
+
+        connect(port).use { socket ->
+            val input = DataInputStream(socket.getInputStream())
+            val output = socket.getOutputStream()
+
+            //The request is sent together with the greeting
+            output.write(byteArrayOf(5, 1, 0) + socksConnectRequest(UNREACHABLE_HOST, ECHO_PORT))
+            assertArrayEquals(byteArrayOf(5, 0), input.readNBytes(2))
+            val reply = input.readNBytes(10)
+            assertEquals(SOCKS_REPLY_HOST_UNREACHABLE, reply[1].toInt())
+            assertEquals(-1, input.read())
+        }
+        assertEquals(1, proxies.single().toJson().getInt("failed"))
+    }
+
+    @Test
+    fun httpClientGetsBadGatewayOnUpstreamFailure() {
+        val port = startProxy(socksServer.port)
+
+        connect(port).use { socket ->
+            socket.getOutputStream().write(
+                "CONNECT $UNREACHABLE_HOST:$ECHO_PORT HTTP/1.1\r\n\r\n".toByteArray()
+            )
+            assertEquals("HTTP/1.1 502 Bad Gateway", readHttpResponseHeader(socket))
+            assertEquals(-1, socket.getInputStream().read())
+        }
+    }
+
+    @Test
+    fun silentClientIsClosedAfterHandshakeTimeout() {
+        val port = startProxy(socksServer.port)
+
+        connect(port).use { socket ->
+            //Incomplete greeting
+            socket.getOutputStream().write(byteArrayOf(5))
+            val startNs = System.nanoTime()
+
+            assertEquals(-1, socket.getInputStream().read())
+            assertTrue(System.nanoTime() - startNs < READ_TIMEOUT_MS * 1_000_000L)
+        }
+        //The connection is moved to the recent ones after its socket is closed
+        val proxy = proxies.single()
+        awaitCondition { proxy.toJson().getJSONArray("recent").length() > 0 }
+        val recent = proxy.toJson().getJSONArray("recent")
+        assertEquals("Client handshake timeout", recent.getJSONObject(0).getString("failure"))
+    }
+
+    @Test
+    fun silentUpstreamFailsAfterHandshakeTimeout() {
+        ServerSocket(0, 50, InetAddress.getLoopbackAddress()).use { silentUpstream ->
+            val upstreamConnections = CopyOnWriteArrayList<Socket>()
+            Thread {
+                try {
+                    while (true) {
+                        upstreamConnections += silentUpstream.accept()
+                    }
+                } catch (_: IOException) {
+                }
+            }.apply { isDaemon = true }.start()
+            val port = startProxy(silentUpstream.localPort)
+
+            connect(port).use { socket ->
+                socket.getOutputStream().write(
+                    "CONNECT $ECHO_HOST:$ECHO_PORT HTTP/1.1\r\n\r\n".toByteArray()
+                )
+                assertEquals("HTTP/1.1 504 Gateway Timeout", readHttpResponseHeader(socket))
+            }
+            upstreamConnections.forEach { it.close() }
+        }
+    }
+
+    //Returns the port once the proxy is listening
+    private fun startProxy(socksPort: Int): Int {
+        val proxy = FrontProxy(TEST_TIMEOUT_MS, TEST_TIMEOUT_MS)
+        proxies += proxy
+        Thread { proxy.run(0, socksPort) }.apply { isDaemon = true }.start()
+        awaitCondition { proxy.isRunning }
+        return proxy.toJson().getInt("port")
+    }
+
+    private fun awaitCondition(condition: () -> Boolean) {
+        val deadlineNs = System.nanoTime() + READ_TIMEOUT_MS * 1_000_000L
+        while (!condition() && System.nanoTime() < deadlineNs) {
+            Thread.sleep(10)
+        }
+        assertTrue(condition())
+    }
+
+    private fun connect(port: Int) = Socket(InetAddress.getLoopbackAddress(), port).apply {
+        soTimeout = READ_TIMEOUT_MS
+    }
+
+    private fun assertEcho(socket: Socket) {
+        val message = "hello through the proxy".toByteArray()
+        socket.getOutputStream().write(message)
+        assertArrayEquals(message, DataInputStream(socket.getInputStream()).readNBytes(message.size))
+    }
+
+    private fun socksConnectRequest(host: String, port: Int) =
+        byteArrayOf(5, 1, 0, 3, host.length.toByte()) +
+                host.toByteArray() +
+                byteArrayOf((port shr 8).toByte(), port.toByte())
+
+    //Reads up to the empty line and returns the status line
+    private fun readHttpResponseHeader(socket: Socket): String {
+        val input = socket.getInputStream()
+        val header = StringBuilder()
+        while (!header.endsWith("\r\n\r\n")) {
+            val byte = input.read()
+            if (byte < 0) {
+                break
+            }
+            header.append(byte.toChar())
+        }
+        return header.toString().substringBefore("\r\n")
+    }
+
+    private class EchoServer : AutoCloseable {
+
+        private val server = ServerSocket(0, 50, InetAddress.getLoopbackAddress())
+        private val sockets = CopyOnWriteArrayList<Socket>()
+
+        val address: InetSocketAddress
+            get() = InetSocketAddress(server.inetAddress, server.localPort)
+
+        init {
+            Thread {
+                try {
+                    while (true) {
+                        val socket = server.accept()
+                        sockets += socket
+                        Thread {
+                            try {
+                                socket.getInputStream().copyTo(socket.getOutputStream())
+                                socket.shutdownOutput()
+                            } catch (_: IOException) {
+                            }
+                        }.apply { isDaemon = true }.start()
+                    }
+                } catch (_: IOException) {
+                }
+            }.apply { isDaemon = true }.start()
+        }
+
+        override fun close() {
+            server.close()
+            sockets.forEach { it.close() }
+        }
+    }
+}
@@ -21,6 +21,44 @@ exports.isUseWithTor = function(address, success, error) {
     }
 };
 
+exports.isUseWithTorBatch = function(addresses, success, error) {
+    const settings = this.getSettings();
+    const redirectAll = (redirect) => {
+        const redirects = {};
+        for (const address of addresses) {
+            redirects[address] = redirect;
+        }
+        return redirects;
+    };
+    if (settings.torMode === this.TorMode.AUTO) {
+        exec(success, error, 'TorRunner', 'CHECK_ADDRESSES', [addresses]);
+    } else if (settings.torMode === this.TorMode.ALWAYS) {
+        if (settings.torState === this.TorStatus.STOPPED) {
+            exec(null, error, 'TorRunner', 'START_TOR', []);
+        }
+        success({redirects: redirectAll(true), port: settings.torPort});
+    } else if (settings.torMode === this.TorMode.NEVER) {
+        if (settings.torState === this.TorStatus.RUNNING) {
+            exec(null, error, 'TorRunner', 'STOP_TOR', []);
+        }
+        success({redirects: redirectAll(false), port: 0});
+    } else {
+        error("Please specify the Tor mode " + settings.torMode);
+    }
+};
+
+exports.getStartupMetrics = function(success, error) {
+    exec(success, error, 'TorRunner', 'GET_STARTUP_METRICS', []);
+};
+
+exports.getLogs = function(success, error) {
+    exec(success, error, 'TorRunner', 'GET_LOGS', []);
+};
+
+exports.getProxyStats = function(success, error) {
+    exec(success, error, 'TorRunner', 'GET_PROXY_STATS', []);
+};
+
 exports.getSettings = function()
 {
     return this._settings || {};